@@ -12,7 +12,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Set;
 
 import javax.imageio.ImageIO;
@@ -24,12 +27,17 @@ import ch.epfl.isochrone.timetable.Date;
 import ch.epfl.isochrone.timetable.FastestPathTree;
 import ch.epfl.isochrone.timetable.Graph;
 import ch.epfl.isochrone.timetable.SecondsPastMidnight;
-import ch.epfl.isochrone.timetable.Service;
 import ch.epfl.isochrone.timetable.Stop;
 import ch.epfl.isochrone.timetable.TimeTable;
 import ch.epfl.isochrone.timetable.TimeTableReader;
+import ch.epfl.isochrone.timetable.TimeTableSnapshot;
+import ch.epfl.isochrone.timetable.TravelTimeMatrix;
 
 public class TimeTableSearch {
+    // Propriété système donnant le fichier de l'instantané de l'horaire
+    // (TimeTableSnapshot) à charger à la place des fichiers CSV, comme pour
+    // IsochroneTL
+    private static final String SNAPSHOT_PROPERTY = "isochrone.snapshot";
 
     public static void main(String[] args) throws IllegalArgumentException,
             IOException {
@@ -49,11 +57,28 @@ public class TimeTableSearch {
         int maxWalkingTime = SecondsPastMidnight.fromHMS(0, 5, 0);
         double walkingSpeed = 1.25;
 
-        TimeTableReader ttr = new TimeTableReader("/time-table/");
-        TimeTable tt = ttr.readTimeTable();
+        // Le graphe d'un instantané contient les trajets de tous les
+        // services, filtrés à la recherche ; celui lu dans les fichiers CSV
+        // ne contient que ceux des services de la date de départ
+        String snapshotPath = System.getProperty(SNAPSHOT_PROPERTY);
+        TimeTable tt;
+        Graph g;
+        BitSet activeServices;
+        if (snapshotPath != null && new File(snapshotPath).isFile()) {
+            TimeTableSnapshot snapshot = TimeTableSnapshot.load(new File(
+                    snapshotPath));
+            tt = snapshot.timeTable();
+            g = snapshot.graph();
+            activeServices = g.activeServices(tt.servicesForDate(dateDep));
+        } else {
+            TimeTableReader ttr = new TimeTableReader("/time-table/");
+            tt = ttr.readTimeTable();
+            g = ttr.readGraphForServices(tt.stops(),
+                    tt.servicesForDate(dateDep), maxWalkingTime, walkingSpeed);
+            activeServices = null;
+        }
 
         Set<Stop> stops = tt.stops();
-        Set<Service> services = tt.servicesForDate(dateDep);
 
         Stop startingStop = null;
 
@@ -63,10 +88,8 @@ public class TimeTableSearch {
                 break;
             }
 
-        Graph g = ttr.readGraphForServices(stops, services, maxWalkingTime,
-                walkingSpeed);
-
-        FastestPathTree fpt = g.fastestPaths(startingStop, departureTime);
+        FastestPathTree fpt = g.fastestPaths(startingStop, departureTime,
+                activeServices);
 
         Stop[] sortedArrayOfStops = fpt.stops().toArray(new Stop[fpt.stops().size()]);
 
@@ -111,5 +134,19 @@ public class TimeTableSearch {
         } catch (IOException e) {
             e.printStackTrace();
         }
+
+        // Quatrième argument facultatif : fichier où écrire la matrice des
+        // temps de parcours depuis tous les arrêts
+        if (args.length > 3) {
+            List<Stop> origins = new ArrayList<Stop>(stops);
+            Collections.sort(origins);
+            try {
+                TravelTimeMatrix.compute(g, origins, departureTime,
+                        activeServices)
+                        .writeTo(new File(args[3]));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 }
\ No newline at end of file
@@ -26,11 +26,14 @@ import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -51,6 +54,7 @@ import javax.swing.JViewport;
 import javax.swing.SpinnerDateModel;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -60,18 +64,23 @@ import ch.epfl.isochrone.tiledmap.CachedTileProvider;
 import ch.epfl.isochrone.tiledmap.ColorTable;
 import ch.epfl.isochrone.tiledmap.IsochroneTileProvider;
 import ch.epfl.isochrone.tiledmap.OSMTileProvider;
+import ch.epfl.isochrone.tiledmap.StopProjection;
 import ch.epfl.isochrone.tiledmap.TileProvider;
 import ch.epfl.isochrone.tiledmap.TrajetTileProvider;
 import ch.epfl.isochrone.tiledmap.TransparentTileProvider;
+import ch.epfl.isochrone.timetable.ConnectionScan;
 import ch.epfl.isochrone.timetable.Date;
 import ch.epfl.isochrone.timetable.Date.Month;
+import ch.epfl.isochrone.timetable.FastestPathProfiles;
 import ch.epfl.isochrone.timetable.FastestPathTree;
 import ch.epfl.isochrone.timetable.Graph;
+import ch.epfl.isochrone.timetable.Raptor;
+import ch.epfl.isochrone.timetable.SearchWorkspace;
 import ch.epfl.isochrone.timetable.SecondsPastMidnight;
-import ch.epfl.isochrone.timetable.Service;
 import ch.epfl.isochrone.timetable.Stop;
 import ch.epfl.isochrone.timetable.TimeTable;
 import ch.epfl.isochrone.timetable.TimeTableReader;
+import ch.epfl.isochrone.timetable.TimeTableSnapshot;
 
 public final class IsochroneTL {
     private static final String OSM_TILE_URL = "http://b.tile.openstreetmap.org/";
@@ -84,21 +93,51 @@ public final class IsochroneTL {
     private static final Date INITIAL_DATE = new Date(1, Month.OCTOBER, 2013);
     private static final int WALKING_TIME = 5 * 60;
     private static final double WALKING_SPEED = 1.25;
+    // Propriété système donnant le chemin d'un instantané de l'horaire
+    // (TimeTableSnapshot), chargé à la place des fichiers CSV s'il existe
+    private static final String SNAPSHOT_PROPERTY = "isochrone.snapshot";
+    // Propriété système choisissant l'algorithme de recherche : "csa" pour
+    // le balayage des connexions (ConnectionScan), Dijkstra sinon
+    private static final String ENGINE_PROPERTY = "isochrone.engine";
+    // Durée de l'intervalle des heures de départ couvert par les profils
+    // utilisés pendant l'animation, en secondes
+    private static final int ANIMATION_PROFILE_DURATION = 60 * 60;
     private Point departSouris;
     private Point departFenetre;
     private Date date = INITIAL_DATE;
     private int departureTime = INITIAL_DEPARTURE_TIME;
     private Vector<Stop> stopsVector;
     private Graph g;
-    private Set<Service> services;
+    private BitSet activeServices;
+    // Espace de travail réutilisé par les recherches dans le graphe. Toutes
+    // les recherches de la carte sont faites dans le fil de Swing : les
+    // timers y transfèrent leur travail (SwingUtilities.invokeLater)
+    private SearchWorkspace workspace;
+    // Connexions des services actifs, ou null si la recherche utilise
+    // l'algorithme de Dijkstra du graphe
+    private ConnectionScan connectionScan;
+    // Courses regroupées en lignes, construites à la première recherche
+    // limitée en correspondances, dans le fil de Swing
+    private Raptor raptor;
+    // Nombre maximal de correspondances des trajets de la carte
+    private int maxTransfers = Raptor.UNLIMITED_TRANSFERS;
     private TimeTableReader ttr;
     private Set<Stop> stops;
+    // Coordonnées OSM des arrêts, partagées par les fournisseurs de tuiles et
+    // la recherche de l'arrêt survolé
+    private StopProjection projection;
     private FastestPathTree fpt;
+    // Profils des trajets les plus rapides utilisés pendant l'animation, ou
+    // null s'ils ne correspondent plus à l'arrêt ou à la date de départ
+    private FastestPathProfiles profiles;
     private TiledMapComponent tiledMapComponent;
     private ColorTable ct;
     private IsochroneTileProvider isoTileProvider;
     private TransparentTileProvider transpTileProvider;
     private Stop startingStop;
+    // Point de départ choisi par clic droit, ou null si la recherche part de
+    // l'arrêt startingStop (qui est alors l'arrêt le plus proche du point)
+    private PointWGS84 startingPoint;
     private TimeTable tt;
 
     private JComboBox<Stop> selectArrets;
@@ -128,15 +167,21 @@ public final class IsochroneTL {
         tiledMapComponent = new TiledMapComponent(INITIAL_ZOOM);
         tiledMapComponent.add(bgTileProvider);
 
-        ttr = new TimeTableReader("/time-table/");
-        tt = ttr.readTimeTable();
+        String snapshotPath = System.getProperty(SNAPSHOT_PROPERTY);
+        TimeTableSnapshot snapshot = null;
+        if (snapshotPath != null && new File(snapshotPath).isFile()) {
+            snapshot = TimeTableSnapshot.load(new File(snapshotPath));
+            tt = snapshot.timeTable();
+        } else {
+            ttr = new TimeTableReader("/time-table/");
+            tt = ttr.readTimeTable();
+        }
 
         stops = tt.stops();
+        projection = new StopProjection(stops);
         stopsVector = new Vector<>(stops);
         Collections.sort(stopsVector);
 
-        services = tt.servicesForDate(date);
-
         startingStop = null;
 
         for (Stop stop : stops)
@@ -145,12 +190,19 @@ public final class IsochroneTL {
                 break;
             }
 
-        // Création du graph
-        g = ttr.readGraphForServices(stops, services, WALKING_TIME,
-                WALKING_SPEED);
-
-        // Création du FastestPathTree de départ
-        fpt = g.fastestPaths(startingStop, INITIAL_DEPARTURE_TIME);
+        // Création du graph, une seule fois pour tous les services. Seuls les
+        // services actifs à la date choisie sont empruntés par la recherche.
+        if (snapshot != null) {
+            g = snapshot.graph();
+        } else {
+            g = ttr.readGraphForServices(stops, tt.services(), WALKING_TIME,
+                    WALKING_SPEED);
+        }
+        activeServices = g.activeServices(tt.servicesForDate(date));
+        workspace = new SearchWorkspace(g);
+        if ("csa".equals(System.getProperty(ENGINE_PROPERTY))) {
+            connectionScan = new ConnectionScan(g, activeServices);
+        }
 
         ArrayList<Color> lc = new ArrayList<Color>();
 
@@ -167,8 +219,13 @@ public final class IsochroneTL {
 
         ct = new ColorTable(WALKING_TIME, lc);
 
+        // Création du FastestPathTree de départ, borné par la table de
+        // couleurs
+        fpt = fastestPaths(INITIAL_DEPARTURE_TIME);
+
         // Ajoute de la tuile isochrone semi tranparente.
-        isoTileProvider = new IsochroneTileProvider(fpt, ct, WALKING_SPEED);
+        isoTileProvider = new IsochroneTileProvider(fpt, ct, WALKING_SPEED,
+                projection);
 
         transpTileProvider = new TransparentTileProvider(0.5, isoTileProvider);
 
@@ -190,6 +247,8 @@ public final class IsochroneTL {
         JLabel etiquetteDateHeure = new JLabel("Date et heure:");
         final JCheckBox animationCheckBox = new JCheckBox("Animation", false);
         JLabel etiquetteVitesseAnim = new JLabel("Vitesse de l'animation:");
+        final JCheckBox correspondancesCheckBox = new JCheckBox(
+                "Correspondances max:", false);
 
         // animationCheckBox est nécessaire à la mise en place du bonus
         // "Animation".
@@ -206,28 +265,16 @@ public final class IsochroneTL {
                         @Override
                         public void run() {
 
-                            java.util.Date actualJavaDate = dateModel.getDate();
-                            Date actualDate = new Date(actualJavaDate);
-                            int spm = SecondsPastMidnight
-                                    .fromJavaDate(actualJavaDate);
-                            spm = spm + 60;
-
-                            if (spm > 86400) {
-                                actualDate = actualDate.relative(1);
-                                spm = 1;
-                            }
-
-                            actualJavaDate = actualDate.toJavaDate();
-                            actualJavaDate.setSeconds(SecondsPastMidnight
-                                    .seconds(spm));
-                            actualJavaDate.setMinutes(SecondsPastMidnight
-                                    .minutes(spm));
-                            actualJavaDate.setHours(SecondsPastMidnight
-                                    .hours(spm));
-
-                            // Mise à jour du SpinnerDateModel, qui gère la mise
-                            // à jour de la carte isochrone
-                            dateModel.setValue(actualJavaDate);
+                            // La date est avancée dans le fil de Swing,
+                            // comme par les autres contrôles : les
+                            // recherches ne sont jamais faites par deux fils
+                            // à la fois
+                            SwingUtilities.invokeLater(new Runnable() {
+                                @Override
+                                public void run() {
+                                    avancerAnimation();
+                                }
+                            });
 
                         }
 
@@ -297,6 +344,26 @@ public final class IsochroneTL {
             }
 
         });
+        final SpinnerNumberModel correspondancesModel = new SpinnerNumberModel(
+                2, 0, 9, 1);
+        correspondancesModel.addChangeListener(new ChangeListener() {
+
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                if (correspondancesCheckBox.isSelected()) {
+                    updateForNewMaxTransfers(correspondancesModel.getNumber()
+                            .intValue());
+                }
+            }
+        });
+        correspondancesCheckBox.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                updateForNewMaxTransfers(correspondancesCheckBox.isSelected() ? correspondancesModel
+                        .getNumber().intValue() : Raptor.UNLIMITED_TRANSFERS);
+            }
+        });
         final JSpinner selectDates = new JSpinner(dateModel);
         final JSpinner selectVitesse = new JSpinner(vitesseModel);
 
@@ -312,6 +379,8 @@ public final class IsochroneTL {
         selectionPanel.add(etiquetteVitesseAnim);
         selectionPanel.add(selectVitesse);
         selectionPanel.add(animationCheckBox);
+        selectionPanel.add(correspondancesCheckBox);
+        selectionPanel.add(new JSpinner(correspondancesModel));
         return selectionPanel;
     }
 
@@ -447,32 +516,14 @@ public final class IsochroneTL {
                 timerTaskTrajet = new TimerTask() {
                     @Override
                     public void run() {
-                        try {
-                            positionSouris = e.getPoint();
-                            departFenetre = viewPort.getViewPosition();
-
-                            Point p = new Point((int) Math.round(departFenetre
-                                    .getX() + positionSouris.getX()),
-                                    (int) Math.round(departFenetre.getY()
-                                            + positionSouris.getY()));
-
-                            PointOSM pOSM = new PointOSM(tiledMapComponent
-                                    .getZoom(), p.getX(), p.getY());
-
-                            Stop stopLePlusProche = fastestReachableStop(pOSM);
-
-                            List<Stop> listeStop = fpt.pathTo(stopLePlusProche);
-
-                            tiledMapComponent.removeTileProvider(ttp);
-
-                            ttp = new TrajetTileProvider(listeStop, pOSM);
-
-                            tiledMapComponent.add(ttp);
-
-                        } catch (IllegalArgumentException e) {
-                            // TODO Auto-generated catch block
-                            e.printStackTrace();
-                        }
+                        // Recherche et dessin du trajet dans le fil de
+                        // Swing, qui fait toutes les recherches de la carte
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                afficherTrajet(viewPort, e.getPoint());
+                            }
+                        });
                     }
 
                 };
@@ -530,11 +581,29 @@ public final class IsochroneTL {
                     PointOSM pOSM = new PointOSM(tiledMapComponent.getZoom(), p
                             .getX(), p.getY());
 
-                    Stop stopLePlusProche = closestStop(pOSM);
-
-                    updateForNewStop(stopLePlusProche.name());
+                    // La recherche part de tous les arrêts atteignables à
+                    // pied depuis le point cliqué ; un clic trop loin de
+                    // tout arrêt est ignoré
+                    PointWGS84 point = pOSM.toWGS84();
+                    Map<Stop, Integer> walkingTimes = g.walkingTimesFrom(
+                            point, WALKING_TIME, WALKING_SPEED);
+                    if (walkingTimes.isEmpty())
+                        return;
+
+                    Stop stopLePlusProche = null;
+                    for (Map.Entry<Stop, Integer> entry : walkingTimes
+                            .entrySet()) {
+                        if (stopLePlusProche == null
+                                || entry.getValue() < walkingTimes
+                                        .get(stopLePlusProche))
+                            stopLePlusProche = entry.getKey();
+                    }
+                    startingStop = stopLePlusProche;
+                    startingPoint = point;
+                    updateIso();
 
-                    // Mise A jour de la ComboBox d'arrêts
+                    // Mise A jour de la ComboBox d'arrêts, qui ignore l'arrêt
+                    // de départ actuel
                     selectArrets.setSelectedIndex(stopsVector
                             .indexOf(stopLePlusProche));
 
@@ -549,45 +618,37 @@ public final class IsochroneTL {
     }
 
     /**
-     * Recherche le stop le plus proche d'un point OSM donné en paramètre
-     * 
-     * @param pOSM
-     *            Le point d'ou on cherche le stop le plus proche
-     * @return le stop le plus proche
-     */
-    private Stop closestStop(PointOSM pOSM) {
-        Stop stopProche = startingStop;
-
-        int i = Integer.MAX_VALUE;
-        for (Stop s : stops) {
-            if (s.position().distanceTo(pOSM.toWGS84()) < i) {
-
-                if (!(fpt.arrivalTime(s) == SecondsPastMidnight.INFINITE)) {
-                    i = (int) s.position().distanceTo(pOSM.toWGS84());
-                    stopProche = s;
-
-                }
-            }
-        }
-
-        return stopProche;
-    }
-
-    /**
-     * Recherche le stop le plus rapidement atteignable d'un point OSM donné en
-     * paramètre
+     * Recherche, parmi les arrêts de l'arbre donné, celui depuis lequel le
+     * point OSM donné est atteint le plus tôt à pied.
      * 
+     * @param tree
+     *            L'arbre des trajets les plus rapides
      * @param pOSM
      *            Le point d'ou on cherche le stop le plus proche
-     * @return le stop atteingable en le moins de temps
+     * @param maxTravelTime
+     *            La durée au-delà de laquelle le point n'est pas considéré
+     *            comme atteint
+     * @return le stop atteingable en le moins de temps, ou null si le point
+     *         n'est pas atteint avant la durée donnée
      */
-    private Stop fastestReachableStop(PointOSM pOSM) {
-        Stop stopProche = startingStop;
-
-        double j = SecondsPastMidnight.INFINITE;
-        for (Stop s : stops) {
-            double d = fpt.arrivalTime(s) - fpt.startingTime()
-                    + s.position().distanceTo(pOSM.toWGS84()) / WALKING_SPEED;
+    private Stop fastestReachableStop(FastestPathTree tree, PointOSM pOSM,
+            int maxTravelTime) {
+        Stop stopProche = null;
+        int zoom = pOSM.zoom();
+        // Taille d'un pixel autour du point, en mètres : les distances sont
+        // mesurées en pixels, sans projeter chaque arrêt
+        double largeurPixel = pOSM.toWGS84().distanceTo(
+                new PointOSM(zoom, pOSM.x() + 1, pOSM.y()).toWGS84());
+
+        double j = maxTravelTime;
+        // Seuls les arrêts atteints par la recherche sont candidats
+        for (Stop s : tree.stops()) {
+            int id = projection.id(s);
+            double dx = projection.x(id, zoom) - pOSM.x();
+            double dy = projection.y(id, zoom) - pOSM.y();
+            double d = tree.arrivalTime(s) - tree.startingTime()
+                    + Math.sqrt(dx * dx + dy * dy) * largeurPixel
+                    / WALKING_SPEED;
             if (d < j) {
                 j = d;
                 stopProche = s;
@@ -609,6 +670,7 @@ public final class IsochroneTL {
                 startingStop = stop;
                 break;
             }
+        startingPoint = null;
         updateIso();
     }
 
@@ -617,10 +679,26 @@ public final class IsochroneTL {
      * classe startingStop et departureTime. Ne gère pas le changement de date.
      */
     private void updateIso() {
-        fpt = g.fastestPaths(startingStop, departureTime);
+        if (animation && maxTransfers == Raptor.UNLIMITED_TRANSFERS
+                && startingPoint == null) {
+            // L'animation avance d'une minute à la fois : une seule recherche
+            // de profils remplace une recherche par minute
+            if (profiles == null
+                    || profiles.startingStop() != startingStop
+                    || departureTime < profiles.fromTime()
+                    || departureTime > profiles.toTime()) {
+                profiles = g.fastestPathProfiles(startingStop, departureTime,
+                        departureTime + ANIMATION_PROFILE_DURATION,
+                        activeServices);
+            }
+            fpt = profiles.treeAt(departureTime);
+        } else {
+            fpt = fastestPaths(departureTime);
+        }
         tiledMapComponent.removeTileProvider(transpTileProvider);
 
-        isoTileProvider = new IsochroneTileProvider(fpt, ct, WALKING_SPEED);
+        isoTileProvider = new IsochroneTileProvider(fpt, ct, WALKING_SPEED,
+                projection);
 
         transpTileProvider = new TransparentTileProvider(0.5, isoTileProvider);
 
@@ -629,6 +707,50 @@ public final class IsochroneTL {
         tiledMapComponent.add(transpTileProvider);
     }
 
+    /**
+     * Retourne l'arbre des trajets les plus rapides depuis l'arrêt de départ,
+     * calculé par l'algorithme choisi, ou par RAPTOR si le nombre de
+     * correspondances est limité. Une recherche depuis un point part de tous
+     * les arrêts proches du point (recherche à plusieurs départs du graphe),
+     * sauf avec RAPTOR, qui part de l'arrêt le plus proche.
+     */
+    private FastestPathTree fastestPaths(int departureTime) {
+        return fastestPaths(departureTime, isochroneMaxTravelTime());
+    }
+
+    /**
+     * Retourne l'arbre des trajets les plus rapides comme la méthode
+     * précédente, borné par la durée donnée.
+     */
+    private FastestPathTree fastestPaths(int departureTime, int maxTravelTime) {
+        if (maxTransfers != Raptor.UNLIMITED_TRANSFERS) {
+            if (raptor == null) {
+                raptor = new Raptor(g);
+            }
+            return raptor.fastestPaths(startingStop, departureTime,
+                    maxTransfers, maxTravelTime, activeServices);
+        }
+        if (startingPoint != null) {
+            return g.fastestPaths(startingPoint, departureTime, WALKING_TIME,
+                    WALKING_SPEED, maxTravelTime, activeServices, workspace);
+        }
+        if (connectionScan != null) {
+            return connectionScan.fastestPaths(startingStop, departureTime,
+                    maxTravelTime);
+        }
+        return g.fastestPaths(startingStop, departureTime, maxTravelTime,
+                activeServices, workspace);
+    }
+
+    /**
+     * Retourne la durée de trajet maximale dessinée par la carte : les arrêts
+     * atteints après la dernière tranche de la table de couleurs ne sont pas
+     * dessinés, la recherche s'arrête donc avant.
+     */
+    private int isochroneMaxTravelTime() {
+        return ct.nombreDeTranches() * ct.getDuree();
+    }
+
     /**
      * Gère le changement d'heure de départ, sans changement de date ou de stop
      * de départ.
@@ -638,24 +760,107 @@ public final class IsochroneTL {
     }
 
     /**
-     * Met à jour les services disponibles à la date de départ.
+     * Gère le changement du nombre maximal de correspondances.
+     * 
+     * @param newMaxTransfers
+     *            Le nouveau nombre maximal de correspondances, ou
+     *            Raptor.UNLIMITED_TRANSFERS
+     */
+    private void updateForNewMaxTransfers(int newMaxTransfers) {
+        maxTransfers = newMaxTransfers;
+        updateIso();
+    }
+
+    /**
+     * Met à jour les services disponibles à la date de départ. Le graphe
+     * contenant les trajets de tous les services, il n'est pas relu.
      */
     private void updateForNewDate() {
+        activeServices = g.activeServices(tt.servicesForDate(date));
+        if (connectionScan != null) {
+            connectionScan = new ConnectionScan(g, activeServices);
+        }
+        profiles = null;
 
-        services = tt.servicesForDate(date);
+        updateIso();
+    }
+
+    /**
+     * Avance la date et l'heure de départ d'une minute pendant l'animation.
+     * Doit être appelée dans le fil de Swing.
+     */
+    @SuppressWarnings("deprecation")
+    private void avancerAnimation() {
+        java.util.Date actualJavaDate = dateModel.getDate();
+        Date actualDate = new Date(actualJavaDate);
+        int spm = SecondsPastMidnight.fromJavaDate(actualJavaDate);
+        spm = spm + 60;
+
+        if (spm > 86400) {
+            actualDate = actualDate.relative(1);
+            spm = 1;
+        }
 
+        actualJavaDate = actualDate.toJavaDate();
+        actualJavaDate.setSeconds(SecondsPastMidnight.seconds(spm));
+        actualJavaDate.setMinutes(SecondsPastMidnight.minutes(spm));
+        actualJavaDate.setHours(SecondsPastMidnight.hours(spm));
+
+        // Mise à jour du SpinnerDateModel, qui gère la mise à jour de la
+        // carte isochrone
+        dateModel.setValue(actualJavaDate);
+    }
+
+    /**
+     * Affiche le trajet le plus rapide jusqu'au point de la fenêtre donné.
+     * Doit être appelée dans le fil de Swing.
+     * 
+     * @param viewPort
+     *            La fenêtre sur la carte
+     * @param position
+     *            La position de la souris dans la fenêtre
+     */
+    private void afficherTrajet(JViewport viewPort, Point position) {
         try {
-            g = ttr.readGraphForServices(stops, services, WALKING_TIME,
-                    WALKING_SPEED);
+            positionSouris = position;
+            departFenetre = viewPort.getViewPosition();
+
+            Point p = new Point((int) Math.round(departFenetre.getX()
+                    + positionSouris.getX()),
+                    (int) Math.round(departFenetre.getY()
+                            + positionSouris.getY()));
+
+            PointOSM pOSM = new PointOSM(tiledMapComponent.getZoom(), p
+                    .getX(), p.getY());
+
+            // L'arbre affiché est borné par la dernière tranche : hors de
+            // celle-ci, le trajet le plus rapide peut passer par un arrêt
+            // qu'il ne contient pas, et une recherche non bornée est faite
+            FastestPathTree arbre = fpt;
+            Stop stopLePlusProche = fastestReachableStop(arbre, pOSM,
+                    isochroneMaxTravelTime());
+            if (stopLePlusProche == null) {
+                arbre = fastestPaths(arbre.startingTime(),
+                        Graph.UNLIMITED_TRAVEL_TIME);
+                stopLePlusProche = fastestReachableStop(arbre, pOSM,
+                        SecondsPastMidnight.INFINITE);
+                if (stopLePlusProche == null)
+                    return;
+            }
+
+            List<Stop> listeStop = arbre.pathTo(stopLePlusProche);
+
+            tiledMapComponent.removeTileProvider(ttp);
+
+            ttp = new TrajetTileProvider(listeStop,
+                    arbre.legsTo(stopLePlusProche), pOSM, projection);
+
+            tiledMapComponent.add(ttp);
+
         } catch (IllegalArgumentException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
         }
-
-        updateIso();
     }
 
     /**
@@ -0,0 +1,22 @@
+/**
+ * Transformation de la couleur d'un pixel. <p>
+ * Les transformations sont appliquées par les transformateurs de fournisseurs
+ * de tuiles (FilteringTileProvider), qui en composent plusieurs en une seule
+ * passe sur les pixels de l'image.
+ *
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+package ch.epfl.isochrone.tiledmap;
+
+public interface ArgbFilter {
+
+    /**
+     * Retourne la couleur transformée d'un pixel.
+     * 
+     * @param argb
+     *            La couleur du pixel à transformer au format ARGB
+     * @return La couleur transformée de ce pixel, au format ARGB
+     */
+    int transformARGB(int argb);
+}
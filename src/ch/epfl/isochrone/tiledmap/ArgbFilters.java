@@ -0,0 +1,158 @@
+/**
+ * Transformations de couleur usuelles, à composer avec un
+ * FilterChainTileProvider. <p>
+ * Les transformations opèrent sur les composantes de la couleur ARGB par
+ * masquage et décalage de bits.
+ *
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+package ch.epfl.isochrone.tiledmap;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+public final class ArgbFilters {
+
+    private ArgbFilters() {
+    }
+
+    /**
+     * Retourne la transformation qui remplace l'opacité de chaque pixel par
+     * l'opacité donnée, sans changer sa couleur.
+     * 
+     * @param opacite
+     *            L'opacité des pixels transformés, entre 0 et 1
+     * @return La transformation
+     * @throws IllegalArgumentException
+     *             Si l'opacité n'est pas comprise entre 0 et 1
+     */
+    public static ArgbFilter opacite(double opacite)
+            throws IllegalArgumentException {
+        if (!(0 <= opacite && opacite <= 1)) {
+            throw new IllegalArgumentException(
+                    "L'opacité doit être comprise entre 0 et 1");
+        }
+        // Canal alpha des pixels transformés, déjà décalé à sa place
+        final int alpha = (int) Math.round(255 * opacite) << 24;
+        return new ArgbFilter() {
+            @Override
+            public int transformARGB(int argb) {
+                return alpha | (argb & 0x00FFFFFF);
+            }
+        };
+    }
+
+    /**
+     * Retourne la transformation qui mélange la couleur de chaque pixel avec
+     * la teinte donnée, sans changer son opacité.
+     * 
+     * @param teinte
+     *            La couleur de la teinte (son opacité est ignorée)
+     * @param proportion
+     *            La proportion de la teinte dans la couleur transformée,
+     *            entre 0 et 1
+     * @return La transformation
+     * @throws IllegalArgumentException
+     *             Si la proportion n'est pas comprise entre 0 et 1
+     */
+    public static ArgbFilter teinte(Color teinte, double proportion)
+            throws IllegalArgumentException {
+        if (!(0 <= proportion && proportion <= 1)) {
+            throw new IllegalArgumentException(
+                    "La proportion doit être comprise entre 0 et 1");
+        }
+        // Proportions en 256èmes, et part de la teinte dans chaque composante
+        final int p = (int) Math.round(256 * proportion);
+        final int q = 256 - p;
+        final int r = p * teinte.getRed();
+        final int g = p * teinte.getGreen();
+        final int b = p * teinte.getBlue();
+        return new ArgbFilter() {
+            @Override
+            public int transformARGB(int argb) {
+                return (argb & 0xFF000000)
+                        | ((r + q * ((argb >>> 16) & 0xFF) + 128) >> 8) << 16
+                        | ((g + q * ((argb >>> 8) & 0xFF) + 128) >> 8) << 8
+                        | ((b + q * (argb & 0xFF) + 128) >> 8);
+            }
+        };
+    }
+
+    /**
+     * Retourne la transformation qui remplace la couleur de chaque pixel par
+     * le gris de même luminance, sans changer son opacité.
+     * 
+     * @return La transformation
+     */
+    public static ArgbFilter niveauxDeGris() {
+        return new ArgbFilter() {
+            @Override
+            public int transformARGB(int argb) {
+                // Luminance (Rec. 601) en 1024èmes
+                int l = (306 * ((argb >>> 16) & 0xFF) + 601
+                        * ((argb >>> 8) & 0xFF) + 117 * (argb & 0xFF) + 512) >> 10;
+                return (argb & 0xFF000000) | l << 16 | l << 8 | l;
+            }
+        };
+    }
+
+    /**
+     * Retourne la transformation qui rend transparents les pixels de la
+     * couleur d'une tranche de la table donnée qui n'est pas comprise entre
+     * les deux tranches données. Les pixels transparents et ceux d'une autre
+     * couleur ne sont pas transformés ; les couleurs sont comparées sans leur
+     * opacité, de sorte que le masque peut être appliqué avant ou après un
+     * changement d'opacité.
+     * 
+     * @param ct
+     *            La table de couleurs des tranches
+     * @param premiere
+     *            La première tranche conservée
+     * @param derniere
+     *            La dernière tranche conservée
+     * @return La transformation
+     * @throws IllegalArgumentException
+     *             Si la première tranche est plus grande que la dernière
+     */
+    public static ArgbFilter masqueTranches(ColorTable ct, int premiere,
+            int derniere) throws IllegalArgumentException {
+        if (premiere > derniere) {
+            throw new IllegalArgumentException("Tranches invalides");
+        }
+        // Couleurs (sans opacité) des tranches masquées, sauf celles qui
+        // sont aussi la couleur d'une tranche conservée
+        int[] couleurs = new int[ct.nombreDeTranches()];
+        int count = 0;
+        for (int i = 0; i < ct.nombreDeTranches(); i++) {
+            if (i < premiere || i > derniere) {
+                couleurs[count++] = ct.couleurPourTranche(i).getRGB()
+                        & 0x00FFFFFF;
+            }
+        }
+        for (int i = Math.max(0, premiere); i <= derniere
+                && i < ct.nombreDeTranches(); i++) {
+            int conservee = ct.couleurPourTranche(i).getRGB() & 0x00FFFFFF;
+            for (int k = 0; k < count; k++) {
+                if (couleurs[k] == conservee) {
+                    couleurs[k--] = couleurs[--count];
+                }
+            }
+        }
+        final int[] masquees = Arrays.copyOf(couleurs, count);
+        return new ArgbFilter() {
+            @Override
+            public int transformARGB(int argb) {
+                if ((argb & 0xFF000000) != 0) {
+                    int rgb = argb & 0x00FFFFFF;
+                    for (int couleur : masquees) {
+                        if (couleur == rgb) {
+                            return 0;
+                        }
+                    }
+                }
+                return argb;
+            }
+        };
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Transformateur de fournisseur qui compose plusieurs transformations de
+ * couleur. <p>
+ * Les transformations sont appliquées dans l'ordre, ensemble avec celles des
+ * transformateurs sous-jacents, en une seule passe sur les pixels de la
+ * tuile.
+ *
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+package ch.epfl.isochrone.tiledmap;
+
+import java.util.List;
+
+public final class FilterChainTileProvider extends FilteringTileProvider {
+    private final ArgbFilter[] filtres;
+
+    /**
+     * Construit un transformateur qui applique les transformations données,
+     * dans l'ordre, aux tuiles du fournisseur sous-jacent.
+     * 
+     * @param t
+     *            Le fournisseur de tuiles sous-jacent
+     * @param filtres
+     *            Les transformations à appliquer
+     */
+    public FilterChainTileProvider(TileProvider t, ArgbFilter... filtres) {
+        super(t);
+        this.filtres = filtres.clone();
+    }
+
+    /**
+     * Construit un transformateur qui applique les transformations données,
+     * dans l'ordre, aux tuiles du fournisseur sous-jacent.
+     * 
+     * @param t
+     *            Le fournisseur de tuiles sous-jacent
+     * @param filtres
+     *            Les transformations à appliquer
+     */
+    public FilterChainTileProvider(TileProvider t, List<ArgbFilter> filtres) {
+        this(t, filtres.toArray(new ArgbFilter[filtres.size()]));
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see ch.epfl.isochrone.tiledmap.FilteringTileProvider#transformARGB(int)
+     */
+    @Override
+    public int transformARGB(int argb) {
+        for (ArgbFilter filtre : filtres) {
+            argb = filtre.transformARGB(argb);
+        }
+        return argb;
+    }
+}
@@ -1,13 +1,21 @@
 /**
  * Transformateur de fournisseur de tuiles abstrait. <p>
  * Transforme l'mage des tuiles de son fournisseur sous-jacent, pixel par pixel. 
+ * Des transformateurs empilés sont appliqués ensemble, en une seule passe sur
+ * les pixels de la tuile du premier fournisseur qui n'est pas un
+ * transformateur, écrite dans une nouvelle image.
  *
  * @author Julien Lamour (236517)
  * @author Josselin Held (239612)
  */
 package ch.epfl.isochrone.tiledmap;
 
-public abstract class FilteringTileProvider implements TileProvider {
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+
+public abstract class FilteringTileProvider implements TileProvider, ArgbFilter {
     protected TileProvider t;
 
     /**
@@ -19,6 +27,52 @@ public abstract class FilteringTileProvider implements TileProvider {
         this.t = t;
     }
 
+    /**
+     * Fournit la tuile du fournisseur sous-jacent, dont chaque pixel est
+     * transformé par transformARGB, après les transformations des
+     * transformateurs sous-jacents.
+     * 
+     * (non-Javadoc)
+     * 
+     * @see ch.epfl.isochrone.tiledmap.TileProvider#tileAt(int, int, int)
+     */
+    @Override
+    public final Tile tileAt(int zoom, int x, int y) {
+        // Transformations à appliquer, de la plus profonde à celle-ci
+        List<ArgbFilter> pile = new ArrayList<>();
+        TileProvider source = this;
+        while (source instanceof FilteringTileProvider) {
+            pile.add(0, (ArgbFilter) source);
+            source = ((FilteringTileProvider) source).t;
+        }
+        ArgbFilter[] filtres = pile.toArray(new ArgbFilter[pile.size()]);
+
+        // L'image source n'est jamais modifiée : elle peut être partagée,
+        // par exemple par un cache de tuiles
+        BufferedImage image = source.tileAt(zoom, x, y).image();
+        int largeur = image.getWidth(), hauteur = image.getHeight();
+        BufferedImage resultat = new BufferedImage(largeur, hauteur,
+                BufferedImage.TYPE_INT_ARGB);
+        int[] destination = ((DataBufferInt) resultat.getRaster()
+                .getDataBuffer()).getData();
+
+        // Si l'image source est au format ARGB et occupe tout son tableau, ses
+        // pixels y sont lus directement, sans conversion par le modèle de
+        // couleurs
+        int[] pixels = null;
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer())
+                    .getData();
+        }
+        if (pixels == null || pixels.length != destination.length) {
+            pixels = image.getRGB(0, 0, largeur, hauteur, null, 0, largeur);
+        }
+        for (int i = 0; i < destination.length; i++) {
+            destination[i] = transformARGB(filtres, pixels[i]);
+        }
+        return new Tile(zoom, x, y, resultat);
+    }
+
     /**
      * Méthode qui reçoit en argument la couleur d'un pixel au format ARGB et
      * retourne la couleur transformée de ce pixel.
@@ -26,5 +80,13 @@ public abstract class FilteringTileProvider implements TileProvider {
      * @param argb la couleur du pixel à transformer au format ARGB
      * @return La couleur transformée de ce pixel
      */
+    @Override
     public abstract int transformARGB(int argb);
-}
\ No newline at end of file
+
+    private static int transformARGB(ArgbFilter[] filtres, int argb) {
+        for (ArgbFilter filtre : filtres) {
+            argb = filtre.transformARGB(argb);
+        }
+        return argb;
+    }
+}
@@ -7,29 +7,93 @@
  */
 package ch.epfl.isochrone.tiledmap;
 
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
-import java.awt.geom.Ellipse2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import ch.epfl.isochrone.geo.PointOSM;
 import ch.epfl.isochrone.timetable.FastestPathTree;
 import ch.epfl.isochrone.timetable.Stop;
 
 public final class IsochroneTileProvider implements TileProvider {
-    private final FastestPathTree fastestPathTree;
+    // Taille des tuiles, en pixels
+    private static final int TILE_SIZE = 256;
+    // Largeur et nombre des segments de ligne dont la durée maximale est
+    // suivie pendant le dessin, en pixels
+    private static final int SEGMENT = 32;
+    private static final int SEGMENTS_PAR_LIGNE = TILE_SIZE / SEGMENT;
     private final ColorTable colorTable;
     private final double walkingSpeed;
+    // Seules les durées inférieures à la dernière tranche sont dessinées
+    private final int dureeMax;
+    private final StopProjection projection;
+    // Identifiants (dans la projection) des arrêts atteints avant dureeMax,
+    // par durée de trajet croissante
+    private final int[] arrets;
+    private final int[] dureesArrets;
+    // Index spatiaux des arrêts, construits au premier dessin d'une tuile de
+    // chaque niveau de zoom
+    private final Map<Integer, IndexZoom> index = new HashMap<>();
 
     public IsochroneTileProvider(FastestPathTree fpt, ColorTable ct,
             double walkingSpeed) {
-        this.fastestPathTree = fpt;
+        this(fpt, ct, walkingSpeed, new StopProjection(fpt.stops()));
+    }
+
+    /**
+     * Construit un fournisseur de tuiles isochrones qui lit les coordonnées
+     * OSM des arrêts dans la projection donnée, partagée avec d'autres
+     * fournisseurs.
+     * 
+     * @param fpt
+     *            L'arbre des trajets les plus rapides dessiné
+     * @param ct
+     *            La table de couleurs des tranches de durée
+     * @param walkingSpeed
+     *            La vitesse de marche, en mètres par seconde
+     * @param projection
+     *            Les projections des arrêts, qui doivent contenir tous les
+     *            arrêts de l'arbre
+     * @throws IllegalArgumentException
+     *             Si un arrêt de l'arbre n'est pas projeté
+     */
+    public IsochroneTileProvider(FastestPathTree fpt, ColorTable ct,
+            double walkingSpeed, StopProjection projection)
+            throws IllegalArgumentException {
         this.colorTable = ct;
+        this.projection = projection;
         this.walkingSpeed = walkingSpeed;
+        this.dureeMax = (ct.nombreDeTranches() - 1) * ct.getDuree();
+
+        // Tri par durée : la durée (entière) est stockée dans les 32 bits de
+        // poids fort, l'index de l'arrêt dans les autres
+        Stop[] stops = fpt.stops().toArray(new Stop[fpt.stops().size()]);
+        long[] ordre = new long[stops.length];
+        int count = 0;
+        for (int i = 0; i < stops.length; i++) {
+            int dureeArret = fpt.arrivalTime(stops[i]) - fpt.startingTime();
+            if (dureeArret < dureeMax) {
+                ordre[count++] = ((long) dureeArret << 32) | i;
+            }
+        }
+        Arrays.sort(ordre, 0, count);
+        this.arrets = new int[count];
+        this.dureesArrets = new int[count];
+        for (int k = 0; k < count; k++) {
+            arrets[k] = projection.id(stops[(int) ordre[k]]);
+            if (arrets[k] < 0) {
+                throw new IllegalArgumentException("Arrêt non projeté");
+            }
+            dureesArrets[k] = (int) (ordre[k] >>> 32);
+        }
     }
 
     /**
-     * Fournit la tuile de la carte Isochrone à la position et au zomm donné
+     * Fournit la tuile de la carte Isochrone à la position et au zomm donné.
+     * Chaque pixel prend la couleur de la tranche de la durée de trajet la
+     * plus courte jusqu'à lui : arrivée à un arrêt, puis marche.
      * 
      * @return la tuile
      * 
@@ -40,53 +104,255 @@ public final class IsochroneTileProvider implements TileProvider {
     @Override
     public Tile tileAt(int zoom, int x, int y) {
 
-        BufferedImage bI = new BufferedImage(256, 256,
+        BufferedImage bI = new BufferedImage(TILE_SIZE, TILE_SIZE,
                 BufferedImage.TYPE_INT_ARGB);
+        // Pixels de l'image, écrits directement (ligne par ligne)
+        int[] pixels = ((DataBufferInt) bI.getRaster().getDataBuffer())
+                .getData();
 
-        Graphics2D g2D = bI.createGraphics();
-        g2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-        // Calcul de la taille d'un pixel au niveau de zoom pour déterminer le
-        // taille du cercle
-        double largeurX = (new PointOSM(zoom, x * 256, y * 256).toWGS84())
-                .distanceTo(new PointOSM(zoom, (x * 256) + 1, y * 256)
+        // Calcul de la taille d'un pixel au niveau de zoom, en mètres
+        PointOSM corner = new PointOSM(zoom, x * TILE_SIZE, y * TILE_SIZE);
+        double largeurX = corner.toWGS84().distanceTo(
+                new PointOSM(zoom, x * TILE_SIZE + 1, y * TILE_SIZE)
                         .toWGS84());
-
-        double largeurY = (new PointOSM(zoom, x * 256, y * 256).toWGS84())
-                .distanceTo(new PointOSM(zoom, x * 256, (y * 256) + 1)
+        double largeurY = corner.toWGS84().distanceTo(
+                new PointOSM(zoom, x * TILE_SIZE, y * TILE_SIZE + 1)
                         .toWGS84());
 
-        for (int i = colorTable.nombreDeTranches() - 1; i > 0; i--) {
+        int duree = colorTable.getDuree();
 
-            int tempsTotal = i * colorTable.getDuree();
+        // Arrêts dont le cercle atteignable avant dureeMax touche la tuile,
+        // trouvés parmi ceux des cellules de l'index voisines de la tuile
+        double rayonMax = walkingSpeed * dureeMax
+                / Math.min(largeurX, largeurY);
+        IndexZoom indexZoom = indexZoom(zoom, Math.max(TILE_SIZE, rayonMax));
+        int[] candidats = indexZoom.arretsProches(corner.x() - rayonMax,
+                corner.y() - rayonMax, corner.x() + TILE_SIZE + rayonMax,
+                corner.y() + TILE_SIZE + rayonMax);
+        int count = 0;
+        for (int i : candidats) {
+            double rayon = walkingSpeed * (dureeMax - dureesArrets[i]);
+            double cx = indexZoom.x[i] - corner.x();
+            double cy = indexZoom.y[i] - corner.y();
+            if (cx + rayon / largeurX >= 0
+                    && cx - rayon / largeurX <= TILE_SIZE
+                    && cy + rayon / largeurY >= 0
+                    && cy - rayon / largeurY <= TILE_SIZE) {
+                candidats[count++] = i;
+            }
+        }
 
-            for (Stop stop : fastestPathTree.stops()) {
+        // Durée de trajet minimale jusqu'au centre de chaque pixel (arrivée
+        // à un arrêt puis marche en ligne droite), bornée par dureeMax, et
+        // maximum de ces durées sur chaque segment de ligne, avec sa
+        // position, et sur chaque ligne. Un arrêt ne peut améliorer un pixel
+        // que s'il l'atteint avant le maximum de son segment : les arrêts
+        // atteints tard ne parcourent presque aucun pixel.
+        double[] durees = new double[TILE_SIZE * TILE_SIZE];
+        Arrays.fill(durees, dureeMax);
+        double[] maxSegment = new double[TILE_SIZE * SEGMENTS_PAR_LIGNE];
+        Arrays.fill(maxSegment, dureeMax);
+        int[] positionMaxSegment = new int[TILE_SIZE * SEGMENTS_PAR_LIGNE];
+        for (int m = 0; m < positionMaxSegment.length; m++) {
+            positionMaxSegment[m] = (m % SEGMENTS_PAR_LIGNE) * SEGMENT;
+        }
+        double[] maxLigne = new double[TILE_SIZE];
+        Arrays.fill(maxLigne, dureeMax);
+        for (int k = 0; k < count; k++) {
+            int i = candidats[k];
+            int dureeArret = dureesArrets[i];
+            double sx = indexZoom.x[i] - corner.x();
+            double sy = indexZoom.y[i] - corner.y();
+            for (int py = 0; py < TILE_SIZE; py++) {
+                double rayon = walkingSpeed * (maxLigne[py] - dureeArret);
+                double dy = (py + 0.5 - sy) * largeurY;
+                if (rayon <= 0 || Math.abs(dy) >= rayon) {
+                    continue;
+                }
+                double rayonX = Math.sqrt(rayon * rayon - dy * dy) / largeurX;
+                int xMin = Math.max(0, (int) Math.ceil(sx - rayonX - 0.5));
+                int xMax = Math.min(TILE_SIZE - 1,
+                        (int) Math.floor(sx + rayonX - 0.5));
+                if (xMin > xMax) {
+                    continue;
+                }
 
-                int dureeRestante = tempsTotal
-                        - (fastestPathTree.arrivalTime(stop) - fastestPathTree
-                                .startingTime());
+                double dy2 = dy * dy;
+                int ligne = py * TILE_SIZE;
+                boolean maxModifie = false;
+                for (int sg = xMin / SEGMENT; sg <= xMax / SEGMENT; sg++) {
+                    int m = py * SEGMENTS_PAR_LIGNE + sg;
+                    double rayonSegment = walkingSpeed
+                            * (maxSegment[m] - dureeArret);
+                    if (rayonSegment <= Math.abs(dy)) {
+                        continue;
+                    }
+                    double rayonSegmentX = Math.sqrt(rayonSegment
+                            * rayonSegment - dy2)
+                            / largeurX;
+                    int debut = Math.max(sg * SEGMENT,
+                            (int) Math.ceil(sx - rayonSegmentX - 0.5));
+                    int fin = Math.min(sg * SEGMENT + SEGMENT - 1,
+                            (int) Math.floor(sx + rayonSegmentX - 0.5));
 
-                if (dureeRestante > 0) {
+                    boolean ameliore = false;
+                    for (int px = debut; px <= fin; px++) {
+                        double dx = (px + 0.5 - sx) * largeurX;
+                        double d = dureeArret + Math.sqrt(dx * dx + dy2)
+                                / walkingSpeed;
+                        if (d < durees[ligne + px]) {
+                            durees[ligne + px] = d;
+                            ameliore = true;
+                        }
+                    }
+                    // Le maximum du segment ne change que si sa position a
+                    // été améliorée
+                    int position = positionMaxSegment[m];
+                    if (ameliore && debut <= position && position <= fin) {
+                        maxSegment[m] = durees[ligne + sg * SEGMENT];
+                        positionMaxSegment[m] = sg * SEGMENT;
+                        for (int px = sg * SEGMENT + 1; px < sg * SEGMENT
+                                + SEGMENT; px++) {
+                            if (durees[ligne + px] > maxSegment[m]) {
+                                maxSegment[m] = durees[ligne + px];
+                                positionMaxSegment[m] = px;
+                            }
+                        }
+                        maxModifie = true;
+                    }
+                }
+                if (maxModifie) {
+                    int m = py * SEGMENTS_PAR_LIGNE;
+                    maxLigne[py] = maxSegment[m];
+                    for (int sg = 1; sg < SEGMENTS_PAR_LIGNE; sg++) {
+                        maxLigne[py] = Math.max(maxLigne[py], maxSegment[m
+                                + sg]);
+                    }
+                }
+            }
+        }
 
-                    PointOSM pOSM = stop.position().toOSM(zoom);
+        // Couleur de la tranche de chaque pixel, transparent au-delà de la
+        // dernière tranche dessinée
+        int[] couleurs = new int[colorTable.nombreDeTranches()];
+        for (int i = 0; i < couleurs.length; i++) {
+            couleurs[i] = colorTable.couleurPourTranche(i).getRGB();
+        }
+        for (int i = 0; i < pixels.length; i++) {
+            if (durees[i] < dureeMax) {
+                pixels[i] = couleurs[(int) (durees[i] / duree)];
+            }
+        }
+        return new Tile(zoom, x, y, bI);
+    }
 
-                    double rayonX = walkingSpeed * dureeRestante / largeurX;
-                    double rayonY = walkingSpeed * dureeRestante / largeurY;
+    /**
+     * Retourne l'index spatial des arrêts au niveau de zoom donné, en le
+     * construisant avec la taille de cellule donnée s'il n'existe pas encore.
+     */
+    private synchronized IndexZoom indexZoom(int zoom, double tailleCellule) {
+        IndexZoom indexZoom = index.get(zoom);
+        if (indexZoom == null) {
+            indexZoom = new IndexZoom(projection, arrets, zoom,
+                    tailleCellule);
+            index.put(zoom, indexZoom);
+        }
+        return indexZoom;
+    }
 
-                    g2D.setColor(colorTable.couleurPourTranche(i - 1));
-                    g2D.fill(new Ellipse2D.Double(pOSM.x() - rayonX
-                            - new PointOSM(zoom, x * 256, y * 256).roundedX(),
-                            pOSM.y()
-                                    - rayonY
-                                    - new PointOSM(zoom, x * 256, y * 256)
-                                            .roundedY(), rayonX * 2, rayonY * 2));
+    /**
+     * Index spatial des arrêts à un niveau de zoom : leurs coordonnées OSM,
+     * réparties dans une grille uniforme dont les cellules sont au moins
+     * aussi grandes que le plus grand cercle dessiné, de sorte qu'une tuile
+     * ne consulte que quelques cellules.
+     */
+    private static final class IndexZoom {
+        private final double[] x, y;
+        private final double minX, minY, tailleCellule;
+        private final int lignes, colonnes;
+        /*
+         * Les arrêts de la cellule c sont ceux dont les index sont stockés aux
+         * positions debutCellule[c] (inclus) à debutCellule[c + 1] (exclu) du
+         * tableau arretsCellules, par index croissant.
+         */
+        private final int[] debutCellule;
+        private final int[] arretsCellules;
 
+        IndexZoom(StopProjection projection, int[] arrets, int zoom,
+                double tailleCellule) {
+            int n = arrets.length;
+            this.x = new double[n];
+            this.y = new double[n];
+            double minX = 0, minY = 0, maxX = 0, maxY = 0;
+            for (int i = 0; i < n; i++) {
+                x[i] = projection.x(arrets[i], zoom);
+                y[i] = projection.y(arrets[i], zoom);
+                if (i == 0) {
+                    minX = maxX = x[i];
+                    minY = maxY = y[i];
                 }
+                minX = Math.min(minX, x[i]);
+                maxX = Math.max(maxX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxY = Math.max(maxY, y[i]);
+            }
+            this.minX = minX;
+            this.minY = minY;
+            this.tailleCellule = tailleCellule;
+            this.lignes = (int) ((maxY - minY) / tailleCellule) + 1;
+            this.colonnes = (int) ((maxX - minX) / tailleCellule) + 1;
 
+            // Répartition des arrêts dans les cellules (tri par dénombrement)
+            int[] celluleArret = new int[n];
+            this.debutCellule = new int[lignes * colonnes + 1];
+            for (int i = 0; i < n; i++) {
+                celluleArret[i] = ligne(y[i]) * colonnes + colonne(x[i]);
+                debutCellule[celluleArret[i] + 1]++;
             }
+            for (int c = 0; c < lignes * colonnes; c++) {
+                debutCellule[c + 1] += debutCellule[c];
+            }
+            int[] suivant = new int[lignes * colonnes];
+            this.arretsCellules = new int[n];
+            for (int i = 0; i < n; i++) {
+                int c = celluleArret[i];
+                arretsCellules[debutCellule[c] + suivant[c]++] = i;
+            }
+        }
 
+        /**
+         * Retourne, par index croissant, les arrêts des cellules qui touchent
+         * le rectangle donné (en coordonnées OSM).
+         */
+        int[] arretsProches(double x0, double y0, double x1, double y1) {
+            int ligneMin = ligne(y0), ligneMax = ligne(y1);
+            int colonneMin = colonne(x0), colonneMax = colonne(x1);
+            int count = 0;
+            for (int l = ligneMin; l <= ligneMax; l++) {
+                count += debutCellule[l * colonnes + colonneMax + 1]
+                        - debutCellule[l * colonnes + colonneMin];
+            }
+            int[] resultat = new int[count];
+            count = 0;
+            for (int l = ligneMin; l <= ligneMax; l++) {
+                int debut = debutCellule[l * colonnes + colonneMin];
+                int fin = debutCellule[l * colonnes + colonneMax + 1];
+                System.arraycopy(arretsCellules, debut, resultat, count, fin
+                        - debut);
+                count += fin - debut;
+            }
+            Arrays.sort(resultat);
+            return resultat;
+        }
+
+        private int ligne(double y) {
+            return (int) Math.min(lignes - 1,
+                    Math.max(0, Math.floor((y - minY) / tailleCellule)));
         }
-        return new Tile(zoom, x, y, bI);
-    }
 
-}
\ No newline at end of file
+        private int colonne(double x) {
+            return (int) Math.min(colonnes - 1,
+                    Math.max(0, Math.floor((x - minX) / tailleCellule)));
+        }
+    }
+}
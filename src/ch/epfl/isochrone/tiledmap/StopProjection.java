@@ -0,0 +1,123 @@
+/**
+ * Projections OSM des arrêts.
+ *
+ * Les coordonnées OSM de chaque arrêt sont calculées une seule fois, au
+ * niveau de zoom 0, et stockées dans des tableaux primitifs ; celles d'un
+ * autre niveau de zoom s'en déduisent par une multiplication par une
+ * puissance de deux, exacte, de sorte qu'elles sont identiques à celles de
+ * PointWGS84.toOSM sans en refaire les calculs trigonométriques. Une même
+ * instance est partagée par les fournisseurs de tuiles et par l'interface
+ * graphique.
+ *
+ * Classe immuable.
+ *
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.tiledmap;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import ch.epfl.isochrone.geo.PointOSM;
+import ch.epfl.isochrone.timetable.Stop;
+
+public final class StopProjection {
+    private final Map<Stop, Integer> ids;
+    // Coordonnées OSM au niveau de zoom 0 de l'arrêt d'identifiant i
+    private final double[] x;
+    private final double[] y;
+
+    /**
+     * Construit les projections des arrêts donnés.
+     *
+     * @param stops
+     *            Les arrêts à projeter
+     */
+    public StopProjection(Collection<Stop> stops) {
+        this.ids = new HashMap<>();
+        this.x = new double[stops.size()];
+        this.y = new double[stops.size()];
+        int i = 0;
+        for (Stop stop : stops) {
+            PointOSM pOSM = stop.position().toOSM(0);
+            ids.put(stop, i);
+            x[i] = pOSM.x();
+            y[i] = pOSM.y();
+            i++;
+        }
+    }
+
+    /**
+     * Retourne l'identifiant de l'arrêt donné, qui permet d'obtenir ses
+     * coordonnées sans recherche dans une table associative.
+     *
+     * @param stop
+     *            L'arrêt
+     * @return L'identifiant de l'arrêt, ou -1 si l'arrêt n'est pas projeté
+     */
+    public int id(Stop stop) {
+        Integer id = ids.get(stop);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Retourne la coordonnée x de l'arrêt d'identifiant donné.
+     *
+     * @param id
+     *            L'identifiant de l'arrêt
+     * @param zoom
+     *            Le niveau de zoom du système de coordonnées OSM
+     * @return La coordonnée x, en pixels
+     * @throws IllegalArgumentException
+     *             Si le zoom est négatif
+     */
+    public double x(int id, int zoom) throws IllegalArgumentException {
+        return Math.scalb(x[id], checkZoom(zoom));
+    }
+
+    /**
+     * Retourne la coordonnée y de l'arrêt d'identifiant donné.
+     *
+     * @param id
+     *            L'identifiant de l'arrêt
+     * @param zoom
+     *            Le niveau de zoom du système de coordonnées OSM
+     * @return La coordonnée y, en pixels
+     * @throws IllegalArgumentException
+     *             Si le zoom est négatif
+     */
+    public double y(int id, int zoom) throws IllegalArgumentException {
+        return Math.scalb(y[id], checkZoom(zoom));
+    }
+
+    /**
+     * Retourne la position de l'arrêt donné dans le système de coordonnées
+     * OSM, égale à stop.position().toOSM(zoom).
+     *
+     * @param stop
+     *            L'arrêt
+     * @param zoom
+     *            Le niveau de zoom du système de coordonnées OSM
+     * @return La position de l'arrêt
+     * @throws IllegalArgumentException
+     *             Si l'arrêt n'est pas projeté ou si le zoom est négatif
+     */
+    public PointOSM toOSM(Stop stop, int zoom)
+            throws IllegalArgumentException {
+        int id = id(stop);
+        if (id < 0) {
+            throw new IllegalArgumentException("Arrêt inconnu");
+        }
+        return new PointOSM(zoom, x(id, zoom), y(id, zoom));
+    }
+
+    private static int checkZoom(int zoom) throws IllegalArgumentException {
+        if (zoom < 0) {
+            throw new IllegalArgumentException("Zoom négatif");
+        }
+        return zoom;
+    }
+}
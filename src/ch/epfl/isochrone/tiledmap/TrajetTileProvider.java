@@ -17,15 +17,59 @@ import java.util.LinkedList;
 import java.util.List;
 
 import ch.epfl.isochrone.geo.PointOSM;
+import ch.epfl.isochrone.timetable.FastestPathTree;
 import ch.epfl.isochrone.timetable.Stop;
 
 public class TrajetTileProvider implements TileProvider {
     LinkedList<Stop> listeArrtes;
+    // Étapes entre les arrêts successifs (FastestPathTree.legsTo), ou null si
+    // elles sont inconnues
+    int[] etapes;
     PointOSM pOSM;
+    StopProjection projection;
+    // Identifiants des arrêts du trajet dans la projection
+    int[] ids;
 
     public TrajetTileProvider(List<Stop> liste, PointOSM pOSM) {
+        this(liste, null, pOSM);
+    }
+
+    public TrajetTileProvider(List<Stop> liste, int[] etapes, PointOSM pOSM) {
+        this(liste, etapes, pOSM, new StopProjection(liste));
+    }
+
+    /**
+     * Construit un fournisseur dessinant les étapes à pied du trajet en rouge
+     * et celles en transport public en noir.
+     * 
+     * @param liste
+     *            Les arrêts du trajet (FastestPathTree.pathTo)
+     * @param etapes
+     *            Les étapes entre les arrêts (FastestPathTree.legsTo)
+     * @param pOSM
+     *            Le point de destination, atteint à pied depuis le dernier
+     *            arrêt
+     * @param projection
+     *            Les projections des arrêts, qui doivent contenir tous ceux
+     *            du trajet
+     * @throws IllegalArgumentException
+     *             Si un arrêt du trajet n'est pas projeté
+     */
+    public TrajetTileProvider(List<Stop> liste, int[] etapes, PointOSM pOSM,
+            StopProjection projection) throws IllegalArgumentException {
         this.listeArrtes = new LinkedList<Stop>(liste);
+        this.etapes = etapes == null ? null : etapes.clone();
         this.pOSM = pOSM;
+        this.projection = projection;
+        this.ids = new int[liste.size()];
+        int i = 0;
+        for (Stop s : liste) {
+            ids[i] = projection.id(s);
+            if (ids[i] < 0) {
+                throw new IllegalArgumentException("Arrêt non projeté");
+            }
+            i++;
+        }
     }
 
     /*
@@ -42,20 +86,20 @@ public class TrajetTileProvider implements TileProvider {
         Graphics2D g2D = bI.createGraphics();
         g2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
                 RenderingHints.VALUE_ANTIALIAS_ON);
-        g2D.setColor(new Color(0, 0, 0));
-
-        for (int i = 0; i < listeArrtes.size() - 1; i++) {
-            // Dessin du trajet entre les différents arrêts. C'est à dire les
-            // parcours en transport public (en noir).
-            Line2D line = new Line2D.Float(
-                    Math.round((listeArrtes.get(i).position().toOSM(zoom).x() - new PointOSM(
-                            zoom, x * 256, y * 256).x())),
-                    Math.round((listeArrtes.get(i).position().toOSM(zoom).y() - new PointOSM(
-                            zoom, x * 256, y * 256).y())),
-                    Math.round((listeArrtes.get(i + 1).position().toOSM(zoom)
-                            .x() - new PointOSM(zoom, x * 256, y * 256).x())),
-                    Math.round((listeArrtes.get(i + 1).position().toOSM(zoom)
-                            .y() - new PointOSM(zoom, x * 256, y * 256).y())));
+        PointOSM coin = new PointOSM(zoom, x * 256, y * 256);
+        for (int i = 0; i < ids.length - 1; i++) {
+            // Dessin du trajet entre les différents arrêts : les parcours en
+            // transport public en noir, ceux à pied en rouge.
+            if (etapes != null && etapes[i] == FastestPathTree.WALKING_LEG) {
+                g2D.setColor(new Color(255, 0, 0));
+            } else {
+                g2D.setColor(new Color(0, 0, 0));
+            }
+            Line2D line = new Line2D.Float(Math.round(projection.x(ids[i],
+                    zoom) - coin.x()), Math.round(projection.y(ids[i], zoom)
+                    - coin.y()), Math.round(projection.x(ids[i + 1], zoom)
+                    - coin.x()), Math.round(projection.y(ids[i + 1], zoom)
+                    - coin.y()));
 
             g2D.draw(line);
         }
@@ -63,14 +107,10 @@ public class TrajetTileProvider implements TileProvider {
         g2D.setColor(new Color(255, 0, 0));
 
         // Dession du trajet a faire a pied depuis l'arrêt d'arrivée. (en rouge)
-        g2D.draw(new Line2D.Float(
-                (int) (listeArrtes.get(listeArrtes.size() - 1).position()
-                        .toOSM(zoom).x() - new PointOSM(zoom, x * 256, y * 256)
-                        .x()), (int) (listeArrtes.get(listeArrtes.size() - 1)
-                        .position().toOSM(zoom).y() - new PointOSM(zoom,
-                        x * 256, y * 256).y()), (int) (pOSM.x() - new PointOSM(
-                        zoom, x * 256, y * 256).x()),
-                (int) (pOSM.y() - new PointOSM(zoom, x * 256, y * 256).y())));
+        int dernier = ids[ids.length - 1];
+        g2D.draw(new Line2D.Float((int) (projection.x(dernier, zoom) - coin
+                .x()), (int) (projection.y(dernier, zoom) - coin.y()),
+                (int) (pOSM.x() - coin.x()), (int) (pOSM.y() - coin.y())));
 
         return new Tile(zoom, x, y, bI);
     }
@@ -0,0 +1,290 @@
+/**
+ * Recherche des trajets les plus rapides par balayage des connexions
+ * (Connection Scan Algorithm).
+ *
+ * Chaque trajet d'un arc du graphe est une connexion élémentaire entre deux
+ * arrêts. Les connexions des services actifs sont stockées dans des tableaux
+ * primitifs triés par heure de départ ; une recherche les parcourt une seule
+ * fois, dans l'ordre, à partir de l'heure de départ : une connexion est
+ * empruntée si son arrêt de départ est atteint à temps, et améliore alors
+ * l'heure d'arrivée à son arrêt d'arrivée. Les trajets à pied du graphe sont
+ * suivis à chaque amélioration.
+ *
+ * Contrairement à Graph.fastestPaths, qui n'emprunte sur chaque arc que le
+ * premier trajet partant après l'heure d'arrivée, le balayage considère tous
+ * les trajets : les deux recherches donnent les mêmes heures d'arrivée si
+ * aucun trajet d'un arc n'en dépasse un autre (graphe FIFO), sinon le
+ * balayage peut trouver des arrivées plus matinales.
+ *
+ * Classe immuable.
+ *
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+public final class ConnectionScan {
+    // Nombre de bits de l'index d'une connexion dans la clé de tri
+    private static final int INDEX_BITS = 29;
+
+    // Nombre d'entiers décrivant une connexion
+    private static final int CONNECTION_SIZE = 4;
+
+    private final StopIndex stopIndex;
+    /*
+     * Connexions triées par heure de départ, puis d'arrivée, entrelacées pour
+     * être lues séquentiellement : la connexion c occupe les positions 4c
+     * (heure de départ), 4c + 1 (heure d'arrivée), 4c + 2 (arrêt de départ)
+     * et 4c + 3 (arrêt d'arrivée).
+     */
+    private final int[] connections;
+    /*
+     * Trajets à pied au format "compressed sparse row" : ceux partant de
+     * l'arrêt i occupent les positions firstWalk[i] (inclus) à firstWalk[i +
+     * 1] (exclu) des tableaux walkDestination et walkingTime.
+     */
+    private final int[] firstWalk;
+    private final int[] walkDestination;
+    private final int[] walkingTime;
+
+    /**
+     * Construit le tableau des connexions du graphe donné, en ne retenant que
+     * les trajets des services actifs donnés.
+     *
+     * @param graph
+     *            Le graphe des horaires
+     * @param activeServices
+     *            L'ensemble des services actifs retourné par
+     *            Graph.activeServices, ou null pour retenir tous les trajets
+     * @throws IllegalArgumentException
+     *             Si le graphe contient trop de connexions
+     */
+    public ConnectionScan(Graph graph, BitSet activeServices)
+            throws IllegalArgumentException {
+        this.stopIndex = graph.stopIndex();
+        int[] firstEdge = graph.firstEdge();
+        int[] edgeDestination = graph.edgeDestination();
+        GraphEdge[] edges = graph.edges();
+        int n = stopIndex.size();
+
+        // Clés de tri : heure de départ, heure d'arrivée, puis position de la
+        // connexion dans les tableaux temporaires
+        int count = 0;
+        for (GraphEdge edge : edges) {
+            count += edge.packedTrips().length;
+        }
+        if (count >= 1 << INDEX_BITS) {
+            throw new IllegalArgumentException("Trop de connexions");
+        }
+        long[] keys = new long[count];
+        int[] fromStops = new int[count];
+        int[] toStops = new int[count];
+        count = 0;
+        int walkCount = 0;
+        for (int u = 0; u < n; u++) {
+            for (int e = firstEdge[u]; e < firstEdge[u + 1]; e++) {
+                int[] trips = edges[e].packedTrips();
+                int[] services = edges[e].tripServices();
+                for (int i = 0; i < trips.length; i++) {
+                    if (activeServices != null && services != null
+                            && services[i] != GraphEdge.NO_SERVICE
+                            && !activeServices.get(services[i])) {
+                        continue;
+                    }
+                    long departure = GraphEdge
+                            .unpackTripDepartureTime(trips[i]);
+                    long arrival = GraphEdge.unpackTripArrivalTime(trips[i]);
+                    keys[count] = departure << (INDEX_BITS + 17)
+                            | arrival << INDEX_BITS | count;
+                    fromStops[count] = u;
+                    toStops[count] = edgeDestination[e];
+                    count++;
+                }
+                if (edges[e].walkingTime() >= 0) {
+                    walkCount++;
+                }
+            }
+        }
+        Arrays.sort(keys, 0, count);
+
+        this.connections = new int[CONNECTION_SIZE * count];
+        int indexMask = (1 << INDEX_BITS) - 1;
+        for (int c = 0; c < count; c++) {
+            int i = (int) (keys[c] & indexMask);
+            int k = CONNECTION_SIZE * c;
+            connections[k] = (int) (keys[c] >>> (INDEX_BITS + 17));
+            connections[k + 1] = (int) ((keys[c] >>> INDEX_BITS) & 0x1FFFF);
+            connections[k + 2] = fromStops[i];
+            connections[k + 3] = toStops[i];
+        }
+
+        this.firstWalk = new int[n + 1];
+        this.walkDestination = new int[walkCount];
+        this.walkingTime = new int[walkCount];
+        walkCount = 0;
+        for (int u = 0; u < n; u++) {
+            firstWalk[u] = walkCount;
+            for (int e = firstEdge[u]; e < firstEdge[u + 1]; e++) {
+                if (edges[e].walkingTime() >= 0) {
+                    walkDestination[walkCount] = edgeDestination[e];
+                    walkingTime[walkCount] = edges[e].walkingTime();
+                    walkCount++;
+                }
+            }
+        }
+        firstWalk[n] = walkCount;
+    }
+
+    /**
+     * Retourne le nombre de connexions retenues.
+     *
+     * @return Le nombre de connexions.
+     */
+    public int connectionCount() {
+        return connections.length / CONNECTION_SIZE;
+    }
+
+    /**
+     * Retourne l'arbre des trajets les plus rapides pour l'arrêt et l'heure de
+     * départ donnés.
+     *
+     * @param startingStop
+     *            Le Stop de départ
+     * @param departureTime
+     *            L'heure de départ en secondes après minuit
+     * @return L'arbre des trajets les plus rapides, instance de FastestPathTree
+     * @throws IllegalArgumentException
+     *             Si l'arrêt donné ne fait pas partie du graphe ou si l'heure
+     *             de départ est inférieure à zéro
+     */
+    public FastestPathTree fastestPaths(Stop startingStop, int departureTime)
+            throws IllegalArgumentException {
+        return fastestPaths(startingStop, departureTime,
+                Graph.UNLIMITED_TRAVEL_TIME);
+    }
+
+    /**
+     * Retourne l'arbre des trajets les plus rapides pour l'arrêt et l'heure de
+     * départ donnés, limité aux arrêts atteints en au plus la durée donnée.
+     * Le balayage s'arrête à la première connexion partant après cette
+     * durée.
+     *
+     * @param startingStop
+     *            Le Stop de départ
+     * @param departureTime
+     *            L'heure de départ en secondes après minuit
+     * @param maxTravelTime
+     *            La durée de trajet maximale en secondes, ou
+     *            Graph.UNLIMITED_TRAVEL_TIME
+     * @return L'arbre des trajets les plus rapides, ne contenant que les
+     *         arrêts atteints au plus tard à departureTime + maxTravelTime
+     * @throws IllegalArgumentException
+     *             Si l'arrêt donné ne fait pas partie du graphe ou si l'heure
+     *             de départ ou la durée maximale est inférieure à zéro
+     */
+    public FastestPathTree fastestPaths(Stop startingStop, int departureTime,
+            int maxTravelTime) throws IllegalArgumentException {
+        int start = stopIndex.id(startingStop);
+        if (start < 0)
+            throw new IllegalArgumentException(
+                    "L'arrêt donné ne fait pas partie du graphe.");
+        if (departureTime < 0)
+            throw new IllegalArgumentException("Heure de départ inférieure à 0");
+        int latest = Graph.latestArrivalTime(departureTime, maxTravelTime);
+
+        int n = stopIndex.size();
+        int[] arrival = new int[n];
+        int[] predecessor = new int[n];
+        int[] leg = new int[n];
+        Arrays.fill(arrival, SecondsPastMidnight.INFINITE);
+        Arrays.fill(predecessor, -1);
+        Arrays.fill(leg, FastestPathTree.WALKING_LEG);
+        IndexedHeap queue = new IndexedHeap(n);
+
+        arrival[start] = departureTime;
+        walkFrom(start, latest, arrival, predecessor, leg, queue);
+
+        // Première connexion partant à l'heure de départ ou après
+        int low = 0;
+        int high = connections.length / CONNECTION_SIZE;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (connections[CONNECTION_SIZE * middle] < departureTime) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        // Les connexions partant à la même heure sont balayées à nouveau si
+        // l'une d'elles (de durée nulle) atteint un arrêt à cette heure-là,
+        // puisqu'une connexion les précédant peut alors partir de cet arrêt
+        int groupDeparture = -1;
+        int groupStart = 0;
+        boolean rescan = false;
+        int k = CONNECTION_SIZE * low;
+        while (k < connections.length) {
+            int departure = connections[k];
+            if (departure > latest && !rescan) {
+                break;
+            }
+            if (departure != groupDeparture) {
+                if (rescan) {
+                    rescan = false;
+                    k = groupStart;
+                    continue;
+                }
+                groupDeparture = departure;
+                groupStart = k;
+            }
+            int arrivalTime = connections[k + 1];
+            int to = connections[k + 3];
+            if (arrivalTime < arrival[to] && arrivalTime <= latest
+                    && arrival[connections[k + 2]] <= departure) {
+                arrival[to] = arrivalTime;
+                predecessor[to] = connections[k + 2];
+                leg[to] = departure;
+                if (firstWalk[to] < firstWalk[to + 1]) {
+                    walkFrom(to, latest, arrival, predecessor, leg, queue);
+                }
+                rescan |= arrivalTime == departure;
+            }
+            k += CONNECTION_SIZE;
+            if (k == connections.length && rescan) {
+                rescan = false;
+                k = groupStart;
+            }
+        }
+
+        return new FastestPathTree(stopIndex, start, arrival, predecessor,
+                leg);
+    }
+
+    /**
+     * Suit les trajets à pied depuis l'arrêt donné, dont l'heure d'arrivée
+     * vient d'être améliorée, en améliorant les heures d'arrivée des arrêts
+     * ainsi atteints au plus tard à l'heure latest (algorithme de Dijkstra
+     * restreint aux trajets à pied).
+     */
+    private void walkFrom(int stop, int latest, int[] arrival,
+            int[] predecessor, int[] leg, IndexedHeap queue) {
+        queue.push(stop, arrival[stop]);
+        while (!queue.isEmpty()) {
+            int current = queue.removeMin();
+            for (int w = firstWalk[current]; w < firstWalk[current + 1]; w++) {
+                int destination = walkDestination[w];
+                int time = arrival[current] + walkingTime[w];
+                if (time <= latest && time < arrival[destination]) {
+                    arrival[destination] = time;
+                    predecessor[destination] = current;
+                    leg[destination] = FastestPathTree.WALKING_LEG;
+                    queue.push(destination, time);
+                }
+            }
+        }
+    }
+}
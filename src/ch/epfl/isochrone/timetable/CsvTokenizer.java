@@ -0,0 +1,326 @@
+/**
+ * Analyseur des fichiers CSV de l'horaire, travaillant directement sur les
+ * octets.
+ *
+ * Les champs sont séparés par des points-virgules et les lignes par des
+ * retours à la ligne. Les entiers et les nombres décimaux sont lus
+ * directement à partir des octets, sans passer par une chaîne ni découper la
+ * ligne en tableau ; les chaînes sont obtenues par une table de chaînes
+ * (StringPool), de sorte qu'un nom déjà rencontré ne crée aucun objet.
+ *
+ * Utilisation : pour chaque ligne, appeler nextLine puis lire les champs dans
+ * l'ordre avec nextString, nextInt, nextDouble ou skipField. Les lignes vides
+ * sont ignorées.
+ *
+ * Classe uniquement visible dans son paquetage.
+ *
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+final class CsvTokenizer {
+    private static final byte SEPARATOR = ';';
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Puissances de dix représentables exactement par un double
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    // Source des octets, null si toutes les données sont dans le tampon
+    private final InputStream in;
+    private final StringPool pool;
+    private byte[] buffer;
+    // Fin des données valides du tampon
+    private int limit;
+    // Position courante dans la ligne courante, et fin de celle-ci
+    private int position;
+    private int lineEnd;
+    // Début de la ligne suivante
+    private int nextLineStart;
+    // Vrai si un champ reste à lire sur la ligne courante
+    private boolean fieldPending;
+
+    /**
+     * Construit un analyseur lisant le flot donné.
+     *
+     * @param in
+     *            Le flot à lire, fermé par close.
+     * @param pool
+     *            La table des chaînes lues.
+     */
+    public CsvTokenizer(InputStream in, StringPool pool) {
+        if (in == null) {
+            throw new NullPointerException();
+        }
+        this.in = in;
+        this.pool = pool;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.limit = 0;
+        this.nextLineStart = 0;
+    }
+
+    /**
+     * Construit un analyseur lisant les octets donnés, entre les positions
+     * données. Le tableau n'est pas copié.
+     *
+     * @param data
+     *            Les octets à lire.
+     * @param from
+     *            La position du premier octet (inclus).
+     * @param to
+     *            La position du dernier octet (exclu).
+     * @param pool
+     *            La table des chaînes lues.
+     */
+    public CsvTokenizer(byte[] data, int from, int to, StringPool pool) {
+        this.in = null;
+        this.pool = pool;
+        this.buffer = data;
+        this.limit = to;
+        this.nextLineStart = from;
+    }
+
+    /**
+     * Passe à la ligne suivante.
+     *
+     * @return false si la fin des données est atteinte, true sinon.
+     * @throws IOException
+     *             En cas d'erreur d'entrée-sortie.
+     */
+    public boolean nextLine() throws IOException {
+        while (true) {
+            int end = indexOfNewLine(nextLineStart);
+            while (end < 0 && fill()) {
+                end = indexOfNewLine(nextLineStart);
+            }
+            // fill déplace la ligne en cours au début du tampon
+            int start = nextLineStart;
+            if (end < 0) {
+                if (nextLineStart >= limit) {
+                    return false;
+                }
+                // Dernière ligne, sans retour à la ligne final
+                end = limit;
+                nextLineStart = limit;
+            } else {
+                nextLineStart = end + 1;
+            }
+            if (end > start && buffer[end - 1] == '\r') {
+                end--;
+            }
+            if (end > start) {
+                position = start;
+                lineEnd = end;
+                fieldPending = true;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Retourne vrai s'il reste au moins un champ à lire sur la ligne
+     * courante.
+     *
+     * @return true ssi un champ reste à lire.
+     */
+    public boolean hasMoreFields() {
+        return fieldPending;
+    }
+
+    /**
+     * Lit le champ suivant comme une chaîne de caractères.
+     *
+     * @return La chaîne lue, partagée avec les autres lectures de la même
+     *         chaîne.
+     * @throws IllegalArgumentException
+     *             S'il n'y a plus de champ sur la ligne.
+     */
+    public String nextString() throws IllegalArgumentException {
+        int start = position;
+        int end = fieldEnd();
+        return pool.get(buffer, start, end);
+    }
+
+    /**
+     * Ignore le champ suivant.
+     *
+     * @throws IllegalArgumentException
+     *             S'il n'y a plus de champ sur la ligne.
+     */
+    public void skipField() throws IllegalArgumentException {
+        fieldEnd();
+    }
+
+    /**
+     * Lit le champ suivant comme un entier en base 10.
+     *
+     * @return L'entier lu.
+     * @throws NumberFormatException
+     *             Si le champ n'est pas un entier valide.
+     * @throws IllegalArgumentException
+     *             S'il n'y a plus de champ sur la ligne.
+     */
+    public int nextInt() throws IllegalArgumentException {
+        int start = position;
+        int end = fieldEnd();
+        int i = start;
+        boolean negative = i < end && buffer[i] == '-';
+        if (negative || (i < end && buffer[i] == '+')) {
+            i++;
+        }
+        if (i == end) {
+            throw numberFormatException(start, end);
+        }
+        // Accumulation en négatif, afin de pouvoir représenter
+        // Integer.MIN_VALUE
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9
+                    || value < (Integer.MIN_VALUE + digit) / 10) {
+                throw numberFormatException(start, end);
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative) {
+            if (value == Integer.MIN_VALUE) {
+                throw numberFormatException(start, end);
+            }
+            value = -value;
+        }
+        return value;
+    }
+
+    /**
+     * Lit le champ suivant comme un nombre décimal. Les nombres de la forme
+     * usuelle (signe, chiffres, point, chiffres) dont la mantisse est
+     * inférieure à 2^53 sont convertis directement et exactement ; les autres
+     * formes sont confiées à Double.parseDouble.
+     *
+     * @return Le nombre lu.
+     * @throws NumberFormatException
+     *             Si le champ n'est pas un nombre valide.
+     * @throws IllegalArgumentException
+     *             S'il n'y a plus de champ sur la ligne.
+     */
+    public double nextDouble() throws IllegalArgumentException {
+        int start = position;
+        int end = fieldEnd();
+        int i = start;
+        boolean negative = i < end && buffer[i] == '-';
+        if (negative || (i < end && buffer[i] == '+')) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            byte b = buffer[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+                if (mantissa >= 1L << 53) {
+                    break;
+                }
+            } else if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+
+        // La mantisse et la puissance de dix étant exactes, le quotient est
+        // correctement arrondi
+        if (i == end && digits > 0 && mantissa < 1L << 53
+                && fractionDigits < POWERS_OF_TEN.length) {
+            double value = fractionDigits > 0 ? mantissa
+                    / POWERS_OF_TEN[fractionDigits] : mantissa;
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(buffer, start, end - start,
+                StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Ferme le flot lu, s'il y en a un.
+     *
+     * @throws IOException
+     *             En cas d'erreur d'entrée-sortie.
+     */
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        }
+    }
+
+    /**
+     * Termine la lecture du champ courant et retourne sa fin (exclue).
+     */
+    private int fieldEnd() throws IllegalArgumentException {
+        if (!fieldPending) {
+            throw new IllegalArgumentException("Champ manquant");
+        }
+        int end = position;
+        while (end < lineEnd && buffer[end] != SEPARATOR) {
+            end++;
+        }
+        fieldPending = end < lineEnd;
+        position = end + 1;
+        return end;
+    }
+
+    private int indexOfNewLine(int from) {
+        for (int i = from; i < limit; i++) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Complète le tampon avec la suite du flot, en conservant la ligne en
+     * cours de lecture (à partir de nextLineStart).
+     *
+     * @return false si la fin du flot est atteinte.
+     */
+    private boolean fill() throws IOException {
+        if (in == null) {
+            return false;
+        }
+        int remaining = limit - nextLineStart;
+        if (remaining == buffer.length) {
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+        } else if (nextLineStart > 0) {
+            System.arraycopy(buffer, nextLineStart, buffer, 0, remaining);
+        }
+        nextLineStart = 0;
+        limit = remaining;
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read <= 0) {
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    private NumberFormatException numberFormatException(int start, int end) {
+        return new NumberFormatException("Nombre invalide: "
+                + new String(buffer, start, end - start,
+                        StandardCharsets.UTF_8));
+    }
+}
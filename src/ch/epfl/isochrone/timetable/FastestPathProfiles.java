@@ -0,0 +1,350 @@
+/**
+ * Profils des trajets les plus rapides depuis un arrêt, pour un intervalle
+ * d'heures de départ.
+ *
+ * Permet d'obtenir l'arbre des trajets les plus rapides (ou l'heure d'arrivée
+ * à un arrêt) pour n'importe quelle heure de départ de l'intervalle, sans
+ * nouvelle recherche dans le graphe. Construit par Graph.fastestPathProfiles.
+ *
+ * Pour chaque arrêt sont conservées les heures d'arrivée (et prédécesseurs
+ * et étapes) successives obtenues par les recherches faites aux heures de
+ * départ où le résultat peut changer, de la plus tardive à la plus
+ * matinale. L'heure d'arrivée pour un départ à l'heure t est celle de la
+ * recherche faite à la première de ces heures supérieure ou égale à t, à
+ * moins que l'arrêt ne soit atteint plus tôt à pied depuis l'arrêt de
+ * départ.
+ *
+ * Classe immuable.
+ *
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+public final class FastestPathProfiles {
+    private final Stop startingStop;
+    private final int fromTime;
+    private final int toTime;
+
+    // Graphe et services actifs, utilisés uniquement si les arbres sont
+    // calculés à la demande (graphe non FIFO)
+    private final Graph graph;
+    private final BitSet activeServices;
+
+    private final StopIndex stopIndex;
+    private final int start;
+    // Heures de départ des recherches, par ordre décroissant
+    private final int[] runs;
+    // Temps de marche minimal depuis l'arrêt de départ, et prédécesseur sur
+    // le chemin à pied correspondant
+    private final int[] walkingTime;
+    private final int[] walkingPredecessor;
+    /*
+     * Améliorations successives des heures d'arrivée : celles de l'arrêt i
+     * occupent les positions firstEntry[i] (inclus) à firstEntry[i + 1]
+     * (exclu) des tableaux suivants, par ordre de recherche.
+     */
+    private final int[] firstEntry;
+    private final int[] entryRun;
+    private final int[] entryArrivalTime;
+    private final int[] entryPredecessor;
+    private final int[] entryLeg;
+
+    /**
+     * Construit les profils à partir des recherches faites par le graphe.
+     *
+     * @param stopIndex
+     *            La numérotation des arrêts du graphe
+     * @param start
+     *            L'identifiant de l'arrêt de départ
+     * @param fromTime
+     *            La première heure de départ
+     * @param toTime
+     *            La dernière heure de départ
+     * @param runs
+     *            Les heures de départ des recherches, par ordre décroissant
+     * @param walkingTime
+     *            Les temps de marche minimaux depuis l'arrêt de départ
+     * @param walkingPredecessor
+     *            Les prédécesseurs sur les chemins à pied
+     * @param log
+     *            Le journal des améliorations, dans l'ordre où elles ont eu
+     *            lieu : cinq entiers (arrêt, index de la recherche, heure
+     *            d'arrivée, prédécesseur, étape) par amélioration
+     * @param logCount
+     *            Le nombre d'améliorations du journal
+     */
+    FastestPathProfiles(StopIndex stopIndex, int start, int fromTime,
+            int toTime, int[] runs, int[] walkingTime,
+            int[] walkingPredecessor, int[] log, int logCount) {
+        this.startingStop = stopIndex.stop(start);
+        this.fromTime = fromTime;
+        this.toTime = toTime;
+        this.graph = null;
+        this.activeServices = null;
+        this.stopIndex = stopIndex;
+        this.start = start;
+        this.runs = runs;
+        this.walkingTime = walkingTime;
+        this.walkingPredecessor = walkingPredecessor;
+
+        // Regroupement des améliorations par arrêt (tri par dénombrement,
+        // stable)
+        int n = stopIndex.size();
+        this.firstEntry = new int[n + 1];
+        for (int i = 0; i < logCount; i++) {
+            firstEntry[log[5 * i] + 1]++;
+        }
+        for (int s = 0; s < n; s++) {
+            firstEntry[s + 1] += firstEntry[s];
+        }
+        this.entryRun = new int[logCount];
+        this.entryArrivalTime = new int[logCount];
+        this.entryPredecessor = new int[logCount];
+        this.entryLeg = new int[logCount];
+        int[] next = new int[n];
+        for (int i = 0; i < logCount; i++) {
+            int s = log[5 * i];
+            int k = firstEntry[s] + next[s]++;
+            entryRun[k] = log[5 * i + 1];
+            entryArrivalTime[k] = log[5 * i + 2];
+            entryPredecessor[k] = log[5 * i + 3];
+            entryLeg[k] = log[5 * i + 4];
+        }
+    }
+
+    /**
+     * Construit des profils dont les arbres sont calculés à la demande par le
+     * graphe donné.
+     *
+     * @param graph
+     *            Le graphe
+     * @param startingStop
+     *            L'arrêt de départ
+     * @param fromTime
+     *            La première heure de départ
+     * @param toTime
+     *            La dernière heure de départ
+     * @param activeServices
+     *            Les services actifs, ou null
+     */
+    FastestPathProfiles(Graph graph, Stop startingStop, int fromTime,
+            int toTime, BitSet activeServices) {
+        this.startingStop = startingStop;
+        this.fromTime = fromTime;
+        this.toTime = toTime;
+        this.graph = graph;
+        this.activeServices = activeServices == null ? null
+                : (BitSet) activeServices.clone();
+        this.stopIndex = null;
+        this.start = -1;
+        this.runs = null;
+        this.walkingTime = null;
+        this.walkingPredecessor = null;
+        this.firstEntry = null;
+        this.entryRun = null;
+        this.entryArrivalTime = null;
+        this.entryPredecessor = null;
+        this.entryLeg = null;
+    }
+
+    /**
+     * Retourne l'arrêt de départ.
+     *
+     * @return L'arrêt de départ des profils.
+     */
+    public Stop startingStop() {
+        return startingStop;
+    }
+
+    /**
+     * Retourne la première heure de départ de l'intervalle.
+     *
+     * @return La première heure de départ, en secondes après minuit.
+     */
+    public int fromTime() {
+        return fromTime;
+    }
+
+    /**
+     * Retourne la dernière heure de départ (incluse) de l'intervalle.
+     *
+     * @return La dernière heure de départ, en secondes après minuit.
+     */
+    public int toTime() {
+        return toTime;
+    }
+
+    /**
+     * Retourne l'arbre des trajets les plus rapides pour l'heure de départ
+     * donnée, identique à celui que retournerait Graph.fastestPaths.
+     *
+     * @param departureTime
+     *            L'heure de départ, en secondes après minuit
+     * @return L'arbre des trajets les plus rapides
+     * @throws IllegalArgumentException
+     *             Si l'heure de départ est en dehors de l'intervalle des
+     *             profils
+     */
+    public FastestPathTree treeAt(int departureTime)
+            throws IllegalArgumentException {
+        checkDepartureTime(departureTime);
+        if (graph != null) {
+            return graph.fastestPaths(startingStop, departureTime,
+                    activeServices);
+        }
+
+        int run = run(departureTime);
+        int n = stopIndex.size();
+        int[] treeArrivalTime = new int[n];
+        int[] treePredecessor = new int[n];
+        int[] treeLeg = new int[n];
+        for (int s = 0; s < n; s++) {
+            int k = entry(s, run);
+            int arrivalTime = k < 0 ? SecondsPastMidnight.INFINITE
+                    : entryArrivalTime[k];
+            int walkingArrivalTime = walkingArrivalTime(s, departureTime);
+            if (s == start) {
+                treeArrivalTime[s] = departureTime;
+                treePredecessor[s] = -1;
+                treeLeg[s] = FastestPathTree.WALKING_LEG;
+            } else if (walkingArrivalTime < arrivalTime) {
+                treeArrivalTime[s] = walkingArrivalTime;
+                treePredecessor[s] = walkingPredecessor[s];
+                treeLeg[s] = FastestPathTree.WALKING_LEG;
+            } else {
+                treeArrivalTime[s] = arrivalTime;
+                treePredecessor[s] = k < 0 ? -1 : entryPredecessor[k];
+                treeLeg[s] = k < 0 ? FastestPathTree.WALKING_LEG
+                        : entryLeg[k];
+            }
+        }
+        return new FastestPathTree(stopIndex, start, treeArrivalTime,
+                treePredecessor, treeLeg);
+    }
+
+    /**
+     * Retourne l'heure d'arrivée à l'arrêt donné pour un départ à l'heure
+     * donnée.
+     *
+     * @param stop
+     *            L'arrêt d'arrivée
+     * @param departureTime
+     *            L'heure de départ, en secondes après minuit
+     * @return L'heure d'arrivée, ou SecondsPastMidnight.INFINITE si l'arrêt
+     *         n'est pas atteignable
+     * @throws IllegalArgumentException
+     *             Si l'heure de départ est en dehors de l'intervalle des
+     *             profils
+     */
+    public int arrivalTime(Stop stop, int departureTime)
+            throws IllegalArgumentException {
+        checkDepartureTime(departureTime);
+        if (graph != null) {
+            return graph.fastestPaths(startingStop, departureTime,
+                    activeServices).arrivalTime(stop);
+        }
+
+        int s = stopIndex.id(stop);
+        if (s < 0) {
+            return SecondsPastMidnight.INFINITE;
+        }
+        if (s == start) {
+            return departureTime;
+        }
+        int k = entry(s, run(departureTime));
+        int arrivalTime = k < 0 ? SecondsPastMidnight.INFINITE
+                : entryArrivalTime[k];
+        return Math.min(arrivalTime, walkingArrivalTime(s, departureTime));
+    }
+
+    /**
+     * Retourne les prédécesseurs distincts de l'arrêt d'identifiant donné
+     * dans les arbres de toutes les heures de départ de l'intervalle : ceux
+     * retenus à la fin de chaque recherche, et celui du chemin à pied depuis
+     * l'arrêt de départ. Uniquement pour les profils d'un graphe FIFO.
+     *
+     * @return Les identifiants des prédécesseurs, par ordre croissant.
+     */
+    int[] predecessors(int stop) {
+        int end = firstEntry[stop + 1];
+        int[] predecessors = new int[end - firstEntry[stop] + 1];
+        int count = 0;
+        for (int k = firstEntry[stop]; k < end; k++) {
+            // Les améliorations suivies d'une autre de la même recherche
+            // n'appartiennent à aucun arbre
+            if (k + 1 == end || entryRun[k + 1] != entryRun[k]) {
+                predecessors[count++] = entryPredecessor[k];
+            }
+        }
+        if (walkingPredecessor[stop] >= 0) {
+            predecessors[count++] = walkingPredecessor[stop];
+        }
+        Arrays.sort(predecessors, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || predecessors[i] != predecessors[distinct - 1]) {
+                predecessors[distinct++] = predecessors[i];
+            }
+        }
+        return Arrays.copyOf(predecessors, distinct);
+    }
+
+    private void checkDepartureTime(int departureTime)
+            throws IllegalArgumentException {
+        if (departureTime < fromTime || departureTime > toTime) {
+            throw new IllegalArgumentException(
+                    "Heure de départ en dehors de l'intervalle");
+        }
+    }
+
+    /**
+     * Retourne l'index de la recherche faite à la plus petite heure
+     * supérieure ou égale à l'heure donnée.
+     */
+    private int run(int departureTime) {
+        // Dernière recherche dont l'heure est supérieure ou égale à
+        // departureTime (les heures sont décroissantes, runs[0] vaut toTime)
+        int low = 0;
+        int high = runs.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (runs[middle] >= departureTime) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Retourne la position de la dernière amélioration de l'arrêt donné faite
+     * au plus tard par la recherche donnée, ou -1.
+     */
+    private int entry(int stop, int run) {
+        int low = firstEntry[stop];
+        int high = firstEntry[stop + 1];
+        // Première amélioration faite par une recherche ultérieure
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entryRun[middle] <= run) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low > firstEntry[stop] ? low - 1 : -1;
+    }
+
+    private int walkingArrivalTime(int stop, int departureTime) {
+        if (walkingTime[stop] == SecondsPastMidnight.INFINITE) {
+            return SecondsPastMidnight.INFINITE;
+        }
+        return departureTime + walkingTime[stop];
+    }
+}
@@ -8,19 +8,51 @@
  */
 package ch.epfl.isochrone.timetable;
 
-import java.util.Collections;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 // CLASSE IMMUABLE
+/*
+ * Les heures d'arrivée et prédécesseurs sont stockés dans des tableaux
+ * indexés par l'identifiant des arrêts, selon la numérotation du graphe
+ * (partagée par tous ses arbres). Un arrêt fait partie de l'arbre s'il est
+ * l'arrêt de départ, atteint à une heure finie, ou s'il a un prédécesseur.
+ * Le tableau leg indique pour chaque arrêt comment il est atteint depuis son
+ * prédécesseur : à pied (WALKING_LEG) ou par le trajet partant à l'heure
+ * donnée. Un arbre à plusieurs départs (Graph.fastestPaths avec une table de
+ * départs) a pour prédécesseur ORIGIN aux arrêts de départ autres que start.
+ */
 public final class FastestPathTree {
-    private final Stop startingStop;
-    private final Map<Stop, Integer> arrivalTime;
-    private Map<Stop, Stop> predecessor;
+    /**
+     * Étape parcourue à pied.
+     */
+    public static final int WALKING_LEG = -1;
+    /**
+     * Étape dont le moyen est inconnu, pour les arbres construits à partir de
+     * tables associatives (et donc par le bâtisseur).
+     */
+    public static final int UNKNOWN_LEG = -2;
+    /**
+     * Prédécesseur des arrêts de départ supplémentaires d'un arbre à
+     * plusieurs départs.
+     */
+    static final int ORIGIN = -2;
+
+    private final StopIndex stopIndex;
+    private final int start;
+    private final int startingTime;
+    private final int[] arrivalTime;
+    private final int[] predecessor;
+    private final int[] leg;
+    private final int size;
+    private final Set<Stop> stops;
 
     /**
      * Constructeur de FastestPathTree
@@ -49,9 +81,76 @@ public final class FastestPathTree {
                     "Pas les mêmes entrées dans les 2 tableaux");
         }
 
-        this.startingStop = startingStop;
-        this.arrivalTime = new HashMap<Stop, Integer>(arrivalTime);
-        this.predecessor = new HashMap<Stop, Stop>(predecessor);
+        // Numérotation propre à l'arbre, qui contient aussi les
+        // prédécesseurs
+        set.addAll(predecessor.values());
+        set.remove(null);
+        this.stopIndex = new StopIndex(set);
+        this.start = stopIndex.id(startingStop);
+        this.arrivalTime = new int[stopIndex.size()];
+        this.predecessor = new int[stopIndex.size()];
+        Arrays.fill(this.arrivalTime, SecondsPastMidnight.INFINITE);
+        Arrays.fill(this.predecessor, -1);
+        this.leg = new int[stopIndex.size()];
+        Arrays.fill(this.leg, UNKNOWN_LEG);
+        for (Map.Entry<Stop, Integer> e : arrivalTime.entrySet()) {
+            this.arrivalTime[stopIndex.id(e.getKey())] = e.getValue();
+        }
+        for (Map.Entry<Stop, Stop> e : predecessor.entrySet()) {
+            if (e.getValue() != null) {
+                this.predecessor[stopIndex.id(e.getKey())] = stopIndex.id(e
+                        .getValue());
+            }
+        }
+        this.predecessor[start] = -1;
+        this.startingTime = this.arrivalTime[start];
+        this.size = count();
+        this.stops = new StopSet();
+    }
+
+    /**
+     * Construit un arbre à partir des tableaux donnés, qui ne sont pas copiés.
+     * 
+     * @param stopIndex
+     *            La numérotation des arrêts du graphe
+     * @param start
+     *            L'identifiant de l'arrêt de départ
+     * @param arrivalTime
+     *            Les heures d'arrivée, par identifiant d'arrêt
+     * @param predecessor
+     *            Les prédécesseurs, par identifiant d'arrêt, ou -1 pour
+     *            l'arrêt de départ et les arrêts ne faisant pas partie de
+     *            l'arbre
+     * @param leg
+     *            Les étapes menant du prédécesseur à chaque arrêt, par
+     *            identifiant d'arrêt : WALKING_LEG ou l'heure de départ du
+     *            trajet emprunté
+     */
+    FastestPathTree(StopIndex stopIndex, int start, int[] arrivalTime,
+            int[] predecessor, int[] leg) {
+        this(stopIndex, start, arrivalTime[start], arrivalTime, predecessor,
+                leg);
+    }
+
+    /**
+     * Construit un arbre à plusieurs départs à partir des tableaux donnés, qui
+     * ne sont pas copiés : les arrêts de départ autres que start ont pour
+     * prédécesseur ORIGIN et pour heure d'arrivée leur heure de départ.
+     * 
+     * @param startingTime
+     *            L'heure de départ de la recherche, qui peut précéder
+     *            l'heure d'arrivée à l'arrêt de départ start
+     */
+    FastestPathTree(StopIndex stopIndex, int start, int startingTime,
+            int[] arrivalTime, int[] predecessor, int[] leg) {
+        this.stopIndex = stopIndex;
+        this.start = start;
+        this.startingTime = startingTime;
+        this.arrivalTime = arrivalTime;
+        this.predecessor = predecessor;
+        this.leg = leg;
+        this.size = count();
+        this.stops = new StopSet();
     }
 
     /**
@@ -60,18 +159,19 @@ public final class FastestPathTree {
      * @return Un objet Stop qui est l'arrêt de départ.
      */
     public Stop startingStop() {
-        return startingStop;
+        return stopIndex.stop(start);
     }
 
     /**
      * Retourne l'heure de départ, qui est l'heure de première arrivée à l'arrêt
-     * de départ.
+     * de départ, sauf pour un arbre à plusieurs départs, où les heures
+     * d'arrivée aux arrêts de départ incluent leur décalage.
      * 
      * @return L'heure de départ sous forme de int en seconde après minuit.
      */
     public int startingTime() {
 
-        return arrivalTime.get(startingStop);
+        return startingTime;
 
     }
 
@@ -83,7 +183,7 @@ public final class FastestPathTree {
      *         première arrivée existe.
      */
     public Set<Stop> stops() {
-        return Collections.unmodifiableSet(arrivalTime.keySet());
+        return stops;
     }
 
     /**
@@ -99,8 +199,9 @@ public final class FastestPathTree {
      * 
      */
     public int arrivalTime(Stop stop) {
-        if (arrivalTime.containsKey(stop)) {
-            return arrivalTime.get(stop);
+        int id = stopIndex.id(stop);
+        if (id >= 0 && contains(id)) {
+            return arrivalTime[id];
         } else {
             return SecondsPastMidnight.INFINITE;
         }
@@ -108,7 +209,8 @@ public final class FastestPathTree {
 
     /**
      * Retourne le chemin pour aller de l'arrêt de départ à celui passé en
-     * argument
+     * argument. Dans un arbre à plusieurs départs, le chemin commence à
+     * l'arrêt de départ dont il est issu.
      * 
      * @param stop
      *            Arrêt que l'on veut "atteindre"
@@ -119,29 +221,127 @@ public final class FastestPathTree {
      *             d'arrivée
      */
     public List<Stop> pathTo(Stop stop) throws IllegalArgumentException {
+        int id = stopIndex.id(stop);
+        if (id < 0 || !contains(id)) {
+            throw new IllegalArgumentException("Stop not present in the list");
+        }
 
-        if (!arrivalTime.containsKey(stop)) {
+        // On compte les arrêts du chemin en remontant les prédécesseurs
+        // jusqu'à l'arrêt de départ, puis on remplit le tableau à l'envers
+        int length = 1;
+        for (int s = id; s != start && predecessor[s] >= 0; s = predecessor[s]) {
+            length++;
+        }
+        Stop[] path = new Stop[length];
+        int s = id;
+        for (int i = length - 1; i >= 0; i--) {
+            path[i] = stopIndex.stop(s);
+            s = predecessor[s];
+        }
+        return Arrays.asList(path);
+    }
+
+    /**
+     * Retourne les étapes du chemin menant de l'arrêt de départ à celui passé
+     * en argument : l'élément i indique comment l'arrêt i + 1 du chemin
+     * retourné par pathTo est atteint depuis l'arrêt i.
+     * 
+     * @param stop
+     *            Arrêt que l'on veut "atteindre"
+     * @return Un tableau (de taille pathTo(stop).size() - 1) contenant pour
+     *         chaque étape WALKING_LEG si elle se fait à pied, l'heure de
+     *         départ (en secondes après minuit) du trajet emprunté sinon, ou
+     *         UNKNOWN_LEG si l'arbre ne connaît pas les trajets empruntés
+     * @throws IllegalArgumentException
+     *             Si l'arrêt passé n'est pas présent dans la table des heures
+     *             d'arrivée
+     */
+    public int[] legsTo(Stop stop) throws IllegalArgumentException {
+        int id = stopIndex.id(stop);
+        if (id < 0 || !contains(id)) {
             throw new IllegalArgumentException("Stop not present in the list");
         }
 
-        LinkedList<Stop> stopsList = new LinkedList<Stop>();
+        int length = 0;
+        for (int s = id; s != start && predecessor[s] >= 0; s = predecessor[s]) {
+            length++;
+        }
+        int[] legs = new int[length];
+        int s = id;
+        for (int i = length - 1; i >= 0; i--) {
+            legs[i] = leg[s];
+            s = predecessor[s];
+        }
+        return legs;
+    }
 
-        Stop currentStop = stop;
-        // On parcours la liste de predecessor jusqu'à arriver à l'arrêt de
-        // départ
-        while (currentStop != startingStop) {
+    private boolean contains(int id) {
+        return (id == start && arrivalTime[id] != SecondsPastMidnight.INFINITE)
+                || predecessor[id] >= 0 || predecessor[id] == ORIGIN;
+    }
 
-            stopsList.add(currentStop);
+    private int count() {
+        int count = 0;
+        for (int i = 0; i < predecessor.length; i++) {
+            if (contains(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
 
-            currentStop = predecessor.get(currentStop);
+    /**
+     * Vue non modifiable des arrêts de l'arbre, sans copie.
+     */
+    private final class StopSet extends AbstractSet<Stop> {
+        @Override
+        public int size() {
+            return size;
+        }
 
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Stop)) {
+                return false;
+            }
+            int id = stopIndex.id((Stop) o);
+            return id >= 0 && FastestPathTree.this.contains(id);
         }
-        stopsList.add(startingStop);
-        // La liste est inversée, començant par l'arrêt de fin jusqu'à l'arrêt
-        // de départ, on l'inverse
-        Collections.reverse(stopsList);
 
-        return stopsList;
+        @Override
+        public Iterator<Stop> iterator() {
+            return new Iterator<Stop>() {
+                private int next = advance(0);
+
+                private int advance(int from) {
+                    while (from < predecessor.length
+                            && !FastestPathTree.this.contains(from)) {
+                        from++;
+                    }
+                    return from;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next < predecessor.length;
+                }
+
+                @Override
+                public Stop next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Stop stop = stopIndex.stop(next);
+                    next = advance(next + 1);
+                    return stop;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
     }
 
     // Classe imbriquée. Batisseur
@@ -10,51 +10,193 @@
 package ch.epfl.isochrone.timetable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Set;
 
+import ch.epfl.isochrone.geo.PointWGS84;
+
 public final class Graph {
-    private final Set<Stop> stops;
-    private final Map<Stop, List<GraphEdge>> outgoingEdges;
+    /**
+     * Durée de trajet maximale signifiant que la recherche n'est pas bornée.
+     */
+    public static final int UNLIMITED_TRAVEL_TIME = Integer.MAX_VALUE;
+    // Taille des cellules de l'index spatial des arrêts, de l'ordre des
+    // distances de marche, en mètres
+    private static final double STOP_GRID_CELL_SIZE = 500;
+
+    // Identifiants denses des arrêts, qui indexent tous les tableaux suivants
+    private final StopIndex stopIndex;
+    /*
+     * Arcs sortants au format "compressed sparse row" : les arcs sortant de
+     * l'arrêt i occupent les positions firstEdge[i] (inclus) à firstEdge[i +
+     * 1] (exclu) des tableaux edgeDestination et edges.
+     */
+    private final int[] firstEdge;
+    private final int[] edgeDestination;
+    private final GraphEdge[] edges;
+    // Noms des services des trajets, indexés par l'index de service stocké
+    // dans les arcs
+    private final String[] serviceNames;
+    // Vrai si tous les arcs respectent la propriété FIFO (voir
+    // GraphEdge.isFifo)
+    private final boolean fifo;
+    /*
+     * Position de chaque arrêt sur la sphère unité (x, y, z), et vitesse
+     * maximale d'un parcours d'arc : corde entre ses extrémités divisée par
+     * sa durée minimale. La corde, plus courte que l'arc de grand cercle,
+     * vérifie l'inégalité triangulaire et ne coûte qu'une racine carrée :
+     * divisée par la vitesse maximale, elle minore le temps de parcours entre
+     * deux arrêts (recherche d'un arrêt à un autre, fastestPathTo).
+     */
+    private final double[] unitPositions;
+    private final double maxSpeed;
+    // Index spatial des arrêts, pour les recherches partant d'un point
+    private final StopGrid stopGrid;
 
     /**
-     * Constructeur privé, passage obligé par le builder
+     * Constructeur, uniquement utilisé par le builder et par le chargement
+     * des instantanés d'horaire (TimeTableSnapshot). Les tableaux ne sont pas
+     * copiés.
      * 
-     * @param stops
-     *            Liste de stops dans le graph
-     * @param outgoingEdges
-     *            Listes des trajets possibles
+     * @param stopIndex
+     *            La numérotation des arrêts du graphe
+     * @param firstEdge
+     *            Pour chaque arrêt, la position de son premier arc sortant
+     *            (tableau de taille nombre d'arrêts + 1)
+     * @param edgeDestination
+     *            L'identifiant de l'arrêt de destination de chaque arc
+     * @param edges
+     *            Les arcs
+     * @param serviceNames
+     *            Les noms des services, par index de service
      */
-    private Graph(Set<Stop> stops, Map<Stop, List<GraphEdge>> outgoingEdges) {
-        this.stops = stops;
-        this.outgoingEdges = outgoingEdges;
+    Graph(StopIndex stopIndex, int[] firstEdge, int[] edgeDestination,
+            GraphEdge[] edges, String[] serviceNames) {
+        this.stopIndex = stopIndex;
+        this.firstEdge = firstEdge;
+        this.edgeDestination = edgeDestination;
+        this.edges = edges;
+        this.serviceNames = serviceNames;
 
         /*
-         * Vérification des arguments: On s'assure que tous les arrêts qui
-         * apparaissent comme clefs dans la table associative sont présents dans
-         * l'ensemble des arrêts passé en premier argument, de même que tous
-         * ceux qui servent de destination aux arcs stockés comme valeurs dans
-         * cette même table.
+         * Vérification des arguments: On s'assure que la destination de chaque
+         * arc est bien l'arrêt désigné par son identifiant.
          */
-        assert stops.containsAll(outgoingEdges.keySet());
-        for (List<GraphEdge> lge : outgoingEdges.values()) {
-            assert stops.contains(lge);
-            for (GraphEdge ge : lge)
-                assert stops.contains(ge.destination());
+        assert firstEdge.length == stopIndex.size() + 1;
+        for (int e = 0; e < edges.length; e++)
+            assert stopIndex.stop(edgeDestination[e]) == edges[e].destination();
+
+        boolean allFifo = true;
+        for (GraphEdge edge : edges)
+            allFifo &= edge.isFifo();
+        this.fifo = allFifo;
+
+        this.unitPositions = new double[3 * stopIndex.size()];
+        for (int s = 0; s < stopIndex.size(); s++) {
+            PointWGS84 position = stopIndex.stop(s).position();
+            double cosLatitude = Math.cos(position.latitude());
+            unitPositions[3 * s] = cosLatitude * Math.cos(position.longitude());
+            unitPositions[3 * s + 1] = cosLatitude
+                    * Math.sin(position.longitude());
+            unitPositions[3 * s + 2] = Math.sin(position.latitude());
+        }
+        double speed = 0;
+        for (int s = 0; s < stopIndex.size(); s++) {
+            for (int e = firstEdge[s]; e < firstEdge[s + 1]; e++) {
+                int duration = edges[e].minimalDuration();
+                double distance = chord(s, edgeDestination[e]);
+                if (duration == 0 && distance > 0)
+                    speed = Double.POSITIVE_INFINITY;
+                else if (duration > 0)
+                    speed = Math.max(speed, distance / duration);
+            }
         }
+        // Légère marge contre les erreurs d'arrondi des cordes
+        this.maxSpeed = speed * 1.000001;
+
+        List<Stop> stops = new ArrayList<>(stopIndex.size());
+        for (int s = 0; s < stopIndex.size(); s++)
+            stops.add(stopIndex.stop(s));
+        this.stopGrid = new StopGrid(stops, STOP_GRID_CELL_SIZE);
     }
 
-    // Méthode à décommenter pour executer le test testAddAllWalkEdges() dans
-    // TestGraph
-    //
-    // public Map<Stop, List<GraphEdge>> getOutgoingEdges() {
-    // return outgoingEdges;
-    // }
+    /*
+     * Accès à la représentation interne du graphe, utilisés pour l'écriture
+     * des instantanés d'horaire. Les tableaux retournés ne doivent pas être
+     * modifiés.
+     */
+
+    StopIndex stopIndex() {
+        return stopIndex;
+    }
+
+    int[] firstEdge() {
+        return firstEdge;
+    }
+
+    int[] edgeDestination() {
+        return edgeDestination;
+    }
+
+    GraphEdge[] edges() {
+        return edges;
+    }
+
+    String[] serviceNames() {
+        return serviceNames;
+    }
+
+    boolean isFifo() {
+        return fifo;
+    }
+
+    /**
+     * Retourne la liste des arcs sortant de l'arrêt donné.
+     * 
+     * @param stop
+     *            L'arrêt de départ des arcs
+     * @return La liste (non modifiable) des arcs sortant de l'arrêt, vide si
+     *         l'arrêt ne fait pas partie du graphe
+     */
+    List<GraphEdge> outgoingEdges(Stop stop) {
+        int id = stopIndex.id(stop);
+        if (id < 0) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(edges).subList(
+                firstEdge[id], firstEdge[id + 1]));
+    }
+
+    /**
+     * Retourne l'ensemble des index des services donnés, à passer à
+     * fastestPaths pour ne considérer que les trajets de ces services. Les
+     * services sont identifiés par leur nom ; ceux dont aucun trajet ne fait
+     * partie du graphe sont ignorés.
+     * 
+     * @param services
+     *            Les services actifs, par exemple ceux retournés par
+     *            TimeTable.servicesForDate
+     * @return L'ensemble des index des services actifs
+     */
+    public BitSet activeServices(Set<Service> services) {
+        Set<String> names = new HashSet<>();
+        for (Service s : services) {
+            names.add(s.name());
+        }
+        BitSet active = new BitSet(serviceNames.length);
+        for (int i = 0; i < serviceNames.length; i++) {
+            if (names.contains(serviceNames[i])) {
+                active.set(i);
+            }
+        }
+        return active;
+    }
 
     /**
      * Retourne l'arbre des trajets les plus rapides pour l'arrêt et l'heure de
@@ -71,51 +213,741 @@ public final class Graph {
      */
     public FastestPathTree fastestPaths(Stop startingStop, int departureTime)
             throws IllegalArgumentException {
+        return fastestPaths(startingStop, departureTime, null);
+    }
+
+    /**
+     * Retourne l'arbre des trajets les plus rapides pour l'arrêt et l'heure de
+     * départ donnés, en n'empruntant que les trajets des services actifs
+     * donnés.
+     * 
+     * @param startingStop
+     *            Le Stop de départ
+     * @param departureTime
+     *            L'heure de départ en secondes après minuit
+     * @param activeServices
+     *            L'ensemble des services actifs retourné par activeServices,
+     *            ou null pour emprunter tous les trajets du graphe
+     * @return L'arbre des trajets les plus rapides, instance de FastestPathTree
+     * @throws IllegalArgumentException
+     *             Si l'arrêt donné ne fait pas partie du graphe ou si l'heure
+     *             de départ est inférieure à zéro
+     */
+    public FastestPathTree fastestPaths(Stop startingStop, int departureTime,
+            BitSet activeServices) throws IllegalArgumentException {
+        return fastestPaths(startingStop, departureTime, activeServices,
+                new SearchWorkspace(this));
+    }
+
+    /**
+     * Retourne l'arbre des trajets les plus rapides pour l'arrêt et l'heure de
+     * départ donnés, en n'empruntant que les trajets des services actifs
+     * donnés, calculé dans l'espace de travail donné.
+     * 
+     * @param startingStop
+     *            Le Stop de départ
+     * @param departureTime
+     *            L'heure de départ en secondes après minuit
+     * @param activeServices
+     *            L'ensemble des services actifs retourné par activeServices,
+     *            ou null pour emprunter tous les trajets du graphe
+     * @param workspace
+     *            L'espace de travail de la recherche, construit pour ce graphe
+     * @return L'arbre des trajets les plus rapides, instance de FastestPathTree
+     * @throws IllegalArgumentException
+     *             Si l'arrêt donné ne fait pas partie du graphe, si l'heure de
+     *             départ est inférieure à zéro ou si l'espace de travail n'a
+     *             pas été construit pour ce graphe
+     */
+    public FastestPathTree fastestPaths(Stop startingStop, int departureTime,
+            BitSet activeServices, SearchWorkspace workspace)
+            throws IllegalArgumentException {
+        return fastestPaths(startingStop, departureTime,
+                UNLIMITED_TRAVEL_TIME, activeServices, workspace);
+    }
+
+    /**
+     * Retourne l'arbre des trajets les plus rapides pour l'arrêt et l'heure de
+     * départ donnés, limité aux arrêts atteints en au plus la durée donnée,
+     * calculé dans l'espace de travail donné. La recherche s'arrête dès que
+     * cette durée est dépassée, au lieu d'explorer tout le réseau atteignable
+     * dans la journée.
+     * 
+     * @param startingStop
+     *            Le Stop de départ
+     * @param departureTime
+     *            L'heure de départ en secondes après minuit
+     * @param maxTravelTime
+     *            La durée de trajet maximale en secondes, ou
+     *            UNLIMITED_TRAVEL_TIME
+     * @param activeServices
+     *            L'ensemble des services actifs retourné par activeServices,
+     *            ou null pour emprunter tous les trajets du graphe
+     * @param workspace
+     *            L'espace de travail de la recherche, construit pour ce graphe
+     * @return L'arbre des trajets les plus rapides, ne contenant que les
+     *         arrêts atteints au plus tard à departureTime + maxTravelTime
+     * @throws IllegalArgumentException
+     *             Si l'arrêt donné ne fait pas partie du graphe, si l'heure de
+     *             départ ou la durée maximale est inférieure à zéro ou si
+     *             l'espace de travail n'a pas été construit pour ce graphe
+     */
+    public FastestPathTree fastestPaths(Stop startingStop, int departureTime,
+            int maxTravelTime, BitSet activeServices, SearchWorkspace workspace)
+            throws IllegalArgumentException {
+        search(startingStop, departureTime, maxTravelTime, activeServices,
+                workspace);
+        return workspace.toFastestPathTree();
+    }
 
-        if (!stops.contains(startingStop))
+    /**
+     * Calcule les heures d'arrivée au plus tôt depuis l'arrêt et l'heure de
+     * départ donnés, en n'empruntant que les trajets des services actifs
+     * donnés. Les résultats sont lus dans l'espace de travail donné ; la
+     * recherche n'alloue aucune mémoire.
+     * 
+     * @param startingStop
+     *            Le Stop de départ
+     * @param departureTime
+     *            L'heure de départ en secondes après minuit
+     * @param activeServices
+     *            L'ensemble des services actifs retourné par activeServices,
+     *            ou null pour emprunter tous les trajets du graphe
+     * @param workspace
+     *            L'espace de travail de la recherche, construit pour ce graphe
+     * @throws IllegalArgumentException
+     *             Si l'arrêt donné ne fait pas partie du graphe, si l'heure de
+     *             départ est inférieure à zéro ou si l'espace de travail n'a
+     *             pas été construit pour ce graphe
+     */
+    public void search(Stop startingStop, int departureTime,
+            BitSet activeServices, SearchWorkspace workspace)
+            throws IllegalArgumentException {
+        search(startingStop, departureTime, UNLIMITED_TRAVEL_TIME,
+                activeServices, workspace);
+    }
+
+    /**
+     * Calcule les heures d'arrivée au plus tôt depuis l'arrêt et l'heure de
+     * départ donnés, limitées aux arrêts atteints en au plus la durée donnée.
+     * Les arrêts atteints plus tard sont considérés comme non atteints.
+     * 
+     * @param startingStop
+     *            Le Stop de départ
+     * @param departureTime
+     *            L'heure de départ en secondes après minuit
+     * @param maxTravelTime
+     *            La durée de trajet maximale en secondes, ou
+     *            UNLIMITED_TRAVEL_TIME
+     * @param activeServices
+     *            L'ensemble des services actifs retourné par activeServices,
+     *            ou null pour emprunter tous les trajets du graphe
+     * @param workspace
+     *            L'espace de travail de la recherche, construit pour ce graphe
+     * @throws IllegalArgumentException
+     *             Si l'arrêt donné ne fait pas partie du graphe, si l'heure de
+     *             départ ou la durée maximale est inférieure à zéro ou si
+     *             l'espace de travail n'a pas été construit pour ce graphe
+     */
+    public void search(Stop startingStop, int departureTime,
+            int maxTravelTime, BitSet activeServices, SearchWorkspace workspace)
+            throws IllegalArgumentException {
+        int start = stopIndex.id(startingStop);
+        if (start < 0)
             throw new IllegalArgumentException(
                     "L'arrêt donné ne fait pas partie du graphe.");
         if (departureTime < 0)
             throw new IllegalArgumentException("Heure de départ inférieure à 0");
+        search(start, departureTime,
+                latestArrivalTime(departureTime, maxTravelTime),
+                activeServices, workspace);
+    }
 
-        final FastestPathTree.Builder fptb = new FastestPathTree.Builder(
-                startingStop, departureTime);
+    /**
+     * Retourne l'heure d'arrivée la plus tardive d'une recherche bornée par
+     * la durée de trajet donnée, sans dépassement de capacité.
+     * 
+     * @param departureTime
+     *            L'heure de départ en secondes après minuit
+     * @param maxTravelTime
+     *            La durée de trajet maximale en secondes, ou
+     *            UNLIMITED_TRAVEL_TIME
+     * @return departureTime + maxTravelTime, ou SecondsPastMidnight.INFINITE
+     *         si la recherche n'est pas bornée avant
+     * @throws IllegalArgumentException
+     *             Si la durée maximale est inférieure à zéro
+     */
+    static int latestArrivalTime(int departureTime, int maxTravelTime)
+            throws IllegalArgumentException {
+        if (maxTravelTime < 0)
+            throw new IllegalArgumentException(
+                    "Durée de trajet maximale inférieure à 0");
+        if (maxTravelTime >= SecondsPastMidnight.INFINITE - departureTime)
+            return SecondsPastMidnight.INFINITE;
+        return departureTime + maxTravelTime;
+    }
 
-        // Queue de priorité triant les horaires par ordre d'arrivée à l'arrêt
-        PriorityQueue<Stop> queue = new PriorityQueue<>(stops.size() - 1,
-                new Comparator<Stop>() {
+    /**
+     * Calcule les heures d'arrivée au plus tôt depuis l'arrêt d'identifiant
+     * et l'heure de départ donnés (algorithme de Dijkstra), dans l'espace de
+     * travail donné. Seuls les arrêts atteints au plus tard à l'heure donnée
+     * (latest) sont insérés dans le tas : la recherche s'arrête dès que
+     * toutes les heures d'arrivée inférieures sont définitives.
+     * 
+     * @throws IllegalArgumentException
+     *             Si l'espace de travail n'a pas été construit pour ce graphe
+     */
+    void search(int start, int departureTime, int latest,
+            BitSet activeServices, SearchWorkspace workspace)
+            throws IllegalArgumentException {
+        if (workspace.stopIndex() != stopIndex)
+            throw new IllegalArgumentException(
+                    "Espace de travail construit pour un autre graphe");
 
-                    @Override
-                    public int compare(Stop stop1, Stop stop2) {
-                        return (Integer.compare(fptb.arrivalTime(stop1),
-                                fptb.arrivalTime(stop2)));
-                    }
-                });
+        // Tas indexé par identifiant d'arrêt, trié par heure d'arrivée. Seuls
+        // les arrêts atteints y sont insérés.
+        workspace.reset(start, departureTime);
+        workspace.queue().push(start, departureTime);
+        settle(latest, activeServices, workspace);
+    }
+
+    /**
+     * Retourne l'arbre des trajets les plus rapides partant de plusieurs
+     * arrêts, en n'empruntant que les trajets des services actifs donnés.
+     * 
+     * @see #search(Map, int, int, BitSet, SearchWorkspace)
+     */
+    public FastestPathTree fastestPaths(Map<Stop, Integer> startingStops,
+            int departureTime, BitSet activeServices)
+            throws IllegalArgumentException {
+        return fastestPaths(startingStops, departureTime,
+                UNLIMITED_TRAVEL_TIME, activeServices, new SearchWorkspace(
+                        this));
+    }
+
+    /**
+     * Retourne l'arbre des trajets les plus rapides partant de plusieurs
+     * arrêts, calculé en une seule recherche dans l'espace de travail donné.
+     * 
+     * @see #search(Map, int, int, BitSet, SearchWorkspace)
+     */
+    public FastestPathTree fastestPaths(Map<Stop, Integer> startingStops,
+            int departureTime, int maxTravelTime, BitSet activeServices,
+            SearchWorkspace workspace) throws IllegalArgumentException {
+        search(startingStops, departureTime, maxTravelTime, activeServices,
+                workspace);
+        return workspace.toFastestPathTree();
+    }
+
+    /**
+     * Calcule les heures d'arrivée au plus tôt depuis le plus favorable des
+     * arrêts de départ donnés, chacun associé au délai (par exemple le temps
+     * de marche depuis un point de la carte) après l'heure de départ auquel
+     * on peut y partir. Le résultat est celui de la recherche depuis chaque
+     * arrêt, en gardant pour chaque arrêt atteint la meilleure heure
+     * d'arrivée, mais en une seule recherche.
+     * 
+     * L'arrêt de départ de l'arbre est celui dont le délai est le plus court
+     * et son heure de départ l'heure de départ donnée. Comme les autres
+     * arrêts de départ, il ne fait partie de l'arbre que s'il est atteint au
+     * plus tard à departureTime + maxTravelTime : si même le plus court des
+     * délais dépasse la durée maximale, l'arbre ne contient aucun arrêt.
+     * 
+     * @param startingStops
+     *            Les Stop de départ, associés à leur délai en secondes
+     * @param departureTime
+     *            L'heure de départ en secondes après minuit
+     * @param maxTravelTime
+     *            La durée de trajet maximale en secondes, délai compris, ou
+     *            UNLIMITED_TRAVEL_TIME
+     * @param activeServices
+     *            L'ensemble des services actifs retourné par activeServices,
+     *            ou null pour emprunter tous les trajets du graphe
+     * @param workspace
+     *            L'espace de travail de la recherche, construit pour ce graphe
+     * @throws IllegalArgumentException
+     *             Si aucun arrêt de départ n'est donné, si l'un d'eux ne fait
+     *             pas partie du graphe, si l'heure de départ, un délai ou la
+     *             durée maximale est inférieur à zéro ou si l'espace de
+     *             travail n'a pas été construit pour ce graphe
+     */
+    public void search(Map<Stop, Integer> startingStops, int departureTime,
+            int maxTravelTime, BitSet activeServices, SearchWorkspace workspace)
+            throws IllegalArgumentException {
+        if (startingStops.isEmpty())
+            throw new IllegalArgumentException("Aucun arrêt de départ");
+        if (departureTime < 0)
+            throw new IllegalArgumentException("Heure de départ inférieure à 0");
+        int latest = latestArrivalTime(departureTime, maxTravelTime);
+        if (workspace.stopIndex() != stopIndex)
+            throw new IllegalArgumentException(
+                    "Espace de travail construit pour un autre graphe");
+
+        int start = -1;
+        int startDelay = 0;
+        for (Map.Entry<Stop, Integer> e : startingStops.entrySet()) {
+            int id = stopIndex.id(e.getKey());
+            if (id < 0)
+                throw new IllegalArgumentException(
+                        "L'arrêt donné ne fait pas partie du graphe.");
+            if (e.getValue() < 0)
+                throw new IllegalArgumentException("Délai inférieur à 0");
+            if (start < 0 || e.getValue() < startDelay) {
+                start = id;
+                startDelay = e.getValue();
+            }
+        }
+
+        // Tous les arrêts de départ sont insérés dans le tas avant la
+        // première itération de l'algorithme de Dijkstra
+        workspace.reset(start, departureTime);
+        IndexedHeap queue = workspace.queue();
+        if (startDelay > latest - departureTime) {
+            // Aucun arrêt de départ n'est atteint à temps : les autres délais
+            // sont au moins aussi longs
+            workspace.setArrivalTime(start, SecondsPastMidnight.INFINITE, -1,
+                    FastestPathTree.WALKING_LEG);
+            return;
+        }
+        int startTime = departureTime + startDelay;
+        workspace.setArrivalTime(start, startTime, -1,
+                FastestPathTree.WALKING_LEG);
+        queue.push(start, startTime);
+        for (Map.Entry<Stop, Integer> e : startingStops.entrySet()) {
+            int id = stopIndex.id(e.getKey());
+            if (id != start && e.getValue() <= latest - departureTime) {
+                workspace.addOrigin(id, departureTime + e.getValue());
+                queue.push(id, departureTime + e.getValue());
+            }
+        }
+        settle(latest, activeServices, workspace);
+    }
 
-        queue.addAll(stops);
+    /**
+     * Retourne l'arbre des trajets les plus rapides partant d'un point
+     * quelconque : la recherche part de tous les arrêts atteignables à pied
+     * depuis ce point, chacun après son temps de marche (voir
+     * walkingTimesFrom).
+     * 
+     * @param origin
+     *            Le point de départ
+     * @param departureTime
+     *            L'heure de départ du point, en secondes après minuit
+     * @param maxWalkingTime
+     *            Le temps de marche maximal jusqu'à un arrêt, en secondes
+     * @param walkingSpeed
+     *            La vitesse de marche, en mètres par seconde
+     * @param maxTravelTime
+     *            La durée de trajet maximale en secondes, marche comprise, ou
+     *            UNLIMITED_TRAVEL_TIME
+     * @param activeServices
+     *            L'ensemble des services actifs retourné par activeServices,
+     *            ou null pour emprunter tous les trajets du graphe
+     * @param workspace
+     *            L'espace de travail de la recherche, construit pour ce graphe
+     * @return L'arbre des trajets les plus rapides, dont l'arrêt de départ
+     *         est l'arrêt le plus proche du point à pied
+     * @throws IllegalArgumentException
+     *             Si aucun arrêt n'est atteignable à pied depuis le point, si
+     *             l'un des paramètres est invalide (voir walkingTimesFrom et
+     *             search) ou si l'espace de travail n'a pas été construit pour
+     *             ce graphe
+     */
+    public FastestPathTree fastestPaths(PointWGS84 origin, int departureTime,
+            int maxWalkingTime, double walkingSpeed, int maxTravelTime,
+            BitSet activeServices, SearchWorkspace workspace)
+            throws IllegalArgumentException {
+        Map<Stop, Integer> startingStops = walkingTimesFrom(origin,
+                maxWalkingTime, walkingSpeed);
+        if (startingStops.isEmpty())
+            throw new IllegalArgumentException(
+                    "Aucun arrêt atteignable à pied depuis le point donné");
+        return fastestPaths(startingStops, departureTime, maxTravelTime,
+                activeServices, workspace);
+    }
 
-        // Algorithme de Djikstra
+    /**
+     * Retourne les arrêts du graphe atteignables à pied depuis le point donné
+     * en au plus le temps de marche donné, trouvés grâce à un index spatial
+     * des arrêts. Les temps de marche sont arrondis comme ceux des trajets à
+     * pied entre arrêts (Builder.addAllWalkEdges).
+     * 
+     * @param point
+     *            Le point de départ
+     * @param maxWalkingTime
+     *            Le temps de marche maximal, en secondes
+     * @param walkingSpeed
+     *            La vitesse de marche, en mètres par seconde
+     * @return Une table associant les arrêts atteignables à leur temps de
+     *         marche en secondes, vide si aucun arrêt n'est atteignable
+     * @throws IllegalArgumentException
+     *             Si le temps de marche est négatif, ou si la vitesse de
+     *             marche est négative ou nulle
+     */
+    public Map<Stop, Integer> walkingTimesFrom(PointWGS84 point,
+            int maxWalkingTime, double walkingSpeed)
+            throws IllegalArgumentException {
+        if (!(maxWalkingTime >= 0))
+            throw new IllegalArgumentException("Temps de marche négatif");
+        if (!(walkingSpeed > 0))
+            throw new IllegalArgumentException(
+                    "Vitesse de marche négative ou nulle");
+
+        Map<Stop, Integer> walkingTimes = new HashMap<>();
+        for (Stop stop : stopGrid.stopsWithin(point, maxWalkingTime
+                * walkingSpeed)) {
+            walkingTimes.put(stop, (int) Math.round(stop.position()
+                    .distanceTo(point) / walkingSpeed));
+        }
+        return walkingTimes;
+    }
+
+    /**
+     * Algorithme de Dijkstra à partir des arrêts insérés dans le tas de
+     * l'espace de travail donné, jusqu'à l'heure donnée (latest).
+     */
+    private void settle(int latest, BitSet activeServices,
+            SearchWorkspace workspace) {
+        IndexedHeap queue = workspace.queue();
         while (!queue.isEmpty()) {
+            int current = queue.removeMin();
+            int currentTime = workspace.arrivalTime(current);
+
+            for (int e = firstEdge[current]; e < firstEdge[current + 1]; e++) {
+                int h = edges[e].earliestArrivalTime(currentTime,
+                        activeServices);
+                int destination = edgeDestination[e];
+                if (h <= latest && h < workspace.arrivalTime(destination)) {
+                    // L'étape n'est déterminée qu'en cas d'amélioration
+                    workspace.setArrivalTime(destination, h, current,
+                            edges[e].earliestLeg(currentTime, activeServices));
+                    queue.push(destination, h);
+                }
+            }
+        }
+    }
+
+    /**
+     * Retourne le trajet le plus rapide de l'arrêt de départ à l'arrêt de
+     * destination donnés, pour l'heure de départ donnée, en n'empruntant que
+     * les trajets des services actifs donnés.
+     * 
+     * @see #fastestPathTo(Stop, int, Stop, BitSet, SearchWorkspace)
+     */
+    public FastestPathTree fastestPathTo(Stop startingStop, int departureTime,
+            Stop destination, BitSet activeServices)
+            throws IllegalArgumentException {
+        return fastestPathTo(startingStop, departureTime, destination,
+                activeServices, new SearchWorkspace(this));
+    }
+
+    /**
+     * Retourne le trajet le plus rapide de l'arrêt de départ à l'arrêt de
+     * destination donnés, pour l'heure de départ donnée, en n'empruntant que
+     * les trajets des services actifs donnés, calculé dans l'espace de
+     * travail donné.
+     * 
+     * La recherche (algorithme A*) explore les arrêts par ordre croissant de
+     * leur heure d'arrivée augmentée d'un minorant du temps restant jusqu'à
+     * la destination : la distance à vol d'oiseau divisée par la vitesse
+     * maximale des arcs du graphe. Elle s'arrête dès que l'heure d'arrivée à
+     * la destination est définitive, sans explorer le reste du réseau.
+     * 
+     * @param startingStop
+     *            Le Stop de départ
+     * @param departureTime
+     *            L'heure de départ en secondes après minuit
+     * @param destination
+     *            Le Stop de destination
+     * @param activeServices
+     *            L'ensemble des services actifs retourné par activeServices,
+     *            ou null pour emprunter tous les trajets du graphe
+     * @param workspace
+     *            L'espace de travail de la recherche, construit pour ce graphe
+     * @return Un arbre des trajets les plus rapides partiel, qui ne contient
+     *         que les arrêts dont l'heure d'arrivée est définitive, dont la
+     *         destination si elle est atteignable : pathTo(destination) en
+     *         donne alors le trajet
+     * @throws IllegalArgumentException
+     *             Si l'un des arrêts donnés ne fait pas partie du graphe, si
+     *             l'heure de départ est inférieure à zéro ou si l'espace de
+     *             travail n'a pas été construit pour ce graphe
+     */
+    public FastestPathTree fastestPathTo(Stop startingStop, int departureTime,
+            Stop destination, BitSet activeServices, SearchWorkspace workspace)
+            throws IllegalArgumentException {
+        int start = stopIndex.id(startingStop);
+        int target = stopIndex.id(destination);
+        if (start < 0 || target < 0)
+            throw new IllegalArgumentException(
+                    "L'arrêt donné ne fait pas partie du graphe.");
+        if (departureTime < 0)
+            throw new IllegalArgumentException("Heure de départ inférieure à 0");
+        if (workspace.stopIndex() != stopIndex)
+            throw new IllegalArgumentException(
+                    "Espace de travail construit pour un autre graphe");
+
+        workspace.reset(start, departureTime);
+        IndexedHeap queue = workspace.queue();
+        queue.push(start, departureTime + lowerBound(start, target));
+
+        // Algorithme A* : le minorant étant cohérent (il ne diminue pas plus
+        // vite que le temps ne passe le long d'un arc), l'heure d'arrivée
+        // d'un arrêt est définitive dès qu'il est retiré du tas
+        while (!queue.isEmpty()) {
+            int current = queue.removeMin();
+            if (current == target)
+                break;
+            int currentTime = workspace.arrivalTime(current);
+
+            for (int e = firstEdge[current]; e < firstEdge[current + 1]; e++) {
+                int h = edges[e].earliestArrivalTime(currentTime,
+                        activeServices);
+                int destinationId = edgeDestination[e];
+                if (h < workspace.arrivalTime(destinationId)) {
+                    workspace.setArrivalTime(destinationId, h, current,
+                            edges[e].earliestLeg(currentTime, activeServices));
+                    queue.push(destinationId,
+                            h + lowerBound(destinationId, target));
+                }
+            }
+        }
+
+        // Les arrêts restés dans le tas n'ont pas d'heure d'arrivée
+        // définitive : ils ne font pas partie de l'arbre
+        while (!queue.isEmpty())
+            workspace.forget(queue.removeMin());
+        return workspace.toFastestPathTree();
+    }
+
+    /**
+     * Retourne un minorant (arrondi vers le bas) du temps de parcours entre
+     * les arrêts d'identifiants donnés.
+     */
+    private int lowerBound(int stop, int target) {
+        if (maxSpeed == 0 || maxSpeed == Double.POSITIVE_INFINITY)
+            return 0;
+        double time = chord(stop, target) / maxSpeed;
+        // Borné pour que l'heure augmentée du minorant ne déborde pas
+        return (int) Math.min(time, SecondsPastMidnight.INFINITE);
+    }
+
+    /**
+     * Retourne la longueur de la corde de la sphère unité reliant les arrêts
+     * d'identifiants donnés.
+     */
+    private double chord(int stop1, int stop2) {
+        double dx = unitPositions[3 * stop1] - unitPositions[3 * stop2];
+        double dy = unitPositions[3 * stop1 + 1] - unitPositions[3 * stop2 + 1];
+        double dz = unitPositions[3 * stop1 + 2] - unitPositions[3 * stop2 + 2];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Retourne les profils des trajets les plus rapides depuis l'arrêt donné,
+     * pour toutes les heures de départ de l'intervalle donné.
+     * 
+     * @param startingStop
+     *            Le Stop de départ
+     * @param fromTime
+     *            La première heure de départ, en secondes après minuit
+     * @param toTime
+     *            La dernière heure de départ (incluse), en secondes après
+     *            minuit
+     * @return Les profils des trajets les plus rapides
+     * @throws IllegalArgumentException
+     *             Si l'arrêt donné ne fait pas partie du graphe ou si
+     *             l'intervalle des heures de départ est invalide
+     * @see #fastestPathProfiles(Stop, int, int, BitSet)
+     */
+    public FastestPathProfiles fastestPathProfiles(Stop startingStop,
+            int fromTime, int toTime) throws IllegalArgumentException {
+        return fastestPathProfiles(startingStop, fromTime, toTime, null);
+    }
+
+    /**
+     * Retourne les profils des trajets les plus rapides depuis l'arrêt donné,
+     * pour toutes les heures de départ de l'intervalle donné, en n'empruntant
+     * que les trajets des services actifs donnés.
+     * 
+     * Le résultat d'une recherche ne change qu'aux heures de départ
+     * auxquelles un trajet devient inaccessible en marchant depuis l'arrêt de
+     * départ : entre deux de ces heures, seules les heures d'arrivée à pied
+     * varient. Les recherches sont donc faites uniquement à ces heures, de la
+     * plus tardive à la plus matinale, en conservant les heures d'arrivée de
+     * la recherche précédente : partir plus tôt ne faisant jamais arriver
+     * plus tard, seuls les arrêts atteints plus tôt sont explorés à nouveau
+     * (principe de rRAPTOR). Si un arc du graphe ne respecte pas la propriété
+     * FIFO, les arbres sont calculés à la demande par fastestPaths.
+     * 
+     * @param startingStop
+     *            Le Stop de départ
+     * @param fromTime
+     *            La première heure de départ, en secondes après minuit
+     * @param toTime
+     *            La dernière heure de départ (incluse), en secondes après
+     *            minuit
+     * @param activeServices
+     *            L'ensemble des services actifs retourné par activeServices,
+     *            ou null pour emprunter tous les trajets du graphe
+     * @return Les profils des trajets les plus rapides
+     * @throws IllegalArgumentException
+     *             Si l'arrêt donné ne fait pas partie du graphe ou si
+     *             l'intervalle des heures de départ est invalide
+     */
+    public FastestPathProfiles fastestPathProfiles(Stop startingStop,
+            int fromTime, int toTime, BitSet activeServices)
+            throws IllegalArgumentException {
+
+        int start = stopIndex.id(startingStop);
+        if (start < 0)
+            throw new IllegalArgumentException(
+                    "L'arrêt donné ne fait pas partie du graphe.");
+        if (fromTime < 0 || toTime < fromTime)
+            throw new IllegalArgumentException(
+                    "Intervalle d'heures de départ invalide");
+
+        if (!fifo)
+            return new FastestPathProfiles(this, startingStop, fromTime,
+                    toTime, activeServices);
+
+        int n = stopIndex.size();
+        int[] walkingTime = new int[n];
+        int[] walkingPredecessor = new int[n];
+        walkingTimes(start, walkingTime, walkingPredecessor);
+
+        int[] runs = departureEvents(walkingTime, fromTime, toTime,
+                activeServices);
+
+        int[] arrivalTime = new int[n];
+        int[] predecessor = new int[n];
+        Arrays.fill(arrivalTime, SecondsPastMidnight.INFINITE);
+        Arrays.fill(predecessor, -1);
+        IndexedHeap queue = new IndexedHeap(n);
+
+        // Journal des améliorations : arrêt, index de la recherche, heure
+        // d'arrivée, prédécesseur et étape
+        int[] log = new int[5 * 64];
+        int logSize = 0;
 
-            Stop currentStop = queue.remove();
+        for (int r = 0; r < runs.length; r++) {
+            arrivalTime[start] = runs[r];
+            queue.push(start, runs[r]);
 
-            if (fptb.arrivalTime(currentStop) == SecondsPastMidnight.INFINITE) {
-                return fptb.build();
+            // Algorithme de Djikstra, limité aux arrêts atteints plus tôt que
+            // lors de la recherche précédente
+            while (!queue.isEmpty()) {
+                int current = queue.removeMin();
+                int currentTime = arrivalTime[current];
+
+                for (int e = firstEdge[current]; e < firstEdge[current + 1]; e++) {
+                    int h = edges[e].earliestArrivalTime(currentTime,
+                            activeServices);
+                    int destination = edgeDestination[e];
+                    if (h < arrivalTime[destination]) {
+                        arrivalTime[destination] = h;
+                        predecessor[destination] = current;
+                        queue.push(destination, h);
+
+                        if (logSize == log.length)
+                            log = Arrays.copyOf(log, 2 * logSize);
+                        log[logSize++] = destination;
+                        log[logSize++] = r;
+                        log[logSize++] = h;
+                        log[logSize++] = current;
+                        log[logSize++] = edges[e].earliestLeg(currentTime,
+                                activeServices);
+                    }
+                }
             }
+        }
 
-            for (GraphEdge ge : outgoingEdges.get(currentStop)) {
+        return new FastestPathProfiles(stopIndex, start, fromTime, toTime,
+                runs, walkingTime, walkingPredecessor, log, logSize / 5);
+    }
+
+    /**
+     * Calcule les temps de marche minimaux (sans emprunter de trajet) depuis
+     * l'arrêt donné vers tous les arrêts du graphe.
+     * 
+     * @param start
+     *            L'identifiant de l'arrêt de départ
+     * @param walkingTime
+     *            Tableau rempli par les temps de marche, ou
+     *            SecondsPastMidnight.INFINITE pour les arrêts inaccessibles à
+     *            pied
+     * @param predecessor
+     *            Tableau rempli par le prédécesseur de chaque arrêt sur le
+     *            chemin à pied le plus court, ou -1
+     */
+    private void walkingTimes(int start, int[] walkingTime, int[] predecessor) {
+        Arrays.fill(walkingTime, SecondsPastMidnight.INFINITE);
+        Arrays.fill(predecessor, -1);
+        IndexedHeap queue = new IndexedHeap(walkingTime.length);
+        walkingTime[start] = 0;
+        queue.push(start, 0);
+        while (!queue.isEmpty()) {
+            int current = queue.removeMin();
+            for (int e = firstEdge[current]; e < firstEdge[current + 1]; e++) {
+                int w = edges[e].walkingTime();
+                int destination = edgeDestination[e];
+                if (w >= 0
+                        && walkingTime[current] + w < walkingTime[destination]) {
+                    walkingTime[destination] = walkingTime[current] + w;
+                    predecessor[destination] = current;
+                    queue.push(destination, walkingTime[destination]);
+                }
+            }
+        }
+    }
 
-                int h = ge.earliestArrivalTime(fptb.arrivalTime(currentStop));
-                if (h < fptb.arrivalTime(ge.destination())) {
-                    fptb.setArrivalTime(ge.destination(), h, currentStop);
-                    queue.remove(ge.destination());
-                    queue.add(ge.destination());
+    /**
+     * Retourne les heures de départ de l'arrêt de départ auxquelles le
+     * résultat d'une recherche peut changer, c'est-à-dire les heures de
+     * départ des trajets des arrêts accessibles à pied, diminuées du temps de
+     * marche pour les atteindre, comprises dans l'intervalle donné. La
+     * dernière heure de l'intervalle en fait toujours partie.
+     * 
+     * @return Les heures de départ, distinctes et par ordre décroissant
+     */
+    private int[] departureEvents(int[] walkingTime, int fromTime, int toTime,
+            BitSet activeServices) {
+        int[] events = new int[64];
+        int count = 0;
+        events[count++] = toTime;
 
+        for (int u = 0; u < walkingTime.length; u++) {
+            if (walkingTime[u] == SecondsPastMidnight.INFINITE)
+                continue;
+            for (int e = firstEdge[u]; e < firstEdge[u + 1]; e++) {
+                int[] trips = edges[e].packedTrips();
+                int[] services = edges[e].tripServices();
+                int first = edges[e].firstTripIndex(fromTime + walkingTime[u]);
+                for (int i = first; i < trips.length; i++) {
+                    int departure = GraphEdge
+                            .unpackTripDepartureTime(trips[i]);
+                    if (departure > toTime + walkingTime[u])
+                        break;
+                    if (activeServices != null && services != null
+                            && services[i] != GraphEdge.NO_SERVICE
+                            && !activeServices.get(services[i]))
+                        continue;
+                    if (count == events.length)
+                        events = Arrays.copyOf(events, 2 * count);
+                    events[count++] = departure - walkingTime[u];
                 }
             }
         }
-        return fptb.build();
 
+        // Tri décroissant et suppression des doublons
+        Arrays.sort(events, 0, count);
+        int[] runs = new int[count];
+        int distinct = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            if (distinct == 0 || events[i] != runs[distinct - 1])
+                runs[distinct++] = events[i];
+        }
+        return Arrays.copyOf(runs, distinct);
     }
 
     /**
@@ -124,10 +956,13 @@ public final class Graph {
     public static final class Builder {
         private final Set<Stop> stops;
         private Map<Stop, Map<Stop, GraphEdge.Builder>> buildMap;
+        // Index attribué à chaque service, dans l'ordre d'apparition
+        private final Map<String, Integer> serviceIds;
 
         public Builder(Set<Stop> stops) {
             this.stops = Collections.unmodifiableSet(stops);
             this.buildMap = new HashMap<>();
+            this.serviceIds = new HashMap<>();
         }
 
         /**
@@ -151,6 +986,46 @@ public final class Graph {
          */
         public Builder addTripEdge(Stop fromStop, Stop toStop,
                 int departureTime, int arrivalTime) {
+            return addTripEdge(fromStop, toStop, departureTime, arrivalTime,
+                    GraphEdge.NO_SERVICE);
+        }
+
+        /**
+         * Ajoute au graphe en construction un trajet du service donné entre
+         * les arrêts de départ et d'arrivée donnés, aux heures données (en
+         * secondes après minuit). Ce trajet ne sera emprunté que les jours où
+         * son service est actif.
+         * 
+         * @param fromStop
+         *            L'arrêt de départ
+         * @param toStop
+         *            L'arrêt d'arrivée
+         * @param departureTime
+         *            Heure de départ de l'arrêt de départ
+         * @param arrivalTime
+         *            Heure d'arrivée à l'arrêt d'arrivée
+         * @param service
+         *            Le service du trajet
+         * @return this afin de permettre les appels chaînés.
+         * 
+         * @throws IllegalArgumentException
+         *             Si un des stops ne fait pas parti des stops déjà dans le
+         *             constructeur, si l'une des deux heures est négative ou si
+         *             l'heure d'arrivée est avant l'heure de départ
+         */
+        public Builder addTripEdge(Stop fromStop, Stop toStop,
+                int departureTime, int arrivalTime, Service service) {
+            Integer serviceId = serviceIds.get(service.name());
+            if (serviceId == null) {
+                serviceId = serviceIds.size();
+                serviceIds.put(service.name(), serviceId);
+            }
+            return addTripEdge(fromStop, toStop, departureTime, arrivalTime,
+                    serviceId.intValue());
+        }
+
+        private Builder addTripEdge(Stop fromStop, Stop toStop,
+                int departureTime, int arrivalTime, int service) {
             if (!(stops.contains(fromStop) && stops.contains(toStop))) {
                 throw new IllegalArgumentException(
                         "Un des deux stops ne fait pas partie des stops noeuds.");
@@ -180,7 +1055,7 @@ public final class Graph {
                 geb = new GraphEdge.Builder(toStop);
             }
 
-            geb.addTrip(departureTime, arrivalTime);
+            geb.addTrip(departureTime, arrivalTime, service);
             temp.put(toStop, geb);
             buildMap.put(fromStop, temp);
             return this;
@@ -213,32 +1088,34 @@ public final class Graph {
 
             }
 
+            // Seuls les arrêts des cellules voisines de la grille sont
+            // comparés à chaque arrêt, plutôt que toutes les paires d'arrêts
+            double maxWalkingDistance = maxWalkingTime * walkingSpeed;
+            StopGrid grid = new StopGrid(stops, Math.max(maxWalkingDistance,
+                    1));
+
             for (Stop stopDep : stops) {
-                for (Stop stopArr : stops) {
+                for (Stop stopArr : grid.stopsWithin(stopDep.position(),
+                        maxWalkingDistance)) {
+                    if (stopDep.equals(stopArr)) {
+                        continue;
+                    }
                     double distanceTo = stopDep.position().distanceTo(
                             stopArr.position());
-                    if (distanceTo <= maxWalkingTime * walkingSpeed
-                            && !stopDep.equals(stopArr)) {
-
-                        if (!buildMap.containsKey(stopDep)) {
-                            buildMap.put(stopDep,
-                                    new HashMap<Stop, GraphEdge.Builder>());
-                        }
-
-                        Map<Stop, GraphEdge.Builder> temp = buildMap
-                                .get(stopDep);
-
-                        if (!temp.containsKey(stopArr)) {
-                            temp.put(stopArr, new GraphEdge.Builder(stopArr));
-                        }
-                        buildMap.put(stopDep, temp);
-
-                        buildMap.get(stopDep)
-                                .get(stopArr)
-                                .setWalkingTime(
-                                        (int) Math.round(distanceTo
-                                                / walkingSpeed));
+
+                    if (!buildMap.containsKey(stopDep)) {
+                        buildMap.put(stopDep,
+                                new HashMap<Stop, GraphEdge.Builder>());
                     }
+
+                    Map<Stop, GraphEdge.Builder> temp = buildMap.get(stopDep);
+
+                    if (!temp.containsKey(stopArr)) {
+                        temp.put(stopArr, new GraphEdge.Builder(stopArr));
+                    }
+
+                    temp.get(stopArr).setWalkingTime(
+                            (int) Math.round(distanceTo / walkingSpeed));
                 }
             }
 
@@ -253,25 +1130,45 @@ public final class Graph {
          *         bâtisseur et les arcs ajoutés
          */
         public Graph build() {
+            StopIndex stopIndex = new StopIndex(stops);
+            int[] firstEdge = new int[stopIndex.size() + 1];
+            List<GraphEdge> edges = new ArrayList<>();
+            List<Integer> edgeDestination = new ArrayList<>();
 
-            // On créé a partir de la builMap la map OutgoingEdges
-            Map<Stop, List<GraphEdge>> outgoingEdges = new HashMap<>();
-            
-            for (Stop stopDep : buildMap.keySet()) {
-                List<GraphEdge> list = new ArrayList<>();
-                for (GraphEdge.Builder geb : buildMap.get(stopDep).values()) {
-                    list.add(geb.build());
+            // On range les arcs sortants de chaque arrêt les uns à la suite
+            // des autres, par ordre d'identifiant de l'arrêt de destination
+            for (int i = 0; i < stopIndex.size(); i++) {
+                firstEdge[i] = edges.size();
+                Map<Stop, GraphEdge.Builder> fromStop = buildMap.get(stopIndex
+                        .stop(i));
+                if (fromStop == null) {
+                    continue;
+                }
+                int[] destinations = new int[fromStop.size()];
+                int k = 0;
+                for (Stop stopArr : fromStop.keySet()) {
+                    destinations[k++] = stopIndex.id(stopArr);
+                }
+                Arrays.sort(destinations);
+                for (int d : destinations) {
+                    edges.add(fromStop.get(stopIndex.stop(d)).build());
+                    edgeDestination.add(d);
                 }
-                outgoingEdges.put(stopDep, list);
             }
+            firstEdge[stopIndex.size()] = edges.size();
 
-            for (Stop s : stops) {
-                if (!outgoingEdges.containsKey(s)) {
-                    outgoingEdges.put(s, new ArrayList<GraphEdge>());
-                }
+            int[] edgeDestinationArray = new int[edgeDestination.size()];
+            for (int e = 0; e < edgeDestinationArray.length; e++) {
+                edgeDestinationArray[e] = edgeDestination.get(e);
+            }
+
+            String[] serviceNames = new String[serviceIds.size()];
+            for (Map.Entry<String, Integer> e : serviceIds.entrySet()) {
+                serviceNames[e.getValue()] = e.getKey();
             }
 
-            return new Graph(stops, outgoingEdges);
+            return new Graph(stopIndex, firstEdge, edgeDestinationArray,
+                    edges.toArray(new GraphEdge[edges.size()]), serviceNames);
         }
 
     }
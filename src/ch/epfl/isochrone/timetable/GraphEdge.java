@@ -12,21 +12,26 @@ package ch.epfl.isochrone.timetable;
 
 import static ch.epfl.isochrone.math.Math.divF;
 import static ch.epfl.isochrone.math.Math.modF;
-import static java.util.Arrays.binarySearch;
 
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Set;
 
 final class GraphEdge {
+    /**
+     * Index de service des trajets qui circulent quel que soit l'ensemble des
+     * services actifs.
+     */
+    public static final int NO_SERVICE = -1;
 
     private final Stop destination;
     private final int walkingTime;
-    @SuppressWarnings("unused")
-    private final Set<Integer> packedTrips;
-    // Tableau d'entier utile à la recherche dichotomique de la méthode
-    // earliestArrivalTime
-    private final Integer[] sortedArrayOfPackedTrips;
+    // Trajets encodés, triés par ordre croissant et sans doublons, utiles à la
+    // recherche dichotomique de la méthode earliestArrivalTime
+    private final int[] packedTrips;
+    // Index du service de chaque trajet (tableau parallèle à packedTrips), ou
+    // null si aucun trajet n'est lié à un service
+    private final int[] tripServices;
 
     /**
      * Constructeur de GraphEdge. Construit un arc ayant l'arrêt de destination,
@@ -50,14 +55,41 @@ final class GraphEdge {
 
         this.destination = destination;
         this.walkingTime = walkingTime;
-        this.packedTrips = Collections.unmodifiableSet(packedTrips);
-        // Remplissage du tableau sortedArrayOfPackedTrips avec les valeurs
-        // contenues dans le set packedTrips 
-        sortedArrayOfPackedTrips = packedTrips.toArray(new Integer[packedTrips.size()]);
-        
-        // Tri des valeurs du tableau pour l'utiliser dans la recherche
-        // dichotomique de la recherche earliestArrivalTime
-        java.util.Arrays.sort(sortedArrayOfPackedTrips);
+
+        // Copie des valeurs de l'ensemble dans un tableau primitif, trié pour
+        // la recherche dichotomique de la méthode earliestArrivalTime
+        int[] sorted = new int[packedTrips.size()];
+        int i = 0;
+        for (int packedTrip : packedTrips) {
+            sorted[i++] = packedTrip;
+        }
+        Arrays.sort(sorted);
+        this.packedTrips = sorted;
+        this.tripServices = null;
+    }
+
+    /**
+     * Constructeur utilisé par le bâtisseur et par le chargement des
+     * instantanés d'horaire (TimeTableSnapshot), qui reçoit les trajets déjà
+     * triés et sans doublons. Les tableaux ne sont pas copiés.
+     * 
+     * @param destination
+     *            L'arrêt de destination.
+     * @param walkingTime
+     *            Le temps de marche exprimé en seconde, ou -1.
+     * @param sortedPackedTrips
+     *            Les trajets encodés, triés par ordre croissant et sans
+     *            doublons.
+     * @param tripServices
+     *            L'index du service de chaque trajet, ou null si aucun trajet
+     *            n'est lié à un service.
+     */
+    GraphEdge(Stop destination, int walkingTime, int[] sortedPackedTrips,
+            int[] tripServices) {
+        this.destination = destination;
+        this.walkingTime = walkingTime;
+        this.packedTrips = sortedPackedTrips;
+        this.tripServices = tripServices;
     }
 
     /**
@@ -134,6 +166,37 @@ final class GraphEdge {
         return destination;
     }
 
+    /**
+     * Retourne le temps de marche de l'arc.
+     * 
+     * @return Le temps de marche en secondes, ou -1 si le trajet à pied est
+     *         trop long.
+     */
+    int walkingTime() {
+        return walkingTime;
+    }
+
+    /**
+     * Retourne les trajets encodés de l'arc, triés par ordre croissant. Le
+     * tableau n'est pas copié et ne doit pas être modifié.
+     * 
+     * @return Les trajets encodés.
+     */
+    int[] packedTrips() {
+        return packedTrips;
+    }
+
+    /**
+     * Retourne l'index du service de chaque trajet de l'arc. Le tableau n'est
+     * pas copié et ne doit pas être modifié.
+     * 
+     * @return L'index du service de chaque trajet, ou null si aucun trajet
+     *         n'est lié à un service.
+     */
+    int[] tripServices() {
+        return tripServices;
+    }
+
     /**
      * Retourne la première heure d'arrivée possible à la destination donnée,
      * étant donnée l'heure de départ.
@@ -147,20 +210,32 @@ final class GraphEdge {
      *         le trajet à l'heure de départ donnée.
      */
     public int earliestArrivalTime(int departureTime) {
-        int pos = binarySearch(sortedArrayOfPackedTrips, departureTime * 10000);
-        int earliest;
-
-        if (sortedArrayOfPackedTrips.length == 0) {
-            earliest = SecondsPastMidnight.INFINITE;
-        } else {
-            if (departureTime > unpackTripDepartureTime(sortedArrayOfPackedTrips[sortedArrayOfPackedTrips.length - 1])) {
-                earliest = SecondsPastMidnight.INFINITE;
-            } else if (pos < 0) {
-                earliest = unpackTripArrivalTime(sortedArrayOfPackedTrips[-pos - 1]);
-            } else {
-                earliest = unpackTripArrivalTime(sortedArrayOfPackedTrips[pos]);
-            }
+        return earliestArrivalTime(departureTime, null);
+    }
+
+    /**
+     * Retourne la première heure d'arrivée possible à la destination donnée,
+     * étant donnée l'heure de départ, en ne considérant que les trajets des
+     * services actifs donnés.
+     * 
+     * @param departureTime
+     *            L'heure de départ en nombre de secondes après minuit
+     * @param activeServices
+     *            L'ensemble des index des services actifs, ou null si tous
+     *            les trajets sont à considérer
+     * @return La première heure d'arrivée possible à l'arc, ou
+     *         SecondsPastMidnight.INFINITE si il n'est pas possible d'effectuer
+     *         le trajet à l'heure de départ donnée.
+     */
+    public int earliestArrivalTime(int departureTime, BitSet activeServices) {
+        int earliest = SecondsPastMidnight.INFINITE;
+
+        int low = firstActiveTripIndex(departureTime, activeServices);
+
+        if (low < packedTrips.length) {
+            earliest = unpackTripArrivalTime(packedTrips[low]);
         }
+
         if (walkingTime == -1) {
             return earliest;
         }
@@ -168,13 +243,122 @@ final class GraphEdge {
         return Math.min(earliest, departureTime + walkingTime);
     }
 
+    /**
+     * Retourne l'étape par laquelle la destination est atteinte à l'heure
+     * retournée par earliestArrivalTime pour les mêmes arguments : à pied si
+     * la marche arrive au moins aussi tôt que le premier trajet.
+     * 
+     * @param departureTime
+     *            L'heure de départ en nombre de secondes après minuit
+     * @param activeServices
+     *            L'ensemble des index des services actifs, ou null si tous
+     *            les trajets sont à considérer
+     * @return FastestPathTree.WALKING_LEG, ou l'heure de départ du trajet
+     *         emprunté
+     */
+    int earliestLeg(int departureTime, BitSet activeServices) {
+        int low = firstActiveTripIndex(departureTime, activeServices);
+        if (low == packedTrips.length
+                || (walkingTime != -1 && departureTime + walkingTime
+                        <= unpackTripArrivalTime(packedTrips[low]))) {
+            return FastestPathTree.WALKING_LEG;
+        }
+        return unpackTripDepartureTime(packedTrips[low]);
+    }
+
+    /**
+     * Retourne l'index du premier trajet d'un service actif partant à l'heure
+     * donnée ou après, ou le nombre de trajets s'il n'y en a aucun.
+     */
+    private int firstActiveTripIndex(int departureTime, BitSet activeServices) {
+        int low = firstTripIndex(departureTime);
+
+        // Les trajets des services inactifs sont sautés
+        if (activeServices != null && tripServices != null) {
+            while (low < packedTrips.length
+                    && tripServices[low] != NO_SERVICE
+                    && !activeServices.get(tripServices[low])) {
+                low++;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Retourne l'index (dans packedTrips) du premier trajet dont l'heure de
+     * départ est supérieure ou égale à celle donnée, ou le nombre de trajets
+     * s'il n'y en a aucun.
+     * 
+     * @param departureTime
+     *            L'heure de départ en nombre de secondes après minuit
+     * @return L'index du premier trajet partant à cette heure ou après
+     */
+    int firstTripIndex(int departureTime) {
+        // Recherche dichotomique du premier trajet encodé supérieur ou égal à
+        // departureTime * 10000
+        int key = departureTime * 10000;
+        int low = 0;
+        int high = packedTrips.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (packedTrips[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Retourne la durée minimale d'un parcours de l'arc, à pied ou par l'un
+     * de ses trajets (quel que soit son service), sans compter l'attente.
+     * 
+     * @return La durée minimale en secondes, ou -1 si l'arc n'a ni trajet ni
+     *         temps de marche.
+     */
+    int minimalDuration() {
+        int duration = walkingTime;
+        for (int packedTrip : packedTrips) {
+            int tripDuration = unpackTripDuration(packedTrip);
+            if (duration == -1 || tripDuration < duration) {
+                duration = tripDuration;
+            }
+        }
+        return duration;
+    }
+
+    /**
+     * Retourne vrai si l'arc respecte la propriété FIFO : un trajet partant
+     * plus tard n'arrive jamais plus tôt. Partir plus tôt d'un arc FIFO ne
+     * fait alors jamais arriver plus tard, quels que soient les services
+     * actifs.
+     * 
+     * @return true ssi les heures d'arrivée des trajets croissent avec leur
+     *         heure de départ.
+     */
+    boolean isFifo() {
+        for (int i = 1; i < packedTrips.length; i++) {
+            if (unpackTripArrivalTime(packedTrips[i]) < unpackTripArrivalTime(
+                    packedTrips[i - 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Classe imbriquée statiquement Bâtisseur de la classe GraphEdge
      */
     public static final class Builder {
         private final Stop destination;
         private int walkingTime;
-        private Set<Integer> packedTrips;
+        // Tampon extensible des trajets, dans l'ordre d'ajout : le trajet
+        // encodé dans les 32 bits de poids fort, l'index de son service dans
+        // les 32 bits de poids faible
+        private long[] trips;
+        private int tripCount;
+        private boolean hasServices;
 
         /**
          * Construit un bâtisseur pour un arc ayant l'arrêt donné comme
@@ -187,7 +371,9 @@ final class GraphEdge {
         public Builder(Stop destination) {
             this.destination = destination;
             this.walkingTime = -1;
-            this.packedTrips = new HashSet<Integer>();
+            this.trips = new long[4];
+            this.tripCount = 0;
+            this.hasServices = false;
         }
 
         /**
@@ -220,7 +406,36 @@ final class GraphEdge {
          * @return this
          */
         public Builder addTrip(int departureTime, int arrivalTime) {
-            packedTrips.add(packTrip(departureTime, arrivalTime));
+            return addTrip(departureTime, arrivalTime, NO_SERVICE);
+        }
+
+        /**
+         * Ajoute un trajet du service donné avec les heures de départ et
+         * d'arrivée données et exprimées en nombre de secondes après minuit.
+         * 
+         * @param departureTime
+         *            L'heure de départ, en nombre de secondes après minuit.
+         * @param arrivalTime
+         *            L'heure d'arrivée, en nombre de secondes après minuit.
+         * @param service
+         *            L'index du service du trajet, ou NO_SERVICE.
+         * @return this
+         * @throws IllegalArgumentException
+         *             Si l'index de service est négatif et différent de
+         *             NO_SERVICE.
+         */
+        public Builder addTrip(int departureTime, int arrivalTime, int service)
+                throws IllegalArgumentException {
+            if (service < NO_SERVICE) {
+                throw new IllegalArgumentException("Illegal service");
+            }
+            long trip = ((long) packTrip(departureTime, arrivalTime) << 32)
+                    | (service & 0xFFFFFFFFL);
+            if (tripCount == trips.length) {
+                trips = Arrays.copyOf(trips, 2 * tripCount);
+            }
+            trips[tripCount++] = trip;
+            hasServices |= service != NO_SERVICE;
             return this;
         }
 
@@ -232,7 +447,27 @@ final class GraphEdge {
          *         trajets ajoutés.
          */
         public GraphEdge build() {
-            return new GraphEdge(destination, walkingTime, packedTrips);
+            // Tri (par trajet encodé puis par service) puis suppression des
+            // doublons
+            long[] sorted = Arrays.copyOf(trips, tripCount);
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (distinct == 0 || sorted[i] != sorted[distinct - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+
+            int[] packedTrips = new int[distinct];
+            int[] tripServices = hasServices ? new int[distinct] : null;
+            for (int i = 0; i < distinct; i++) {
+                packedTrips[i] = (int) (sorted[i] >>> 32);
+                if (hasServices) {
+                    tripServices[i] = (int) sorted[i];
+                }
+            }
+            return new GraphEdge(destination, walkingTime, packedTrips,
+                    tripServices);
         }
     }
-}
\ No newline at end of file
+}
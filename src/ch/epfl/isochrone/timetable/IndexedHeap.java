@@ -0,0 +1,190 @@
+/**
+ * Tas d-aire indexé de priorités entières, utilisé comme file de priorité
+ * par l'algorithme de Dijkstra.
+ *
+ * Les éléments sont les entiers de 0 à capacité - 1 (identifiants denses des
+ * arrêts). Une table des positions permet de retrouver un élément dans le tas
+ * en temps constant, de sorte que la diminution de priorité se fait en
+ * O(log n), contrairement à java.util.PriorityQueue qui doit rechercher
+ * l'élément linéairement avant de le retirer.
+ *
+ * Classe uniquement visible dans son paquetage.
+ *
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+final class IndexedHeap {
+    // Arité du tas : un tas 4-aire est moins profond qu'un tas binaire et
+    // ses fils sont contigus en mémoire.
+    private static final int ARITY = 4;
+
+    private final int[] ids;
+    private final int[] keys;
+    // Position de chaque élément dans le tas, -1 s'il n'y est pas
+    private final int[] positions;
+    private int size;
+
+    /**
+     * Construit un tas vide pouvant contenir les éléments 0 à capacity - 1.
+     *
+     * @param capacity
+     *            Le nombre d'éléments distincts pouvant être insérés.
+     * @throws IllegalArgumentException
+     *             Si la capacité est négative.
+     */
+    public IndexedHeap(int capacity) throws IllegalArgumentException {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity");
+        }
+        this.ids = new int[capacity];
+        this.keys = new int[capacity];
+        this.positions = new int[capacity];
+        Arrays.fill(positions, -1);
+        this.size = 0;
+    }
+
+    /**
+     * Retourne vrai si le tas est vide.
+     *
+     * @return true ssi le tas ne contient aucun élément.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Retourne le nombre d'éléments dans le tas.
+     *
+     * @return Le nombre d'éléments dans le tas.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Retourne vrai si l'élément donné est dans le tas.
+     *
+     * @param id
+     *            L'élément recherché.
+     * @return true ssi l'élément est dans le tas.
+     */
+    public boolean contains(int id) {
+        return positions[id] >= 0;
+    }
+
+    /**
+     * Insère l'élément donné avec la priorité donnée, ou diminue sa priorité
+     * s'il est déjà présent. Une priorité supérieure à la priorité actuelle
+     * de l'élément est ignorée.
+     *
+     * @param id
+     *            L'élément à insérer.
+     * @param key
+     *            La priorité de l'élément.
+     */
+    public void push(int id, int key) {
+        int pos = positions[id];
+        if (pos < 0) {
+            pos = size++;
+        } else if (key >= keys[pos]) {
+            return;
+        }
+        siftUp(pos, id, key);
+    }
+
+    /**
+     * Retourne la plus petite priorité du tas.
+     *
+     * @return La priorité de l'élément en tête du tas.
+     * @throws NoSuchElementException
+     *             Si le tas est vide.
+     */
+    public int minKey() throws NoSuchElementException {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return keys[0];
+    }
+
+    /**
+     * Retire et retourne l'élément de plus petite priorité.
+     *
+     * @return L'élément de plus petite priorité.
+     * @throws NoSuchElementException
+     *             Si le tas est vide.
+     */
+    public int removeMin() throws NoSuchElementException {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        int min = ids[0];
+        positions[min] = -1;
+        size--;
+        if (size > 0) {
+            siftDown(0, ids[size], keys[size]);
+        }
+        return min;
+    }
+
+    /**
+     * Vide le tas. Ne coûte que le nombre d'éléments encore présents.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[ids[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Remonte l'élément donné depuis la position donnée jusqu'à sa place.
+     */
+    private void siftUp(int pos, int id, int key) {
+        while (pos > 0) {
+            int parent = (pos - 1) / ARITY;
+            if (keys[parent] <= key) {
+                break;
+            }
+            place(pos, ids[parent], keys[parent]);
+            pos = parent;
+        }
+        place(pos, id, key);
+    }
+
+    /**
+     * Descend l'élément donné depuis la position donnée jusqu'à sa place.
+     */
+    private void siftDown(int pos, int id, int key) {
+        while (true) {
+            int first = pos * ARITY + 1;
+            if (first >= size) {
+                break;
+            }
+            int last = Math.min(first + ARITY, size);
+            int child = first;
+            for (int c = first + 1; c < last; c++) {
+                if (keys[c] < keys[child]) {
+                    child = c;
+                }
+            }
+            if (keys[child] >= key) {
+                break;
+            }
+            place(pos, ids[child], keys[child]);
+            pos = child;
+        }
+        place(pos, id, key);
+    }
+
+    private void place(int pos, int id, int key) {
+        ids[pos] = id;
+        keys[pos] = key;
+        positions[id] = pos;
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Répartition de recherches indépendantes, une par arrêt de départ, entre
+ * les tâches d'un exécuteur.
+ *
+ * Les arrêts de départ sont découpés en blocs consécutifs, une tâche par
+ * bloc : c'est l'exécuteur fourni par l'appelant qui décide combien de blocs
+ * sont traités en même temps. Chaque tâche crée son propre état (par exemple
+ * un espace de travail), réutilisé pour tous les arrêts de son bloc.
+ *
+ * Classe uniquement visible dans son paquetage.
+ *
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+final class OriginTasks {
+    // Nombre d'arrêts de départ traités par une tâche
+    static final int ORIGINS_PER_TASK = 16;
+
+    /**
+     * Travail fait pour chaque arrêt de départ, avec l'état de la tâche qui
+     * le traite.
+     */
+    interface Body<S> {
+        /**
+         * Crée l'état d'une nouvelle tâche.
+         */
+        S newState();
+
+        /**
+         * Traite l'arrêt de départ donné.
+         */
+        void run(int origin, S state);
+    }
+
+    private OriginTasks() {
+    }
+
+    /**
+     * Traite les arrêts de départ 0 à n - 1 sur l'exécuteur donné, et attend
+     * la fin de toutes les tâches.
+     *
+     * @param n
+     *            Le nombre d'arrêts de départ
+     * @param executor
+     *            L'exécuteur des tâches, qui n'est pas arrêté
+     * @param body
+     *            Le travail fait pour chaque arrêt de départ
+     * @throws InterruptedException
+     *             Si l'attente des tâches est interrompue
+     */
+    static <S> void forEachOrigin(final int n, ExecutorService executor,
+            final Body<S> body) throws InterruptedException {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < n; from += ORIGINS_PER_TASK) {
+            final int first = from;
+            final int last = Math.min(n, from + ORIGINS_PER_TASK);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    S state = body.newState();
+                    for (int o = first; o < last; o++) {
+                        body.run(o, state);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        try {
+            for (Future<Void> f : executor.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -0,0 +1,628 @@
+/**
+ * Recherche des trajets les plus rapides par tours successifs (algorithme
+ * RAPTOR), avec un nombre maximal de correspondances.
+ *
+ * Le fichier stop_times.csv ne décrit que des connexions élémentaires entre
+ * deux arrêts ; les courses des véhicules sont reconstituées en enchaînant
+ * les connexions d'un même service qui arrivent à un arrêt et en repartent à
+ * la même seconde. Les courses desservant la même suite d'arrêts forment une
+ * ligne, partagée si nécessaire pour qu'aucune course n'en dépasse une autre.
+ *
+ * Le tour k de la recherche calcule les heures d'arrivée atteignables avec k
+ * courses au plus (donc k - 1 correspondances), en parcourant une seule fois
+ * chaque ligne desservant un arrêt amélioré au tour précédent ; les trajets à
+ * pied du graphe sont suivis après chaque tour et ne comptent pas comme des
+ * correspondances.
+ *
+ * Classe immuable.
+ *
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class Raptor {
+    /**
+     * Nombre de correspondances permettant une recherche sans limite.
+     */
+    public static final int UNLIMITED_TRANSFERS = Integer.MAX_VALUE;
+
+    // Nombre de bits de l'index d'une connexion dans la clé de tri
+    private static final int INDEX_BITS = 29;
+
+    private final StopIndex stopIndex;
+    /*
+     * Lignes : les arrêts de la ligne r occupent les positions firstRouteStop[r]
+     * (inclus) à firstRouteStop[r + 1] (exclu) de routeStops, et les services
+     * de ses courses, triées par heure de départ, les positions
+     * firstRouteTrip[r] à firstRouteTrip[r + 1] de tripServices. L'heure de
+     * passage de sa course j à sa position p est stopTimes[firstRouteTime[r] +
+     * j * longueur + p].
+     */
+    private final int[] firstRouteStop;
+    private final int[] routeStops;
+    private final int[] firstRouteTrip;
+    private final int[] tripServices;
+    private final int[] firstRouteTime;
+    private final int[] stopTimes;
+    /*
+     * Lignes desservant chaque arrêt : celles de l'arrêt i occupent les
+     * positions firstStopRoute[i] à firstStopRoute[i + 1] de stopRoutes, avec
+     * la position de l'arrêt dans la ligne dans stopRoutePositions.
+     */
+    private final int[] firstStopRoute;
+    private final int[] stopRoutes;
+    private final int[] stopRoutePositions;
+    // Trajets à pied, au même format
+    private final int[] firstWalk;
+    private final int[] walkDestination;
+    private final int[] walkingTime;
+
+    /**
+     * Reconstitue les courses et les lignes à partir des trajets du graphe
+     * donné, de tous les services.
+     *
+     * @param graph
+     *            Le graphe des horaires
+     * @throws IllegalArgumentException
+     *             Si le graphe contient trop de connexions
+     */
+    public Raptor(Graph graph) throws IllegalArgumentException {
+        this.stopIndex = graph.stopIndex();
+        int[] firstEdge = graph.firstEdge();
+        int[] edgeDestination = graph.edgeDestination();
+        GraphEdge[] edges = graph.edges();
+        int n = stopIndex.size();
+
+        // Connexions, triées par heure de départ puis d'arrivée
+        int count = 0;
+        for (GraphEdge edge : edges) {
+            count += edge.packedTrips().length;
+        }
+        if (count >= 1 << INDEX_BITS) {
+            throw new IllegalArgumentException("Trop de connexions");
+        }
+        long[] keys = new long[count];
+        int[] fromStops = new int[count];
+        int[] toStops = new int[count];
+        int[] departures = new int[count];
+        int[] arrivals = new int[count];
+        int[] services = new int[count];
+        count = 0;
+        int walkCount = 0;
+        for (int u = 0; u < n; u++) {
+            for (int e = firstEdge[u]; e < firstEdge[u + 1]; e++) {
+                int[] trips = edges[e].packedTrips();
+                int[] tripServices = edges[e].tripServices();
+                for (int i = 0; i < trips.length; i++) {
+                    departures[count] = GraphEdge
+                            .unpackTripDepartureTime(trips[i]);
+                    arrivals[count] = GraphEdge
+                            .unpackTripArrivalTime(trips[i]);
+                    fromStops[count] = u;
+                    toStops[count] = edgeDestination[e];
+                    services[count] = tripServices == null ? GraphEdge.NO_SERVICE
+                            : tripServices[i];
+                    keys[count] = (long) departures[count] << (INDEX_BITS + 17)
+                            | (long) arrivals[count] << INDEX_BITS | count;
+                    count++;
+                }
+                if (edges[e].walkingTime() >= 0) {
+                    walkCount++;
+                }
+            }
+        }
+        Arrays.sort(keys);
+
+        // Enchaînement des connexions en courses : une connexion prolonge une
+        // course du même service arrivée à son arrêt de départ à son heure
+        // de départ. Les courses en attente à un même arrêt, à la même heure,
+        // sont chaînées par nextWaiting.
+        int[] nextConnection = new int[count];
+        int[] tripHead = new int[count];
+        int[] tripTail = new int[count];
+        int[] tripLength = new int[count];
+        int[] nextWaiting = new int[count];
+        Map<Long, Integer> waiting = new HashMap<>();
+        int tripCount = 0;
+        int indexMask = (1 << INDEX_BITS) - 1;
+        for (long key : keys) {
+            int c = (int) (key & indexMask);
+            nextConnection[c] = -1;
+            Long from = waitingKey(fromStops[c], departures[c], services[c]);
+            Integer waitingTrip = waiting.get(from);
+            int trip;
+            if (waitingTrip != null) {
+                trip = waitingTrip;
+                if (nextWaiting[trip] < 0) {
+                    waiting.remove(from);
+                } else {
+                    waiting.put(from, nextWaiting[trip]);
+                }
+                nextConnection[tripTail[trip]] = c;
+                tripTail[trip] = c;
+                tripLength[trip]++;
+            } else {
+                trip = tripCount++;
+                tripHead[trip] = c;
+                tripTail[trip] = c;
+                tripLength[trip] = 1;
+            }
+            Long to = waitingKey(toStops[c], arrivals[c], services[c]);
+            Integer previous = waiting.put(to, trip);
+            nextWaiting[trip] = previous == null ? -1 : previous;
+        }
+
+        // Arrêts et heures de passage de chaque course, regroupées par suite
+        // d'arrêts
+        final int[][] tripStops = new int[tripCount][];
+        final int[][] tripTimes = new int[tripCount][];
+        Map<StopSequence, List<Integer>> sequences = new LinkedHashMap<>();
+        for (int t = 0; t < tripCount; t++) {
+            int[] stops = new int[tripLength[t] + 1];
+            int[] times = new int[tripLength[t] + 1];
+            int c = tripHead[t];
+            stops[0] = fromStops[c];
+            times[0] = departures[c];
+            for (int p = 1; c >= 0; p++, c = nextConnection[c]) {
+                stops[p] = toStops[c];
+                times[p] = arrivals[c];
+            }
+            tripStops[t] = stops;
+            tripTimes[t] = times;
+            StopSequence sequence = new StopSequence(stops);
+            List<Integer> trips = sequences.get(sequence);
+            if (trips == null) {
+                trips = new ArrayList<>();
+                sequences.put(sequence, trips);
+            }
+            trips.add(t);
+        }
+
+        // Partage de chaque suite en lignes dont les courses ne se dépassent
+        // pas : chaque course, par ordre de départ, rejoint la première ligne
+        // dont la dernière course ne passe jamais après elle
+        Comparator<Integer> byTimes = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer t1, Integer t2) {
+                int[] times1 = tripTimes[t1];
+                int[] times2 = tripTimes[t2];
+                for (int p = 0; p < times1.length; p++) {
+                    if (times1[p] != times2[p]) {
+                        return Integer.compare(times1[p], times2[p]);
+                    }
+                }
+                return Integer.compare(t1, t2);
+            }
+        };
+        List<List<Integer>> routes = new ArrayList<>();
+        int timeCount = 0;
+        for (List<Integer> trips : sequences.values()) {
+            Collections.sort(trips, byTimes);
+            List<List<Integer>> sequenceRoutes = new ArrayList<>();
+            for (int t : trips) {
+                List<Integer> route = null;
+                for (List<Integer> candidate : sequenceRoutes) {
+                    if (!overtakes(tripTimes[t],
+                            tripTimes[candidate.get(candidate.size() - 1)])) {
+                        route = candidate;
+                        break;
+                    }
+                }
+                if (route == null) {
+                    route = new ArrayList<>();
+                    sequenceRoutes.add(route);
+                }
+                route.add(t);
+                timeCount += tripTimes[t].length;
+            }
+            routes.addAll(sequenceRoutes);
+        }
+
+        int routeCount = routes.size();
+        this.firstRouteStop = new int[routeCount + 1];
+        this.firstRouteTrip = new int[routeCount + 1];
+        this.firstRouteTime = new int[routeCount];
+        this.tripServices = new int[tripCount];
+        this.stopTimes = new int[timeCount];
+        int stopCount = 0;
+        for (List<Integer> route : routes) {
+            stopCount += tripStops[route.get(0)].length;
+        }
+        this.routeStops = new int[stopCount];
+        int[] routesPerStop = new int[n + 1];
+        stopCount = 0;
+        int tripIndex = 0;
+        timeCount = 0;
+        for (int r = 0; r < routeCount; r++) {
+            List<Integer> route = routes.get(r);
+            int[] stops = tripStops[route.get(0)];
+            firstRouteStop[r] = stopCount;
+            for (int stop : stops) {
+                routeStops[stopCount++] = stop;
+                routesPerStop[stop + 1]++;
+            }
+            firstRouteTrip[r] = tripIndex;
+            firstRouteTime[r] = timeCount;
+            for (int t : route) {
+                tripServices[tripIndex++] = services[tripHead[t]];
+                System.arraycopy(tripTimes[t], 0, stopTimes, timeCount,
+                        stops.length);
+                timeCount += stops.length;
+            }
+        }
+        firstRouteStop[routeCount] = stopCount;
+        firstRouteTrip[routeCount] = tripIndex;
+
+        this.firstStopRoute = new int[n + 1];
+        for (int s = 0; s < n; s++) {
+            firstStopRoute[s + 1] = firstStopRoute[s] + routesPerStop[s + 1];
+        }
+        this.stopRoutes = new int[stopCount];
+        this.stopRoutePositions = new int[stopCount];
+        int[] next = Arrays.copyOf(firstStopRoute, n);
+        for (int r = 0; r < routeCount; r++) {
+            for (int k = firstRouteStop[r]; k < firstRouteStop[r + 1]; k++) {
+                int i = next[routeStops[k]]++;
+                stopRoutes[i] = r;
+                stopRoutePositions[i] = k - firstRouteStop[r];
+            }
+        }
+
+        this.firstWalk = new int[n + 1];
+        this.walkDestination = new int[walkCount];
+        this.walkingTime = new int[walkCount];
+        walkCount = 0;
+        for (int u = 0; u < n; u++) {
+            firstWalk[u] = walkCount;
+            for (int e = firstEdge[u]; e < firstEdge[u + 1]; e++) {
+                if (edges[e].walkingTime() >= 0) {
+                    walkDestination[walkCount] = edgeDestination[e];
+                    walkingTime[walkCount] = edges[e].walkingTime();
+                    walkCount++;
+                }
+            }
+        }
+        firstWalk[n] = walkCount;
+    }
+
+    /**
+     * Retourne le nombre de lignes reconstituées.
+     *
+     * @return Le nombre de lignes.
+     */
+    public int routeCount() {
+        return firstRouteTime.length;
+    }
+
+    /**
+     * Retourne le nombre de courses reconstituées.
+     *
+     * @return Le nombre de courses.
+     */
+    public int tripCount() {
+        return tripServices.length;
+    }
+
+    /**
+     * Retourne l'arbre des trajets les plus rapides pour l'arrêt et l'heure de
+     * départ donnés, sans limite de correspondances, en n'empruntant que les
+     * courses des services actifs donnés.
+     *
+     * @param startingStop
+     *            Le Stop de départ
+     * @param departureTime
+     *            L'heure de départ en secondes après minuit
+     * @param activeServices
+     *            L'ensemble des services actifs retourné par
+     *            Graph.activeServices, ou null pour emprunter toutes les
+     *            courses
+     * @return L'arbre des trajets les plus rapides, instance de FastestPathTree
+     * @throws IllegalArgumentException
+     *             Si l'arrêt donné ne fait pas partie du graphe ou si l'heure
+     *             de départ est inférieure à zéro
+     */
+    public FastestPathTree fastestPaths(Stop startingStop, int departureTime,
+            BitSet activeServices) throws IllegalArgumentException {
+        return fastestPaths(startingStop, departureTime, UNLIMITED_TRANSFERS,
+                activeServices);
+    }
+
+    /**
+     * Retourne l'arbre des trajets les plus rapides pour l'arrêt et l'heure de
+     * départ donnés, comportant au plus le nombre de correspondances donné,
+     * en n'empruntant que les courses des services actifs donnés. Les arrêts
+     * qui ne sont atteignables qu'avec davantage de correspondances ne font
+     * pas partie de l'arbre.
+     *
+     * @param startingStop
+     *            Le Stop de départ
+     * @param departureTime
+     *            L'heure de départ en secondes après minuit
+     * @param maxTransfers
+     *            Le nombre maximal de correspondances, ou UNLIMITED_TRANSFERS
+     * @param activeServices
+     *            L'ensemble des services actifs retourné par
+     *            Graph.activeServices, ou null pour emprunter toutes les
+     *            courses
+     * @return L'arbre des trajets les plus rapides, instance de FastestPathTree
+     * @throws IllegalArgumentException
+     *             Si l'arrêt donné ne fait pas partie du graphe, si l'heure de
+     *             départ est inférieure à zéro ou si le nombre de
+     *             correspondances est négatif
+     */
+    public FastestPathTree fastestPaths(Stop startingStop, int departureTime,
+            int maxTransfers, BitSet activeServices)
+            throws IllegalArgumentException {
+        return fastestPaths(startingStop, departureTime, maxTransfers,
+                Graph.UNLIMITED_TRAVEL_TIME, activeServices);
+    }
+
+    /**
+     * Retourne l'arbre des trajets les plus rapides pour l'arrêt et l'heure de
+     * départ donnés, comportant au plus le nombre de correspondances donné et
+     * limité aux arrêts atteints en au plus la durée donnée, en n'empruntant
+     * que les courses des services actifs donnés.
+     *
+     * @param startingStop
+     *            Le Stop de départ
+     * @param departureTime
+     *            L'heure de départ en secondes après minuit
+     * @param maxTransfers
+     *            Le nombre maximal de correspondances, ou UNLIMITED_TRANSFERS
+     * @param maxTravelTime
+     *            La durée de trajet maximale en secondes, ou
+     *            Graph.UNLIMITED_TRAVEL_TIME
+     * @param activeServices
+     *            L'ensemble des services actifs retourné par
+     *            Graph.activeServices, ou null pour emprunter toutes les
+     *            courses
+     * @return L'arbre des trajets les plus rapides, ne contenant que les
+     *         arrêts atteints au plus tard à departureTime + maxTravelTime
+     * @throws IllegalArgumentException
+     *             Si l'arrêt donné ne fait pas partie du graphe, si l'heure de
+     *             départ ou la durée maximale est inférieure à zéro ou si le
+     *             nombre de correspondances est négatif
+     */
+    public FastestPathTree fastestPaths(Stop startingStop, int departureTime,
+            int maxTransfers, int maxTravelTime, BitSet activeServices)
+            throws IllegalArgumentException {
+        int start = stopIndex.id(startingStop);
+        if (start < 0)
+            throw new IllegalArgumentException(
+                    "L'arrêt donné ne fait pas partie du graphe.");
+        if (departureTime < 0)
+            throw new IllegalArgumentException("Heure de départ inférieure à 0");
+        if (maxTransfers < 0)
+            throw new IllegalArgumentException(
+                    "Nombre de correspondances négatif");
+        int latest = Graph.latestArrivalTime(departureTime, maxTravelTime);
+
+        int n = stopIndex.size();
+        int[] arrival = new int[n];
+        int[] predecessor = new int[n];
+        int[] leg = new int[n];
+        int[] previousArrival = new int[n];
+        Arrays.fill(arrival, SecondsPastMidnight.INFINITE);
+        Arrays.fill(predecessor, -1);
+        Arrays.fill(leg, FastestPathTree.WALKING_LEG);
+        // Arrêts améliorés pendant le tour courant
+        boolean[] marked = new boolean[n];
+        int[] markedStops = new int[n];
+        // Position à partir de laquelle parcourir chaque ligne, et lignes à
+        // parcourir pendant le tour courant
+        int[] routeStart = new int[routeCount()];
+        int[] scannedRoutes = new int[routeCount()];
+        Arrays.fill(routeStart, Integer.MAX_VALUE);
+        IndexedHeap queue = new IndexedHeap(n);
+
+        arrival[start] = departureTime;
+        marked[start] = true;
+        markedStops[0] = start;
+        int markedCount = walk(1, latest, arrival, predecessor, leg, marked,
+                markedStops, queue);
+
+        // Le tour k emprunte la k-ième course ; la borne est écrite de sorte
+        // à ne pas déborder lorsque maxTransfers vaut UNLIMITED_TRANSFERS
+        for (int transfers = 0; markedCount > 0; transfers++) {
+            System.arraycopy(arrival, 0, previousArrival, 0, n);
+            int routeCount = 0;
+            for (int i = 0; i < markedCount; i++) {
+                int s = markedStops[i];
+                marked[s] = false;
+                for (int k = firstStopRoute[s]; k < firstStopRoute[s + 1]; k++) {
+                    int r = stopRoutes[k];
+                    if (routeStart[r] == Integer.MAX_VALUE) {
+                        scannedRoutes[routeCount++] = r;
+                    }
+                    routeStart[r] = Math.min(routeStart[r],
+                            stopRoutePositions[k]);
+                }
+            }
+
+            markedCount = 0;
+            for (int i = 0; i < routeCount; i++) {
+                int r = scannedRoutes[i];
+                markedCount = scanRoute(r, routeStart[r], latest,
+                        previousArrival, arrival, predecessor, leg, marked,
+                        markedStops, markedCount, activeServices);
+                routeStart[r] = Integer.MAX_VALUE;
+            }
+            markedCount = walk(markedCount, latest, arrival, predecessor,
+                    leg, marked, markedStops, queue);
+            if (transfers == maxTransfers) {
+                break;
+            }
+        }
+
+        return new FastestPathTree(stopIndex, start, arrival, predecessor,
+                leg);
+    }
+
+    /**
+     * Parcourt la ligne donnée à partir de la position donnée : en chaque
+     * arrêt, la course courante améliore l'heure d'arrivée, puis une course
+     * plus matinale est montée si l'arrêt était atteint à temps au tour
+     * précédent. Les heures d'arrivée postérieures à latest sont ignorées.
+     *
+     * @return Le nouveau nombre d'arrêts marqués.
+     */
+    private int scanRoute(int r, int from, int latest, int[] previousArrival,
+            int[] arrival, int[] predecessor, int[] leg, boolean[] marked,
+            int[] markedStops, int markedCount, BitSet activeServices) {
+        int firstStop = firstRouteStop[r];
+        int length = firstRouteStop[r + 1] - firstStop;
+        int trips = firstRouteTrip[r + 1] - firstRouteTrip[r];
+        int times = firstRouteTime[r];
+        // Course courante, à partir de laquelle les heures de passage sont
+        // lues, arrêt où elle a été montée et heure de départ de cet arrêt
+        int trip = trips;
+        int boardingStop = -1;
+        int boardingTime = -1;
+        for (int p = from; p < length; p++) {
+            int s = routeStops[firstStop + p];
+            if (trip < trips) {
+                int time = stopTimes[times + trip * length + p];
+                if (time < arrival[s] && time <= latest) {
+                    arrival[s] = time;
+                    predecessor[s] = boardingStop;
+                    leg[s] = boardingTime;
+                    if (!marked[s]) {
+                        marked[s] = true;
+                        markedStops[markedCount++] = s;
+                    }
+                }
+            }
+            if (p < length - 1
+                    && previousArrival[s] < SecondsPastMidnight.INFINITE
+                    && (trip == trips || previousArrival[s] <= stopTimes[times
+                            + trip * length + p])) {
+                int earliest = earliestTrip(r, p, previousArrival[s], trip,
+                        activeServices);
+                if (earliest < trip) {
+                    trip = earliest;
+                    boardingStop = s;
+                    boardingTime = stopTimes[times + trip * length + p];
+                }
+            }
+        }
+        return markedCount;
+    }
+
+    /**
+     * Retourne la première course de la ligne donnée, parmi celles précédant
+     * la course before, d'un service actif et passant à la position donnée à
+     * l'heure donnée ou après, ou before s'il n'y en a pas.
+     */
+    private int earliestTrip(int r, int position, int time, int before,
+            BitSet activeServices) {
+        int length = firstRouteStop[r + 1] - firstRouteStop[r];
+        int times = firstRouteTime[r] + position;
+        // Les courses ne se dépassant pas, leurs heures de passage à chaque
+        // position sont croissantes
+        int low = 0;
+        int high = before;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (stopTimes[times + middle * length] < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int firstTrip = firstRouteTrip[r];
+        while (low < before && activeServices != null) {
+            int service = tripServices[firstTrip + low];
+            if (service == GraphEdge.NO_SERVICE || activeServices.get(service)) {
+                break;
+            }
+            low++;
+        }
+        return low;
+    }
+
+    /**
+     * Suit les trajets à pied depuis les arrêts marqués (algorithme de
+     * Dijkstra restreint aux trajets à pied), en marquant les arrêts dont
+     * l'heure d'arrivée est ainsi améliorée sans dépasser latest.
+     *
+     * @return Le nouveau nombre d'arrêts marqués.
+     */
+    private int walk(int markedCount, int latest, int[] arrival,
+            int[] predecessor, int[] leg, boolean[] marked, int[] markedStops,
+            IndexedHeap queue) {
+        for (int i = 0; i < markedCount; i++) {
+            queue.push(markedStops[i], arrival[markedStops[i]]);
+        }
+        while (!queue.isEmpty()) {
+            int current = queue.removeMin();
+            for (int w = firstWalk[current]; w < firstWalk[current + 1]; w++) {
+                int destination = walkDestination[w];
+                int time = arrival[current] + walkingTime[w];
+                if (time <= latest && time < arrival[destination]) {
+                    arrival[destination] = time;
+                    predecessor[destination] = current;
+                    leg[destination] = FastestPathTree.WALKING_LEG;
+                    queue.push(destination, time);
+                    if (!marked[destination]) {
+                        marked[destination] = true;
+                        markedStops[markedCount++] = destination;
+                    }
+                }
+            }
+        }
+        return markedCount;
+    }
+
+    /**
+     * Retourne vrai si la course aux heures de passage times1 passe avant la
+     * course aux heures times2 à l'une des positions.
+     */
+    private static boolean overtakes(int[] times1, int[] times2) {
+        for (int p = 0; p < times1.length; p++) {
+            if (times1[p] < times2[p]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Long waitingKey(int stop, int time, int service) {
+        return ((long) stop << 40) | ((long) time << 22) | (service + 1);
+    }
+
+    /**
+     * Suite d'arrêts desservie par une course, utilisée comme clé.
+     */
+    private static final class StopSequence {
+        private final int[] stops;
+        private final int hashCode;
+
+        public StopSequence(int[] stops) {
+            this.stops = stops;
+            this.hashCode = Arrays.hashCode(stops);
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            return that instanceof StopSequence
+                    && Arrays.equals(stops, ((StopSequence) that).stops);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
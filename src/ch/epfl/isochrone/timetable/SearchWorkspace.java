@@ -0,0 +1,190 @@
+/**
+ * Espace de travail réutilisable des recherches de trajets les plus rapides
+ * dans un graphe.
+ *
+ * Contient les heures d'arrivée, prédécesseurs et étapes (à pied ou heure
+ * de départ du trajet emprunté) de tous les arrêts ainsi que le tas de la
+ * recherche, alloués une fois pour toutes. Chaque entrée est marquée du
+ * numéro de la recherche qui l'a écrite : une nouvelle recherche incrémente
+ * ce numéro au lieu d'effacer les tableaux, de sorte qu'une recherche
+ * répétée (Graph.search) n'alloue aucune mémoire.
+ *
+ * Un espace de travail ne peut être utilisé que par un seul fil d'exécution
+ * à la fois ; les résultats d'une recherche y restent lisibles jusqu'à la
+ * recherche suivante.
+ *
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import java.util.Arrays;
+
+public final class SearchWorkspace {
+    private final StopIndex stopIndex;
+    private final int[] arrivalTime;
+    private final int[] predecessor;
+    private final int[] leg;
+    // Numéro de la recherche ayant écrit chaque entrée
+    private final int[] stamp;
+    private final IndexedHeap queue;
+    // Numéro de la recherche courante, 0 avant la première recherche
+    private int generation;
+    private int start;
+    private int startingTime;
+
+    /**
+     * Construit un espace de travail pour les recherches dans le graphe
+     * donné.
+     *
+     * @param graph
+     *            Le graphe dans lequel les recherches sont faites
+     */
+    public SearchWorkspace(Graph graph) {
+        this.stopIndex = graph.stopIndex();
+        int n = stopIndex.size();
+        this.arrivalTime = new int[n];
+        this.predecessor = new int[n];
+        this.leg = new int[n];
+        this.stamp = new int[n];
+        this.queue = new IndexedHeap(n);
+        this.generation = 0;
+        this.start = -1;
+    }
+
+    /**
+     * Retourne l'arrêt de départ de la dernière recherche.
+     *
+     * @return L'arrêt de départ, ou null si aucune recherche n'a été faite.
+     */
+    public Stop startingStop() {
+        return start < 0 ? null : stopIndex.stop(start);
+    }
+
+    /**
+     * Retourne l'heure de départ de la dernière recherche.
+     *
+     * @return L'heure de départ en secondes après minuit.
+     */
+    public int startingTime() {
+        return startingTime;
+    }
+
+    /**
+     * Retourne l'heure d'arrivée au plus tôt à l'arrêt donné, calculée par la
+     * dernière recherche.
+     *
+     * @param stop
+     *            L'arrêt d'arrivée
+     * @return L'heure d'arrivée, ou SecondsPastMidnight.INFINITE si l'arrêt
+     *         n'a pas été atteint
+     */
+    public int arrivalTime(Stop stop) {
+        int id = stopIndex.id(stop);
+        return id < 0 || start < 0 ? SecondsPastMidnight.INFINITE
+                : arrivalTime(id);
+    }
+
+    /**
+     * Retourne l'arbre des trajets les plus rapides calculé par la dernière
+     * recherche.
+     *
+     * @return L'arbre des trajets les plus rapides
+     * @throws IllegalStateException
+     *             Si aucune recherche n'a été faite
+     */
+    public FastestPathTree toFastestPathTree() throws IllegalStateException {
+        if (start < 0) {
+            throw new IllegalStateException("Aucune recherche");
+        }
+        int n = stamp.length;
+        int[] treeArrivalTime = new int[n];
+        int[] treePredecessor = new int[n];
+        int[] treeLeg = new int[n];
+        for (int i = 0; i < n; i++) {
+            treeArrivalTime[i] = arrivalTime(i);
+            treePredecessor[i] = predecessor(i);
+            treeLeg[i] = leg(i);
+        }
+        return new FastestPathTree(stopIndex, start, startingTime,
+                treeArrivalTime, treePredecessor, treeLeg);
+    }
+
+    /**
+     * Retourne la numérotation des arrêts du graphe de l'espace de travail.
+     */
+    StopIndex stopIndex() {
+        return stopIndex;
+    }
+
+    /**
+     * Commence une nouvelle recherche : tous les arrêts deviennent non
+     * atteints, sauf l'arrêt de départ.
+     */
+    void reset(int start, int startingTime) {
+        generation++;
+        if (generation == 0) {
+            // Après 2^32 recherches, les anciens numéros pourraient revenir
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        queue.clear();
+        this.start = start;
+        this.startingTime = startingTime;
+        stamp[start] = generation;
+        arrivalTime[start] = startingTime;
+        predecessor[start] = -1;
+        leg[start] = FastestPathTree.WALKING_LEG;
+    }
+
+    /**
+     * Ajoute à la recherche courante un arrêt de départ supplémentaire, dont
+     * le départ se fait à l'heure donnée.
+     */
+    void addOrigin(int stop, int time) {
+        setArrivalTime(stop, time, FastestPathTree.ORIGIN,
+                FastestPathTree.WALKING_LEG);
+    }
+
+    IndexedHeap queue() {
+        return queue;
+    }
+
+    int arrivalTime(int stop) {
+        return stamp[stop] == generation ? arrivalTime[stop]
+                : SecondsPastMidnight.INFINITE;
+    }
+
+    int predecessor(int stop) {
+        return stamp[stop] == generation ? predecessor[stop] : -1;
+    }
+
+    /**
+     * Retourne vrai si l'arrêt donné a reçu une heure d'arrivée (même
+     * infinie) depuis le début de la recherche courante.
+     */
+    boolean reached(int stop) {
+        return stamp[stop] == generation;
+    }
+
+    int leg(int stop) {
+        return stamp[stop] == generation ? leg[stop]
+                : FastestPathTree.WALKING_LEG;
+    }
+
+    /**
+     * Rend l'arrêt donné non atteint pour la recherche courante.
+     */
+    void forget(int stop) {
+        // Les numéros de recherche valent au moins 1
+        stamp[stop] = 0;
+    }
+
+    void setArrivalTime(int stop, int time, int predecessor, int leg) {
+        stamp[stop] = generation;
+        arrivalTime[stop] = time;
+        this.predecessor[stop] = predecessor;
+        this.leg[stop] = leg;
+    }
+}
@@ -9,6 +9,7 @@
 
 package ch.epfl.isochrone.timetable;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -89,6 +90,51 @@ public final class Service {
         return name;
     }
 
+    /**
+     * Retourne la date de début du service.
+     * 
+     * @return la date de début du service
+     */
+    Date startingDate() {
+        return startingDate;
+    }
+
+    /**
+     * Retourne la date de fin du service.
+     * 
+     * @return la date de fin du service
+     */
+    Date endingDate() {
+        return endingDate;
+    }
+
+    /**
+     * Retourne les jours de la semaine où le service est actif.
+     * 
+     * @return l'ensemble (non modifiable) des jours de circulation
+     */
+    Set<Date.DayOfWeek> operatingDays() {
+        return Collections.unmodifiableSet(operatingDays);
+    }
+
+    /**
+     * Retourne les dates exceptionnellement exclues du service.
+     * 
+     * @return l'ensemble (non modifiable) des dates exclues
+     */
+    Set<Date> excludedDates() {
+        return Collections.unmodifiableSet(excludedDates);
+    }
+
+    /**
+     * Retourne les dates exceptionnellement incluses dans le service.
+     * 
+     * @return l'ensemble (non modifiable) des dates incluses
+     */
+    Set<Date> includedDates() {
+        return Collections.unmodifiableSet(includedDates);
+    }
+
     /**
      * Retourne vrai si le service est actif à la date passée en paramêtre
      * 
@@ -0,0 +1,201 @@
+/**
+ * Index spatial des arrêts, sous la forme d'une grille uniforme en latitude et
+ * longitude.
+ *
+ * Chaque cellule de la grille mesure au moins la taille donnée à la
+ * construction dans les deux directions, de sorte que la recherche des arrêts
+ * situés à une distance inférieure à cette taille d'un point ne parcourt que
+ * les cellules voisines de celle du point. Les candidats sont d'abord filtrés
+ * par une approximation équirectangulaire de la distance, peu coûteuse, avant
+ * le calcul exact de la distance par PointWGS84.distanceTo.
+ *
+ * Classe immuable, uniquement visible dans son paquetage.
+ *
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import static java.lang.Math.cos;
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+
+final class StopGrid {
+    // Rayon de la Terre utilisé par PointWGS84.distanceTo, en mètres
+    private static final double EARTH_RADIUS = 6378137;
+    // Latitude maximale prise en compte pour la largeur des cellules, afin
+    // d'éviter une largeur infinie près des pôles
+    private static final double MAX_LATITUDE = Math.toRadians(85);
+    // Marge de l'approximation équirectangulaire, qui n'est exacte qu'au
+    // premier ordre
+    private static final double APPROXIMATION_MARGIN = 1.01;
+
+    private final Stop[] stops;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double minLatitude, minLongitude;
+    private final double cellHeight, cellWidth;
+    private final int rows, columns;
+    /*
+     * Contenu des cellules : les arrêts de la cellule c sont ceux dont les
+     * indices sont stockés aux positions cellStart[c] (inclus) à cellStart[c
+     * + 1] (exclu) du tableau cellStops.
+     */
+    private final int[] cellStart;
+    private final int[] cellStops;
+
+    /**
+     * Construit l'index spatial des arrêts donnés.
+     *
+     * @param stops
+     *            Les arrêts à indexer.
+     * @param cellSize
+     *            La taille minimale d'une cellule, en mètres.
+     * @throws IllegalArgumentException
+     *             Si la taille des cellules n'est pas strictement positive.
+     */
+    public StopGrid(Collection<Stop> stops, double cellSize)
+            throws IllegalArgumentException {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Taille de cellule illégale");
+        }
+
+        this.stops = stops.toArray(new Stop[stops.size()]);
+        int n = this.stops.length;
+        this.latitudes = new double[n];
+        this.longitudes = new double[n];
+
+        double minLat = 0, maxLat = 0, minLon = 0, maxLon = 0, maxAbsLat = 0;
+        for (int i = 0; i < n; i++) {
+            latitudes[i] = this.stops[i].position().latitude();
+            longitudes[i] = this.stops[i].position().longitude();
+            if (i == 0) {
+                minLat = maxLat = latitudes[i];
+                minLon = maxLon = longitudes[i];
+            }
+            minLat = min(minLat, latitudes[i]);
+            maxLat = max(maxLat, latitudes[i]);
+            minLon = min(minLon, longitudes[i]);
+            maxLon = max(maxLon, longitudes[i]);
+            maxAbsLat = max(maxAbsLat, Math.abs(latitudes[i]));
+        }
+
+        // Les cellules sont assez larges pour mesurer cellSize à la latitude
+        // la plus éloignée de l'équateur
+        double height = cellSize / EARTH_RADIUS;
+        double width = cellSize
+                / (EARTH_RADIUS * cos(min(maxAbsLat, MAX_LATITUDE)));
+
+        // On limite le nombre de cellules à quelques unes par arrêt, quitte à
+        // agrandir les cellules
+        double cells = (floor((maxLat - minLat) / height) + 1)
+                * (floor((maxLon - minLon) / width) + 1);
+        double maxCells = 4.0 * n + 1;
+        if (cells > maxCells) {
+            double factor = sqrt(cells / maxCells);
+            height *= factor;
+            width *= factor;
+        }
+
+        this.minLatitude = minLat;
+        this.minLongitude = minLon;
+        this.cellHeight = height;
+        this.cellWidth = width;
+        this.rows = (int) floor((maxLat - minLat) / height) + 1;
+        this.columns = (int) floor((maxLon - minLon) / width) + 1;
+
+        // Répartition des arrêts dans les cellules (tri par dénombrement)
+        int[] cellOfStop = new int[n];
+        this.cellStart = new int[rows * columns + 1];
+        for (int i = 0; i < n; i++) {
+            cellOfStop[i] = row(latitudes[i]) * columns
+                    + column(longitudes[i]);
+            cellStart[cellOfStop[i] + 1]++;
+        }
+        for (int c = 0; c < rows * columns; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] next = new int[rows * columns];
+        this.cellStops = new int[n];
+        for (int i = 0; i < n; i++) {
+            int c = cellOfStop[i];
+            cellStops[cellStart[c] + next[c]++] = i;
+        }
+    }
+
+    /**
+     * Retourne la liste des arrêts situés à une distance inférieure ou égale à
+     * celle donnée du point donné.
+     *
+     * @param point
+     *            Le point autour duquel on recherche les arrêts.
+     * @param radius
+     *            La distance maximale, en mètres.
+     * @return La liste des arrêts situés à une distance inférieure ou égale à
+     *         radius du point.
+     */
+    public List<Stop> stopsWithin(PointWGS84 point, double radius) {
+        List<Stop> result = new ArrayList<>();
+        if (stops.length == 0 || radius < 0) {
+            return result;
+        }
+
+        double latitude = point.latitude();
+        double longitude = point.longitude();
+
+        double deltaLat = radius / EARTH_RADIUS;
+        double farthestLat = min(Math.abs(latitude) + deltaLat, MAX_LATITUDE);
+        double deltaLon = radius / (EARTH_RADIUS * cos(farthestLat));
+
+        int rowMin = max(0, row(latitude - deltaLat));
+        int rowMax = min(rows - 1, row(latitude + deltaLat));
+        int columnMin = max(0, column(longitude - deltaLon));
+        int columnMax = min(columns - 1, column(longitude + deltaLon));
+
+        // Le cosinus de la latitude la plus éloignée de l'équateur sous-estime
+        // les distances est-ouest, le préfiltre ne rejette donc aucun arrêt
+        // effectivement situé dans le rayon
+        double cosLat = cos(farthestLat);
+        double maxApprox = radius * APPROXIMATION_MARGIN + 1;
+        double maxApprox2 = maxApprox * maxApprox;
+
+        for (int r = rowMin; r <= rowMax; r++) {
+            for (int c = columnMin; c <= columnMax; c++) {
+                int cell = r * columns + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int i = cellStops[k];
+                    // Préfiltre équirectangulaire
+                    double x = (longitudes[i] - longitude) * cosLat
+                            * EARTH_RADIUS;
+                    double y = (latitudes[i] - latitude) * EARTH_RADIUS;
+                    if (x * x + y * y > maxApprox2) {
+                        continue;
+                    }
+                    if (stops[i].position().distanceTo(point) <= radius) {
+                        result.add(stops[i]);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private int row(double latitude) {
+        return (int) min(rows - 1, max(-1, floor((latitude - minLatitude)
+                / cellHeight)));
+    }
+
+    private int column(double longitude) {
+        return (int) min(columns - 1, max(-1, floor((longitude - minLongitude)
+                / cellWidth)));
+    }
+}
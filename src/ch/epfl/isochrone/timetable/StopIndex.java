@@ -0,0 +1,115 @@
+/**
+ * Numérotation dense des arrêts d'un graphe.
+ *
+ * Associe à chaque arrêt un identifiant entier compris entre 0 et le nombre
+ * d'arrêts - 1, qui permet d'indexer des tableaux primitifs plutôt que des
+ * tables associatives. Les arrêts sont numérotés par ordre alphabétique (puis
+ * par position), afin que la numérotation d'un même ensemble d'arrêts soit
+ * toujours la même.
+ *
+ * Classe immuable, uniquement visible dans son paquetage.
+ *
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+final class StopIndex {
+    private final Stop[] stops;
+    private final Map<Stop, Integer> ids;
+
+    /**
+     * Construit la numérotation des arrêts donnés.
+     *
+     * @param stops
+     *            Les arrêts à numéroter.
+     */
+    public StopIndex(Collection<Stop> stops) {
+        this.stops = stops.toArray(new Stop[stops.size()]);
+        Arrays.sort(this.stops, new Comparator<Stop>() {
+            @Override
+            public int compare(Stop s1, Stop s2) {
+                int c = s1.compareTo(s2);
+                if (c == 0) {
+                    c = Double.compare(s1.position().latitude(), s2
+                            .position().latitude());
+                }
+                if (c == 0) {
+                    c = Double.compare(s1.position().longitude(), s2
+                            .position().longitude());
+                }
+                return c;
+            }
+        });
+        this.ids = new HashMap<>();
+        for (int i = 0; i < this.stops.length; i++) {
+            ids.put(this.stops[i], i);
+        }
+    }
+
+    /**
+     * Construit la numérotation des arrêts donnés, déjà ordonnés : l'arrêt
+     * d'identifiant i est stops[i]. Utilisé pour retrouver la numérotation
+     * enregistrée dans un instantané d'horaire. Le tableau n'est pas copié.
+     *
+     * @param stops
+     *            Les arrêts, dans l'ordre de leurs identifiants.
+     */
+    StopIndex(Stop[] stops) {
+        this.stops = stops;
+        this.ids = new HashMap<>();
+        for (int i = 0; i < stops.length; i++) {
+            ids.put(stops[i], i);
+        }
+    }
+
+    /**
+     * Retourne le nombre d'arrêts numérotés.
+     *
+     * @return Le nombre d'arrêts.
+     */
+    public int size() {
+        return stops.length;
+    }
+
+    /**
+     * Retourne l'arrêt ayant l'identifiant donné.
+     *
+     * @param id
+     *            L'identifiant de l'arrêt.
+     * @return L'arrêt correspondant.
+     */
+    public Stop stop(int id) {
+        return stops[id];
+    }
+
+    /**
+     * Retourne l'identifiant de l'arrêt donné, ou -1 s'il n'est pas numéroté.
+     *
+     * @param stop
+     *            L'arrêt dont on veut l'identifiant.
+     * @return L'identifiant de l'arrêt, ou -1.
+     */
+    public int id(Stop stop) {
+        Integer id = ids.get(stop);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Retourne vrai si l'arrêt donné est numéroté.
+     *
+     * @param stop
+     *            L'arrêt recherché.
+     * @return true ssi l'arrêt fait partie de la numérotation.
+     */
+    public boolean contains(Stop stop) {
+        return ids.containsKey(stop);
+    }
+}
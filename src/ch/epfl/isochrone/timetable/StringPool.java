@@ -0,0 +1,125 @@
+/**
+ * Table de chaînes de caractères indexée par leur encodage UTF-8.
+ *
+ * Permet de retrouver la chaîne correspondant à une suite d'octets sans
+ * construire de chaîne intermédiaire : une même suite d'octets donne toujours
+ * la même instance de String, qui n'est créée qu'à la première rencontre. Les
+ * noms d'arrêts et de services, répétés à chaque ligne des fichiers d'horaire,
+ * ne coûtent ainsi qu'une recherche dans la table.
+ *
+ * Classe uniquement visible dans son paquetage.
+ *
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+final class StringPool {
+    // Table à adressage ouvert (sondage linéaire), de taille une puissance
+    // de deux, remplie au plus aux trois quarts
+    private byte[][] keys;
+    private String[] values;
+    private int[] hashes;
+    private int size;
+
+    /**
+     * Construit une table vide.
+     */
+    public StringPool() {
+        this.keys = new byte[64][];
+        this.values = new String[64];
+        this.hashes = new int[64];
+        this.size = 0;
+    }
+
+    /**
+     * Retourne le nombre de chaînes différentes de la table.
+     *
+     * @return Le nombre de chaînes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Retourne la chaîne encodée en UTF-8 par les octets donnés, en l'ajoutant
+     * à la table si elle n'y est pas encore.
+     *
+     * @param bytes
+     *            Le tableau contenant les octets.
+     * @param from
+     *            La position du premier octet (inclus).
+     * @param to
+     *            La position du dernier octet (exclu).
+     * @return La chaîne correspondante, toujours la même instance pour une
+     *         même suite d'octets.
+     */
+    public String get(byte[] bytes, int from, int to) {
+        int hash = hash(bytes, from, to);
+        int mask = keys.length - 1;
+        int i = hash & mask;
+        while (keys[i] != null) {
+            if (hashes[i] == hash && equal(keys[i], bytes, from, to)) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+
+        String value = new String(bytes, from, to - from,
+                StandardCharsets.UTF_8);
+        keys[i] = Arrays.copyOfRange(bytes, from, to);
+        values[i] = value;
+        hashes[i] = hash;
+        if (++size * 4 > keys.length * 3) {
+            grow();
+        }
+        return value;
+    }
+
+    private void grow() {
+        byte[][] oldKeys = keys;
+        String[] oldValues = values;
+        int[] oldHashes = hashes;
+        keys = new byte[2 * oldKeys.length][];
+        values = new String[keys.length];
+        hashes = new int[keys.length];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                int i = oldHashes[j] & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+                hashes[i] = oldHashes[j];
+            }
+        }
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + bytes[i];
+        }
+        // Mélange des bits de poids fort dans ceux de poids faible, seuls
+        // utilisés pour indexer la table
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equal(byte[] key, byte[] bytes, int from, int to) {
+        if (key.length != to - from) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != bytes[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -41,6 +41,15 @@ public final class TimeTable {
         return stops;
     }
 
+    /**
+     * Retourne l'ensemble de tous les services de l'horaire.
+     * 
+     * @return l'ensemble (non modifiable) des services.
+     */
+    public Set<Service> services() {
+        return Collections.unmodifiableSet(services);
+    }
+
     /**
      * Retourne l'ensemble des services actifs le jour donné.
      * 
@@ -7,24 +7,25 @@
 
 package ch.epfl.isochrone.timetable;
 
-import static java.lang.Double.parseDouble;
-import static java.lang.Integer.parseInt;
-
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import ch.epfl.isochrone.geo.PointWGS84;
 import ch.epfl.isochrone.timetable.Date.DayOfWeek;
 
 public final class TimeTableReader {
+    // Taille minimale d'un morceau de stop_times.csv analysé par une tâche
+    private static final int MIN_CHUNK_SIZE = 1 << 18;
+
     private final String baseResourceName;
 
     /**
@@ -60,20 +61,39 @@ public final class TimeTableReader {
     }
 
     /**
-     * Extrait une date contenue dans une String
+     * Extrait une date contenue dans un entier
      * 
-     * @param s
-     *            La String contenant la date, au format YYYYMMJJ
-     * @return Une instance de Date représentant la date contenue dans la String
-     *         passée en argument
+     * @param yyyymmdd
+     *            L'entier contenant la date, au format YYYYMMJJ
+     * @return Une instance de Date représentant la date contenue dans l'entier
+     *         passé en argument
+     * @throws IllegalArgumentException
+     *             Si l'entier n'a pas 8 chiffres ou si la date est invalide
      */
-    private Date extractDate(String s) {
-        int year = parseInt(s.substring(0, 4));
-        int month = parseInt(s.substring(4, 6));
-        int day = parseInt(s.substring(6, 8));
+    private Date extractDate(int yyyymmdd) throws IllegalArgumentException {
+        if (yyyymmdd < 10000000 || yyyymmdd > 99999999) {
+            throw new IllegalArgumentException("Date invalide");
+        }
+        int year = yyyymmdd / 10000;
+        int month = (yyyymmdd / 100) % 100;
+        int day = yyyymmdd % 100;
         return new Date(day, month, year);
     }
 
+    /**
+     * Ouvre la ressource donnée, relative au préfixe des ressources.
+     * 
+     * @param name
+     *            Le nom de la ressource
+     * @param pool
+     *            La table des chaînes lues
+     * @return Un analyseur lisant la ressource
+     */
+    private CsvTokenizer open(String name, StringPool pool) {
+        return new CsvTokenizer(getClass().getResourceAsStream(
+                baseResourceName + name), pool);
+    }
+
     /**
      * Lecture des Stops. Prend en argument un TimeTable.Builder à mettre à jour
      * avec les nouvelles données de stops.
@@ -87,18 +107,13 @@ public final class TimeTableReader {
      */
     private void readStops(TimeTable.Builder ttb) throws IOException,
             IllegalArgumentException {
-        InputStream inStream = getClass().getResourceAsStream(
-                baseResourceName + "stops.csv");
-        BufferedReader reader = new BufferedReader(new InputStreamReader(
-                inStream, StandardCharsets.UTF_8));
-        String line;
+        CsvTokenizer reader = open("stops.csv", new StringPool());
         try {
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(";");
-                String name = data[0];
+            while (reader.nextLine()) {
+                String name = reader.nextString();
 
-                double latitude = parseDouble(data[1]);
-                double longitude = parseDouble(data[2]);
+                double latitude = reader.nextDouble();
+                double longitude = reader.nextDouble();
 
                 latitude = Math.toRadians(latitude);
                 longitude = Math.toRadians(longitude);
@@ -133,28 +148,24 @@ public final class TimeTableReader {
 
         Map<String, Service.Builder> servicesBuilders = new HashMap<String, Service.Builder>();
 
-        InputStream inStream = getClass().getResourceAsStream(
-                baseResourceName + "calendar.csv");
-        BufferedReader reader = new BufferedReader(new InputStreamReader(
-                inStream, StandardCharsets.UTF_8));
-        String line;
+        StringPool pool = new StringPool();
+        CsvTokenizer reader = open("calendar.csv", pool);
         try {
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(";");
-                String name = data[0];
+            while (reader.nextLine()) {
+                String name = reader.nextString();
 
                 ArrayList<DayOfWeek> operatingDays = new ArrayList<DayOfWeek>();
 
                 Date.DayOfWeek[] daysOfWeek = DayOfWeek.values();
 
                 for (int j = 1; j <= 7; j++) {
-                    if (data[j].equals("1")) {
+                    if (reader.nextInt() == 1) {
                         operatingDays.add(daysOfWeek[j - 1]);
                     }
                 }
 
-                Date startingDate = extractDate(data[8]);
-                Date endingDate = extractDate(data[9]);
+                Date startingDate = extractDate(reader.nextInt());
+                Date endingDate = extractDate(reader.nextInt());
 
                 Service.Builder newServiceBuilder = new Service.Builder(name,
                         startingDate, endingDate);
@@ -166,7 +177,7 @@ public final class TimeTableReader {
                 ttb.addService(newServiceBuilder.build());
             }
             reader.close();
-            readCalendarDates(servicesBuilders);
+            readCalendarDates(servicesBuilders, pool);
         } catch (IOException | StringIndexOutOfBoundsException
                 | IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
             throw new IllegalArgumentException(
@@ -181,24 +192,22 @@ public final class TimeTableReader {
      * 
      * @param ttb
      *            L'horaire à mettre à jour
+     * @param pool
+     *            La table des chaînes, partagée avec la lecture des services
      * @throws IOException
      *             En cas d'erreur d'entrée-sortie.
      * @throws IllegalArgumentException
      *             En cas d'erreur de format de données.
      */
-    private void readCalendarDates(Map<String, Service.Builder> servicesBuilders)
+    private void readCalendarDates(
+            Map<String, Service.Builder> servicesBuilders, StringPool pool)
             throws IOException, IllegalArgumentException {
-        InputStream inStream = getClass().getResourceAsStream(
-                baseResourceName + "calendar_dates.csv");
-        BufferedReader reader = new BufferedReader(new InputStreamReader(
-                inStream, StandardCharsets.UTF_8));
-        String line;
+        CsvTokenizer reader = open("calendar_dates.csv", pool);
         try {
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(";");
-                String name = data[0];
-                Date date = extractDate(data[1]);
-                boolean goToIncluded = data[2].equals("1");
+            while (reader.nextLine()) {
+                String name = reader.nextString();
+                Date date = extractDate(reader.nextInt());
+                boolean goToIncluded = reader.nextInt() == 1;
 
                 if (goToIncluded) {
                     servicesBuilders.get(name).addIncludedDate(date);
@@ -221,6 +230,14 @@ public final class TimeTableReader {
      * entre arrêts qui sont faisables en un temps inférieur ou égal à celui
      * donné, à la vitesse de marche donnée.
      * 
+     * Chaque trajet est associé à son service : un graphe lu pour l'ensemble
+     * des services de l'horaire (TimeTable.services) peut donc servir pour
+     * n'importe quelle date, en passant à Graph.fastestPaths les services
+     * actifs ce jour-là (Graph.activeServices).
+     * 
+     * Le fichier stop_times.csv est lu en parallèle, sur le pool commun de
+     * fork-join.
+     * 
      * @param stops
      * @param services
      * @param walkingTime
@@ -229,60 +246,221 @@ public final class TimeTableReader {
      *            La vitesse de marche, en mètres par seconde.
      * @return
      * @throws IOException
-     *             En cas d'erreur d'entrée-sortie.
+     *             En cas d'erreur d'entrée-sortie.
      * @throws IllegalArgumentException
-     *             En cas d'erreur de format de données.
+     *             En cas d'erreur de format de données.
      */
     public Graph readGraphForServices(Set<Stop> stops, Set<Service> services,
             int walkingTime, double walkingSpeed) throws IOException,
             IllegalArgumentException {
+        return readGraphForServices(stops, services, walkingTime,
+                walkingSpeed, ForkJoinPool.commonPool());
+    }
 
-        Graph.Builder gb = new Graph.Builder(stops);
-
-        // On copie les Stops dans une map afin de pouvoir les retrouver plus
-        // facilement à partir de leur nom
-        Map<String, Stop> stopsMap = new HashMap<>();
-        for (Stop s : stops) {
-            stopsMap.put(s.name(), s);
-        }
-
-        Set<String> nomsDeServices = new HashSet<>();
-        for (Service s : services)
-            nomsDeServices.add(s.name());
-
+    /**
+     * Lit et retourne le graphe des horaires, comme la méthode précédente, en
+     * lisant le fichier stop_times.csv sur le pool de fork-join donné.
+     * 
+     * Le fichier est découpé en morceaux commençant et finissant par une fin
+     * de ligne, analysés indépendamment par les tâches du pool. Chaque tâche
+     * remplit son propre tableau de trajets (arrêts et service désignés par
+     * leur index), ajoutés ensuite au graphe dans l'ordre du fichier.
+     * 
+     * @param stops
+     * @param services
+     * @param walkingTime
+     *            Le temps de marche, en secondes.
+     * @param walkingSpeed
+     *            La vitesse de marche, en mètres par seconde.
+     * @param pool
+     *            Le pool sur lequel analyser le fichier
+     * @return Le graphe des horaires
+     * @throws IOException
+     *             En cas d'erreur d'entrée-sortie.
+     * @throws IllegalArgumentException
+     *             En cas d'erreur de format de données.
+     */
+    public Graph readGraphForServices(Set<Stop> stops, Set<Service> services,
+            int walkingTime, double walkingSpeed, ForkJoinPool pool)
+            throws IOException, IllegalArgumentException {
         InputStream inStream = getClass().getResourceAsStream(
                 baseResourceName + "stop_times.csv");
-        BufferedReader reader = new BufferedReader(new InputStreamReader(
-                inStream, StandardCharsets.UTF_8));
+        if (inStream == null) {
+            throw new NullPointerException();
+        }
 
+        byte[] data;
         try {
-            String line = reader.readLine();
-            while (line != null) {
+            data = readFully(inStream);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(
+                    "Erreur de données dans stop_times.csv");
+        }
+        return readStopTimes(data, stops, services, walkingTime,
+                walkingSpeed, pool, MIN_CHUNK_SIZE);
+    }
 
-                String[] data = line.split(";");
+    /**
+     * Construit le graphe des horaires à partir du contenu du fichier
+     * stop_times.csv, analysé sur le pool donné en morceaux d'au moins la
+     * taille donnée (sauf le dernier), alignés sur les fins de ligne.
+     * Utilisé par readGraphForServices, et par les tests pour forcer de
+     * petits morceaux.
+     * 
+     * @throws IllegalArgumentException
+     *             En cas d'erreur de format de données.
+     */
+    static Graph readStopTimes(final byte[] data, Set<Stop> stops,
+            Set<Service> services, int walkingTime, double walkingSpeed,
+            ForkJoinPool pool, int minChunkSize)
+            throws IllegalArgumentException {
 
-                String nomService = data[0];
-                String nomStopDepart = data[1];
-                int departureTime = Integer.parseInt(data[2]);
-                String nomStopArrivee = data[3];
-                int arrivalTime = Integer.parseInt(data[4]);
+        Graph.Builder gb = new Graph.Builder(stops);
 
-                if (nomsDeServices.contains(nomService)) {
-                    gb.addTripEdge(stopsMap.get(nomStopDepart),
-                            stopsMap.get(nomStopArrivee), departureTime,
-                            arrivalTime);
+        // On numérote les Stops et les Services afin de pouvoir les retrouver
+        // plus facilement à partir de leur nom, depuis toutes les tâches
+        final Stop[] stopArray = stops.toArray(new Stop[stops.size()]);
+        final Map<String, Integer> stopIds = new HashMap<>();
+        for (int i = 0; i < stopArray.length; i++) {
+            stopIds.put(stopArray[i].name(), i);
+        }
+        Service[] serviceArray = services.toArray(new Service[services
+                .size()]);
+        final Map<String, Integer> serviceIds = new HashMap<>();
+        for (int i = 0; i < serviceArray.length; i++) {
+            serviceIds.put(serviceArray[i].name(), i);
+        }
 
+        try {
+            // Découpage en morceaux alignés sur les fins de ligne
+            int chunkCount = Math.max(1, Math.min(4 * pool.getParallelism(),
+                    data.length / minChunkSize));
+            final List<StopTimesChunk> chunks = new ArrayList<>(chunkCount);
+            int from = 0;
+            for (int c = 1; c <= chunkCount && from < data.length; c++) {
+                int to = (int) ((long) data.length * c / chunkCount);
+                while (to < data.length && data[to - 1] != '\n') {
+                    to++;
+                }
+                if (to > from) {
+                    chunks.add(new StopTimesChunk(data, from, to, stopIds,
+                            serviceIds));
                 }
-                line = reader.readLine();
+                from = to;
+            }
 
+            pool.invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    invokeAll(chunks);
+                }
+            });
+
+            for (StopTimesChunk chunk : chunks) {
+                int[] trips = chunk.trips;
+                for (int i = 0; i < chunk.size; i += 5) {
+                    gb.addTripEdge(stopArray[trips[i]],
+                            stopArray[trips[i + 1]], trips[i + 2],
+                            trips[i + 3], serviceArray[trips[i + 4]]);
+                }
             }
             gb.addAllWalkEdges(walkingTime, walkingSpeed);
-            reader.close();
         } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException
-                | IOException e) {
+                | UncheckedIOException e) {
             throw new IllegalArgumentException(
                     "Erreur de données dans stop_times.csv");
         }
         return gb.build();
     }
-}
\ No newline at end of file
+
+    /**
+     * Lit la totalité du flot donné, puis le ferme.
+     * 
+     * @param in
+     *            Le flot à lire
+     * @return Les octets lus
+     * @throws IOException
+     *             En cas d'erreur d'entrée-sortie.
+     */
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            byte[] data = new byte[Math.max(in.available(), 1 << 16)];
+            int size = 0;
+            int read;
+            while ((read = in.read(data, size, data.length - size)) > 0) {
+                size += read;
+                if (size == data.length) {
+                    data = Arrays.copyOf(data, 2 * data.length);
+                }
+            }
+            return Arrays.copyOf(data, size);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Analyse d'un morceau du fichier stop_times.csv. Les trajets des services
+     * retenus sont stockés dans le tableau trips, cinq entiers par trajet :
+     * index des arrêts de départ et d'arrivée, heures de départ et d'arrivée,
+     * index du service.
+     */
+    private static final class StopTimesChunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] data;
+        private final int from, to;
+        private final Map<String, Integer> stopIds;
+        private final Map<String, Integer> serviceIds;
+        private int[] trips;
+        private int size;
+
+        public StopTimesChunk(byte[] data, int from, int to,
+                Map<String, Integer> stopIds, Map<String, Integer> serviceIds) {
+            this.data = data;
+            this.from = from;
+            this.to = to;
+            this.stopIds = stopIds;
+            this.serviceIds = serviceIds;
+            this.trips = new int[5 * 1024];
+            this.size = 0;
+        }
+
+        @Override
+        protected void compute() {
+            // Table des chaînes propre à la tâche : chaque nom n'est créé
+            // qu'une fois par morceau
+            CsvTokenizer reader = new CsvTokenizer(data, from, to,
+                    new StringPool());
+            try {
+                while (reader.nextLine()) {
+                    Integer service = serviceIds.get(reader.nextString());
+                    Integer fromStop = stopIds.get(reader.nextString());
+                    int departureTime = reader.nextInt();
+                    Integer toStop = stopIds.get(reader.nextString());
+                    int arrivalTime = reader.nextInt();
+
+                    if (service != null) {
+                        if (fromStop == null || toStop == null) {
+                            throw new IllegalArgumentException(
+                                    "Arrêt inconnu");
+                        }
+                        if (size == trips.length) {
+                            trips = Arrays.copyOf(trips, 2 * size);
+                        }
+                        trips[size++] = fromStop;
+                        trips[size++] = toStop;
+                        trips[size++] = departureTime;
+                        trips[size++] = arrivalTime;
+                        trips[size++] = service;
+                    }
+                }
+            } catch (IOException e) {
+                // Impossible : le morceau est lu en mémoire
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,439 @@
+/**
+ * Instantané d'un horaire et de son graphe : un cache binaire compact.
+ *
+ * Lire les fichiers CSV de l'horaire (TimeTableReader) demande de découper et
+ * d'analyser chaque ligne à chaque démarrage. Un instantané contient l'horaire
+ * (arrêts et services) et le graphe déjà construit, sous la forme de tableaux
+ * d'entiers et de réels écrits les uns à la suite des autres. Son chargement
+ * lit le fichier d'un bloc et copie ces tableaux dans ceux du graphe, sans
+ * analyse de texte ni tri des trajets. Les objets de l'horaire et du graphe
+ * (arrêts, services, arcs, grille des arrêts) sont ensuite reconstruits sur
+ * le tas, comme après une lecture des fichiers CSV.
+ *
+ * Format (version 1, entiers et réels gros-boutistes) :
+ * <ul>
+ * <li>en-tête : nombre magique, version, nombre d'arrêts, nombre d'arrêts du
+ * graphe, nombre de services, nombre de services du graphe, nombre de dates
+ * d'exception, nombre d'arcs, nombre de trajets, taille des chaînes ;</li>
+ * <li>latitudes et longitudes des arrêts (les arrêts du graphe en premier,
+ * dans l'ordre de leurs identifiants) ;</li>
+ * <li>services : dates de début et de fin (AAAAMMJJ), jours de circulation
+ * (un bit par jour), fin de leurs dates d'exception et dates d'exception
+ * (AAAAMMJJ * 2 + 1 si la date est incluse, AAAAMMJJ * 2 si elle est
+ * exclue) ;</li>
+ * <li>graphe : tableaux firstEdge et edgeDestination, temps de marche et fin
+ * des trajets de chaque arc, trajets encodés et index de leur service ;</li>
+ * <li>fin de chaque chaîne (noms des arrêts, des services, puis des services
+ * du graphe), suivie des chaînes elles-mêmes en UTF-8.</li>
+ * </ul>
+ *
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+import ch.epfl.isochrone.timetable.Date.DayOfWeek;
+
+public final class TimeTableSnapshot {
+    // "ISOT" en ASCII
+    private static final int MAGIC = 0x49534F54;
+    private static final int VERSION = 1;
+    private static final int HEADER_INTS = 10;
+
+    private final TimeTable timeTable;
+    private final Graph graph;
+
+    private TimeTableSnapshot(TimeTable timeTable, Graph graph) {
+        this.timeTable = timeTable;
+        this.graph = graph;
+    }
+
+    /**
+     * Retourne l'horaire de l'instantané.
+     *
+     * @return L'horaire, sans les trajets.
+     */
+    public TimeTable timeTable() {
+        return timeTable;
+    }
+
+    /**
+     * Retourne le graphe de l'instantané, dont les arrêts sont ceux de
+     * l'horaire.
+     *
+     * @return Le graphe des horaires.
+     */
+    public Graph graph() {
+        return graph;
+    }
+
+    /**
+     * Écrit l'instantané de l'horaire et du graphe donnés dans le fichier
+     * donné.
+     *
+     * @param timeTable
+     *            L'horaire à écrire
+     * @param graph
+     *            Le graphe à écrire, dont les arrêts doivent faire partie de
+     *            l'horaire
+     * @param file
+     *            Le fichier de destination, remplacé s'il existe
+     * @throws IOException
+     *             En cas d'erreur d'entrée-sortie
+     * @throws IllegalArgumentException
+     *             Si un arrêt du graphe ne fait pas partie de l'horaire
+     */
+    public static void write(TimeTable timeTable, Graph graph, File file)
+            throws IOException, IllegalArgumentException {
+        StopIndex stopIndex = graph.stopIndex();
+
+        // Les arrêts du graphe en premier, dans l'ordre de leurs
+        // identifiants, puis les autres arrêts de l'horaire
+        List<Stop> stops = new ArrayList<>(stopIndex.size());
+        for (int i = 0; i < stopIndex.size(); i++) {
+            if (!timeTable.stops().contains(stopIndex.stop(i))) {
+                throw new IllegalArgumentException(
+                        "Arrêt du graphe absent de l'horaire");
+            }
+            stops.add(stopIndex.stop(i));
+        }
+        for (Stop s : timeTable.stops()) {
+            if (!stopIndex.contains(s)) {
+                stops.add(s);
+            }
+        }
+        List<Service> services = new ArrayList<>(timeTable.services());
+        String[] graphServices = graph.serviceNames();
+
+        int exceptionCount = 0;
+        for (Service s : services) {
+            exceptionCount += s.excludedDates().size()
+                    + s.includedDates().size();
+        }
+        GraphEdge[] edges = graph.edges();
+        int tripCount = 0;
+        for (GraphEdge e : edges) {
+            tripCount += e.packedTrips().length;
+        }
+
+        List<byte[]> strings = new ArrayList<>();
+        for (Stop s : stops) {
+            strings.add(s.name().getBytes(StandardCharsets.UTF_8));
+        }
+        for (Service s : services) {
+            strings.add(s.name().getBytes(StandardCharsets.UTF_8));
+        }
+        for (String name : graphServices) {
+            strings.add(name.getBytes(StandardCharsets.UTF_8));
+        }
+        int stringBytes = 0;
+        for (byte[] b : strings) {
+            stringBytes += b.length;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(stops.size());
+            out.writeInt(stopIndex.size());
+            out.writeInt(services.size());
+            out.writeInt(graphServices.length);
+            out.writeInt(exceptionCount);
+            out.writeInt(edges.length);
+            out.writeInt(tripCount);
+            out.writeInt(stringBytes);
+
+            for (Stop s : stops) {
+                out.writeDouble(s.position().latitude());
+            }
+            for (Stop s : stops) {
+                out.writeDouble(s.position().longitude());
+            }
+
+            for (Service s : services) {
+                out.writeInt(encodeDate(s.startingDate()));
+            }
+            for (Service s : services) {
+                out.writeInt(encodeDate(s.endingDate()));
+            }
+            for (Service s : services) {
+                int days = 0;
+                for (DayOfWeek d : s.operatingDays()) {
+                    days |= 1 << d.ordinal();
+                }
+                out.writeInt(days);
+            }
+            int exceptionEnd = 0;
+            for (Service s : services) {
+                exceptionEnd += s.excludedDates().size()
+                        + s.includedDates().size();
+                out.writeInt(exceptionEnd);
+            }
+            for (Service s : services) {
+                for (Date d : s.excludedDates()) {
+                    out.writeInt(encodeDate(d) * 2);
+                }
+                for (Date d : s.includedDates()) {
+                    out.writeInt(encodeDate(d) * 2 + 1);
+                }
+            }
+
+            for (int f : graph.firstEdge()) {
+                out.writeInt(f);
+            }
+            for (int d : graph.edgeDestination()) {
+                out.writeInt(d);
+            }
+            for (GraphEdge e : edges) {
+                out.writeInt(e.walkingTime());
+            }
+            int tripEnd = 0;
+            for (GraphEdge e : edges) {
+                tripEnd += e.packedTrips().length;
+                out.writeInt(tripEnd);
+            }
+            for (GraphEdge e : edges) {
+                for (int t : e.packedTrips()) {
+                    out.writeInt(t);
+                }
+            }
+            for (GraphEdge e : edges) {
+                int[] tripServices = e.tripServices();
+                for (int i = 0; i < e.packedTrips().length; i++) {
+                    out.writeInt(tripServices == null ? GraphEdge.NO_SERVICE
+                            : tripServices[i]);
+                }
+            }
+
+            int stringEnd = 0;
+            for (byte[] b : strings) {
+                stringEnd += b.length;
+                out.writeInt(stringEnd);
+            }
+            for (byte[] b : strings) {
+                out.write(b);
+            }
+        }
+    }
+
+    /**
+     * Charge l'instantané contenu dans le fichier donné.
+     *
+     * Le fichier est lu en entier dans un tampon, puis chacune de ses
+     * sections est copiée dans un tableau et les arcs du graphe sont
+     * reconstruits : le graphe chargé occupe autant de mémoire qu'un graphe
+     * construit à partir des fichiers CSV.
+     *
+     * @param file
+     *            Le fichier de l'instantané, écrit par write
+     * @return L'instantané chargé
+     * @throws IOException
+     *             En cas d'erreur d'entrée-sortie
+     * @throws IllegalArgumentException
+     *             Si le fichier n'est pas un instantané valide, ou si sa
+     *             version n'est pas supportée
+     */
+    public static TimeTableSnapshot load(File file) throws IOException,
+            IllegalArgumentException {
+        ByteBuffer buffer;
+        try (FileInputStream in = new FileInputStream(file);
+                FileChannel channel = in.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Instantané trop grand");
+            }
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IllegalArgumentException("Instantané tronqué");
+                }
+            }
+            buffer.flip();
+        }
+
+        try {
+            return read(buffer);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Instantané tronqué");
+        }
+    }
+
+    private static TimeTableSnapshot read(ByteBuffer buffer)
+            throws IllegalArgumentException {
+        int[] header = ints(buffer, HEADER_INTS);
+        if (header[0] != MAGIC) {
+            throw new IllegalArgumentException("Pas un instantané d'horaire");
+        }
+        if (header[1] != VERSION) {
+            throw new IllegalArgumentException(
+                    "Version d'instantané non supportée: " + header[1]);
+        }
+        int stopCount = header[2];
+        int graphStopCount = header[3];
+        int serviceCount = header[4];
+        int graphServiceCount = header[5];
+        int exceptionCount = header[6];
+        int edgeCount = header[7];
+        int tripCount = header[8];
+        int stringBytes = header[9];
+
+        double[] latitudes = doubles(buffer, stopCount);
+        double[] longitudes = doubles(buffer, stopCount);
+
+        int[] startingDates = ints(buffer, serviceCount);
+        int[] endingDates = ints(buffer, serviceCount);
+        int[] operatingDays = ints(buffer, serviceCount);
+        int[] exceptionEnd = ints(buffer, serviceCount);
+        int[] exceptions = ints(buffer, exceptionCount);
+
+        int[] firstEdge = ints(buffer, graphStopCount + 1);
+        int[] edgeDestination = ints(buffer, edgeCount);
+        int[] walkingTimes = ints(buffer, edgeCount);
+        int[] tripEnd = ints(buffer, edgeCount);
+        int[] packedTrips = ints(buffer, tripCount);
+        int[] tripServices = ints(buffer, tripCount);
+
+        int[] stringEnd = ints(buffer, stopCount + serviceCount
+                + graphServiceCount);
+        byte[] stringData = new byte[stringBytes];
+        buffer.get(stringData);
+        String[] strings = new String[stringEnd.length];
+        for (int i = 0, start = 0; i < strings.length; i++) {
+            strings[i] = new String(stringData, start, stringEnd[i] - start,
+                    StandardCharsets.UTF_8);
+            start = stringEnd[i];
+        }
+
+        // Horaire
+        TimeTable.Builder ttb = new TimeTable.Builder();
+        Stop[] stops = new Stop[stopCount];
+        for (int i = 0; i < stopCount; i++) {
+            stops[i] = new Stop(strings[i], new PointWGS84(longitudes[i],
+                    latitudes[i]));
+            ttb.addStop(stops[i]);
+        }
+        DayOfWeek[] daysOfWeek = DayOfWeek.values();
+        for (int i = 0, e = 0; i < serviceCount; i++) {
+            Service.Builder sb = new Service.Builder(strings[stopCount + i],
+                    decodeDate(startingDates[i]), decodeDate(endingDates[i]));
+            for (DayOfWeek d : daysOfWeek) {
+                if ((operatingDays[i] & (1 << d.ordinal())) != 0) {
+                    sb.addOperatingDay(d);
+                }
+            }
+            for (; e < exceptionEnd[i]; e++) {
+                Date date = decodeDate(exceptions[e] >> 1);
+                if ((exceptions[e] & 1) != 0) {
+                    sb.addIncludedDate(date);
+                } else {
+                    sb.addExcludedDate(date);
+                }
+            }
+            ttb.addService(sb.build());
+        }
+
+        // Graphe
+        StopIndex stopIndex = new StopIndex(Arrays.copyOf(stops,
+                graphStopCount));
+        GraphEdge[] edges = new GraphEdge[edgeCount];
+        for (int e = 0, start = 0; e < edgeCount; e++) {
+            int end = tripEnd[e];
+            int[] edgeTrips = Arrays.copyOfRange(packedTrips, start, end);
+            int[] edgeServices = null;
+            for (int t = start; t < end; t++) {
+                if (tripServices[t] != GraphEdge.NO_SERVICE) {
+                    edgeServices = Arrays.copyOfRange(tripServices, start, end);
+                    break;
+                }
+            }
+            edges[e] = new GraphEdge(stops[edgeDestination[e]],
+                    walkingTimes[e], edgeTrips, edgeServices);
+            start = end;
+        }
+        String[] serviceNames = Arrays.copyOfRange(strings, stopCount
+                + serviceCount, strings.length);
+
+        return new TimeTableSnapshot(ttb.build(), new Graph(stopIndex,
+                firstEdge, edgeDestination, edges, serviceNames));
+    }
+
+    /**
+     * Lit les n entiers suivants du tampon, d'un seul bloc.
+     */
+    private static int[] ints(ByteBuffer buffer, int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Taille négative");
+        }
+        int[] values = new int[n];
+        IntBuffer view = buffer.asIntBuffer();
+        view.get(values);
+        buffer.position(buffer.position() + 4 * n);
+        return values;
+    }
+
+    /**
+     * Lit les n réels suivants du tampon, d'un seul bloc.
+     */
+    private static double[] doubles(ByteBuffer buffer, int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Taille négative");
+        }
+        double[] values = new double[n];
+        DoubleBuffer view = buffer.asDoubleBuffer();
+        view.get(values);
+        buffer.position(buffer.position() + 8 * n);
+        return values;
+    }
+
+    private static int encodeDate(Date date) {
+        return date.year() * 10000 + date.intMonth() * 100 + date.day();
+    }
+
+    private static Date decodeDate(int encoded) {
+        return new Date(encoded % 100, (encoded / 100) % 100, encoded / 10000);
+    }
+
+    /**
+     * Compile l'horaire lu dans les ressources données en un instantané.
+     *
+     * Arguments : préfixe des ressources de l'horaire (par exemple
+     * /time-table/), fichier de destination, temps de marche maximal en
+     * secondes et vitesse de marche en mètres par seconde.
+     *
+     * @param args
+     *            Les arguments de la ligne de commande
+     * @throws IOException
+     *             En cas d'erreur d'entrée-sortie
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: TimeTableSnapshot <ressources> "
+                    + "<fichier> <temps de marche> <vitesse de marche>");
+            System.exit(1);
+        }
+        TimeTableReader reader = new TimeTableReader(args[0]);
+        TimeTable timeTable = reader.readTimeTable();
+        Graph graph = reader.readGraphForServices(timeTable.stops(),
+                timeTable.services(), Integer.parseInt(args[2]),
+                Double.parseDouble(args[3]));
+        write(timeTable, graph, new File(args[1]));
+    }
+}
@@ -0,0 +1,388 @@
+/**
+ * Motifs de trajets précalculés d'un graphe, pour des recherches d'un arrêt à
+ * un autre restreintes aux arcs de ces motifs.
+ *
+ * Pour chaque arrêt de départ, les profils des trajets les plus rapides
+ * (Graph.fastestPathProfiles) sont calculés pour toute la journée. Le graphe
+ * étant FIFO, tout trajet le plus rapide, quelle que soit l'heure de départ,
+ * suit soit le chemin à pied, soit un chemin de l'arbre de la recherche faite
+ * à l'heure suivante des profils. Les motifs retiennent donc, pour chaque
+ * arrêt, l'ensemble de ses prédécesseurs dans ces arbres, sous la forme des
+ * arcs du graphe qui les relient.
+ *
+ * Ces arcs sont stockés triés par index dans le graphe, donc regroupés par
+ * arrêt de départ : une recherche est l'algorithme de Dijkstra restreint aux
+ * arcs des motifs de l'arrêt de départ, sans allocation ni tri, et s'arrête
+ * dès que la destination est atteinte. Le résultat est identique à celui de
+ * Graph.fastestPaths pour les services actifs des motifs. Son coût est
+ * proportionnel au nombre d'arcs des motifs parcourus avant la destination :
+ * sur un réseau synthétique de 1000 arrêts et 3874 arcs, dont environ 1900
+ * retenus par arrêt de départ, une recherche prend environ 85 microsecondes,
+ * autant que Graph.fastestPathTo. Elle ne gagne sur cette dernière que si
+ * les motifs écartent la plupart des arcs du graphe.
+ *
+ * Le précalcul (une recherche de profils par arrêt de départ) est réparti
+ * entre les tâches d'un exécuteur, chacune traitant un bloc d'arrêts de
+ * départ (OriginTasks) ; les motifs peuvent être écrits dans un fichier puis
+ * relus pour le même graphe.
+ *
+ * Classe immuable.
+ *
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public final class TransferPatterns {
+    /**
+     * Dernière heure de départ des recherches, la plus grande heure de départ
+     * d'un trajet encodé.
+     */
+    public static final int LAST_DEPARTURE_TIME = 107999;
+
+    // En-tête des fichiers écrits par writeTo ("ISTP")
+    private static final int MAGIC = 0x49535450;
+    private static final int VERSION = 2;
+
+    private final Graph graph;
+    private final BitSet activeServices;
+    /*
+     * Motifs de l'arrêt de départ o : arcEdges[o] contient les index dans le
+     * graphe de leurs arcs, par ordre croissant ; ceux qui partent de l'arrêt
+     * i occupent les positions firstArc[o][i] (inclus) à firstArc[o][i + 1]
+     * (exclu).
+     */
+    private final int[][] firstArc;
+    private final int[][] arcEdges;
+
+    private TransferPatterns(Graph graph, BitSet activeServices,
+            int[][] arcEdges) {
+        this.graph = graph;
+        this.activeServices = activeServices;
+        this.arcEdges = arcEdges;
+
+        // Les arcs du graphe étant rangés par arrêt de départ, la tranche
+        // d'un arrêt se trouve en fusionnant ses bornes avec les arcs triés
+        int[] firstEdge = graph.firstEdge();
+        this.firstArc = new int[arcEdges.length][];
+        for (int o = 0; o < arcEdges.length; o++) {
+            int[] arcs = arcEdges[o];
+            int[] first = new int[firstEdge.length];
+            int k = 0;
+            for (int s = 0; s < firstEdge.length; s++) {
+                while (k < arcs.length && arcs[k] < firstEdge[s])
+                    k++;
+                first[s] = k;
+            }
+            first[firstEdge.length - 1] = arcs.length;
+            firstArc[o] = first;
+        }
+    }
+
+    /**
+     * Calcule les motifs de tous les arrêts du graphe sur un exécuteur créé
+     * pour l'occasion, qui a autant de fils que de processeurs disponibles.
+     *
+     * @see #compute(Graph, BitSet, ExecutorService)
+     */
+    public static TransferPatterns compute(Graph graph, BitSet activeServices)
+            throws IllegalArgumentException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime
+                .getRuntime().availableProcessors());
+        try {
+            return compute(graph, activeServices, executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Calcule les motifs de tous les arrêts du graphe, en répartissant les
+     * recherches entre des tâches soumises à l'exécuteur donné, une par bloc
+     * d'arrêts de départ : le nombre de recherches simultanées est celui des
+     * fils de l'exécuteur.
+     *
+     * @param graph
+     *            Le graphe des horaires
+     * @param activeServices
+     *            L'ensemble des services actifs retourné par
+     *            Graph.activeServices, ou null pour emprunter tous les trajets
+     * @param executor
+     *            L'exécuteur des recherches, qui n'est pas arrêté
+     * @return Les motifs du graphe
+     * @throws IllegalArgumentException
+     *             Si un arc du graphe ne respecte pas la propriété FIFO
+     * @throws InterruptedException
+     *             Si l'attente des tâches est interrompue
+     */
+    public static TransferPatterns compute(final Graph graph,
+            final BitSet activeServices, ExecutorService executor)
+            throws IllegalArgumentException, InterruptedException {
+        if (!graph.isFifo())
+            throw new IllegalArgumentException("Graphe non FIFO");
+
+        final StopIndex stopIndex = graph.stopIndex();
+        final int n = stopIndex.size();
+        final int[][] arcEdges = new int[n][];
+        OriginTasks.forEachOrigin(n, executor, new OriginTasks.Body<Void>() {
+            @Override
+            public Void newState() {
+                return null;
+            }
+
+            @Override
+            public void run(int o, Void state) {
+                FastestPathProfiles profiles = graph.fastestPathProfiles(
+                        stopIndex.stop(o), 0, LAST_DEPARTURE_TIME,
+                        activeServices);
+                int[] arcs = new int[n];
+                int count = 0;
+                for (int s = 0; s < n; s++) {
+                    int[] predecessors = profiles.predecessors(s);
+                    if (count + predecessors.length > arcs.length) {
+                        arcs = Arrays.copyOf(arcs, 2 * arcs.length
+                                + predecessors.length);
+                    }
+                    for (int p : predecessors) {
+                        arcs[count++] = edge(graph, p, s);
+                    }
+                }
+                arcs = Arrays.copyOf(arcs, count);
+                Arrays.sort(arcs);
+                arcEdges[o] = arcs;
+            }
+        });
+
+        return new TransferPatterns(graph,
+                activeServices == null ? null
+                        : (BitSet) activeServices.clone(), arcEdges);
+    }
+
+    /**
+     * Retourne l'index de l'arc du graphe reliant les arrêts d'identifiants
+     * donnés.
+     */
+    private static int edge(Graph graph, int from, int to) {
+        int[] firstEdge = graph.firstEdge();
+        int[] edgeDestination = graph.edgeDestination();
+        for (int e = firstEdge[from]; e < firstEdge[from + 1]; e++) {
+            if (edgeDestination[e] == to)
+                return e;
+        }
+        throw new IllegalStateException("Arc inexistant");
+    }
+
+    /**
+     * Retourne le nombre total d'arcs des motifs de tous les arrêts.
+     *
+     * @return Le nombre d'arcs.
+     */
+    public long arcCount() {
+        long count = 0;
+        for (int[] arcs : arcEdges) {
+            count += arcs.length;
+        }
+        return count;
+    }
+
+    /**
+     * Retourne le trajet le plus rapide de l'arrêt de départ à l'arrêt de
+     * destination donnés, pour l'heure de départ donnée.
+     *
+     * @see #search(Stop, int, Stop, SearchWorkspace)
+     */
+    public FastestPathTree fastestPathTo(Stop startingStop, int departureTime,
+            Stop destination) throws IllegalArgumentException {
+        SearchWorkspace workspace = new SearchWorkspace(graph);
+        search(startingStop, departureTime, destination, workspace);
+        return workspace.toFastestPathTree();
+    }
+
+    /**
+     * Calcule l'heure d'arrivée au plus tôt à l'arrêt de destination donné,
+     * depuis l'arrêt et l'heure de départ donnés, en n'évaluant que les arcs
+     * des motifs de l'arrêt de départ. Les résultats sont lus dans l'espace
+     * de travail donné : seuls les arrêts atteints avant la destination y ont
+     * une heure d'arrivée, exacte.
+     *
+     * @param startingStop
+     *            Le Stop de départ
+     * @param departureTime
+     *            L'heure de départ en secondes après minuit
+     * @param destination
+     *            Le Stop de destination
+     * @param workspace
+     *            L'espace de travail de la recherche, construit pour le
+     *            graphe des motifs
+     * @throws IllegalArgumentException
+     *             Si l'un des arrêts donnés ne fait pas partie du graphe, si
+     *             l'heure de départ est inférieure à zéro ou supérieure à
+     *             LAST_DEPARTURE_TIME, ou si l'espace de travail n'a pas été
+     *             construit pour le graphe des motifs
+     */
+    public void search(Stop startingStop, int departureTime, Stop destination,
+            SearchWorkspace workspace) throws IllegalArgumentException {
+        StopIndex stopIndex = graph.stopIndex();
+        int start = stopIndex.id(startingStop);
+        int target = stopIndex.id(destination);
+        if (start < 0 || target < 0)
+            throw new IllegalArgumentException(
+                    "L'arrêt donné ne fait pas partie du graphe.");
+        if (departureTime < 0 || departureTime > LAST_DEPARTURE_TIME)
+            throw new IllegalArgumentException("Heure de départ invalide");
+        if (workspace.stopIndex() != stopIndex)
+            throw new IllegalArgumentException(
+                    "Espace de travail construit pour un autre graphe");
+
+        workspace.reset(start, departureTime);
+        if (target == start)
+            return;
+
+        int[] first = firstArc[start];
+        int[] arcs = arcEdges[start];
+        GraphEdge[] edges = graph.edges();
+        int[] edgeDestination = graph.edgeDestination();
+        IndexedHeap queue = workspace.queue();
+        queue.push(start, departureTime);
+        while (!queue.isEmpty()) {
+            int current = queue.removeMin();
+            if (current == target)
+                break;
+            int currentTime = workspace.arrivalTime(current);
+            for (int k = first[current]; k < first[current + 1]; k++) {
+                int e = arcs[k];
+                int h = edges[e].earliestArrivalTime(currentTime,
+                        activeServices);
+                int to = edgeDestination[e];
+                if (h < workspace.arrivalTime(to)) {
+                    workspace.setArrivalTime(to, h, current,
+                            edges[e].earliestLeg(currentTime, activeServices));
+                    queue.push(to, h);
+                }
+            }
+        }
+        // Les arrêts restés dans le tas n'ont pas leur heure définitive
+        while (!queue.isEmpty())
+            workspace.forget(queue.removeMin());
+    }
+
+    /**
+     * Écrit les motifs dans le fichier donné, sous forme binaire : un
+     * en-tête (identifiant du format, version, nombre d'arrêts et d'arcs du
+     * graphe), les services actifs, puis, pour chaque arrêt de départ, le
+     * nombre et les index triés des arcs de ses motifs.
+     *
+     * @param file
+     *            Le fichier à écrire
+     * @throws IOException
+     *             En cas d'erreur d'entrée-sortie
+     */
+    public void writeTo(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(arcEdges.length);
+            out.writeInt(graph.edges().length);
+            if (activeServices == null) {
+                out.writeInt(-1);
+            } else {
+                long[] words = activeServices.toLongArray();
+                out.writeInt(words.length);
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+            }
+            for (int[] arcs : arcEdges) {
+                out.writeInt(arcs.length);
+                for (int e : arcs) {
+                    out.writeInt(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lit les motifs écrits par writeTo pour le graphe donné.
+     *
+     * @param file
+     *            Le fichier des motifs
+     * @param graph
+     *            Le graphe pour lequel les motifs ont été calculés
+     * @return Les motifs lus
+     * @throws IOException
+     *             En cas d'erreur d'entrée-sortie
+     * @throws IllegalArgumentException
+     *             Si le fichier ne contient pas de motifs valides, ou s'ils
+     *             ont été calculés pour un graphe de taille différente
+     */
+    public static TransferPatterns readFrom(File file, Graph graph)
+            throws IOException, IllegalArgumentException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC)
+                throw new IllegalArgumentException("Pas un fichier de motifs");
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IllegalArgumentException(
+                        "Version de motifs non supportée: " + version);
+            int n = in.readInt();
+            int edgeCount = in.readInt();
+            if (n != graph.stopIndex().size()
+                    || edgeCount != graph.edges().length)
+                throw new IllegalArgumentException(
+                        "Motifs calculés pour un autre graphe");
+
+            BitSet activeServices = null;
+            int wordCount = in.readInt();
+            if (wordCount >= 0) {
+                long[] words = new long[wordCount];
+                for (int i = 0; i < wordCount; i++) {
+                    words[i] = in.readLong();
+                }
+                activeServices = BitSet.valueOf(words);
+            }
+
+            int[][] arcEdges = new int[n][];
+            for (int o = 0; o < n; o++) {
+                int arcCount = in.readInt();
+                if (arcCount < 0 || arcCount > edgeCount)
+                    throw new IllegalArgumentException("Motifs invalides");
+                arcEdges[o] = readInts(in, arcCount);
+                int previous = -1;
+                for (int e : arcEdges[o]) {
+                    if (e <= previous || e >= edgeCount)
+                        throw new IllegalArgumentException("Arc invalide");
+                    previous = e;
+                }
+            }
+            return new TransferPatterns(graph, activeServices, arcEdges);
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Fichier de motifs tronqué");
+        }
+    }
+
+    private static int[] readInts(DataInputStream in, int count)
+            throws IOException {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * Matrice des temps de parcours les plus courts depuis une liste d'arrêts de
+ * départ vers tous les arrêts d'un graphe, pour une heure de départ donnée.
+ *
+ * Les recherches (une par arrêt de départ) sont réparties entre les tâches
+ * d'un exécuteur, chacune traitant un bloc d'arrêts de départ (OriginTasks).
+ * Le graphe étant immuable, les tâches ne partagent rien ; chacune
+ * réutilise son propre espace de travail (SearchWorkspace) d'une recherche
+ * à l'autre.
+ *
+ * Classe immuable.
+ *
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public final class TravelTimeMatrix {
+    // En-tête des fichiers écrits par writeTo ("ISOM")
+    private static final int MAGIC = 0x49534F4D;
+    private static final int VERSION = 2;
+
+    private final List<Stop> origins;
+    private final List<Stop> stops;
+    private final int departureTime;
+    private final int[][] travelTimes;
+
+    private TravelTimeMatrix(List<Stop> origins, List<Stop> stops,
+            int departureTime, int[][] travelTimes) {
+        this.origins = origins;
+        this.stops = stops;
+        this.departureTime = departureTime;
+        this.travelTimes = travelTimes;
+    }
+
+    /**
+     * Calcule la matrice des temps de parcours sur un exécuteur créé pour
+     * l'occasion, qui a autant de fils que de processeurs disponibles.
+     *
+     * @see #compute(Graph, List, int, BitSet, ExecutorService)
+     */
+    public static TravelTimeMatrix compute(Graph graph, List<Stop> origins,
+            int departureTime, BitSet activeServices)
+            throws IllegalArgumentException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime
+                .getRuntime().availableProcessors());
+        try {
+            return compute(graph, origins, departureTime, activeServices,
+                    executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Calcule la matrice des temps de parcours depuis les arrêts de départ
+     * donnés, en répartissant les recherches entre des tâches soumises à
+     * l'exécuteur donné, une par bloc d'arrêts de départ : le nombre de
+     * recherches simultanées est celui des fils de l'exécuteur.
+     *
+     * @param graph
+     *            Le graphe des horaires
+     * @param origins
+     *            Les arrêts de départ, dans l'ordre des lignes de la matrice
+     * @param departureTime
+     *            L'heure de départ en secondes après minuit
+     * @param activeServices
+     *            L'ensemble des services actifs retourné par
+     *            Graph.activeServices, ou null pour emprunter tous les trajets
+     * @param executor
+     *            L'exécuteur des recherches, qui n'est pas arrêté
+     * @return La matrice des temps de parcours
+     * @throws IllegalArgumentException
+     *             Si l'un des arrêts de départ ne fait pas partie du graphe
+     *             ou si l'heure de départ est inférieure à zéro
+     * @throws InterruptedException
+     *             Si l'attente des tâches est interrompue
+     */
+    public static TravelTimeMatrix compute(final Graph graph,
+            List<Stop> origins, final int departureTime,
+            final BitSet activeServices, ExecutorService executor)
+            throws IllegalArgumentException, InterruptedException {
+        final StopIndex stopIndex = graph.stopIndex();
+        final int[] starts = new int[origins.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = stopIndex.id(origins.get(i));
+            if (starts[i] < 0)
+                throw new IllegalArgumentException(
+                        "L'arrêt donné ne fait pas partie du graphe.");
+        }
+        if (departureTime < 0)
+            throw new IllegalArgumentException("Heure de départ inférieure à 0");
+
+        final int[][] travelTimes = new int[starts.length][];
+        OriginTasks.forEachOrigin(starts.length, executor,
+                new OriginTasks.Body<SearchWorkspace>() {
+                    @Override
+                    public SearchWorkspace newState() {
+                        return new SearchWorkspace(graph);
+                    }
+
+                    @Override
+                    public void run(int i, SearchWorkspace workspace) {
+                        int n = stopIndex.size();
+                        graph.search(starts[i], departureTime,
+                                SecondsPastMidnight.INFINITE, activeServices,
+                                workspace);
+                        int[] row = new int[n];
+                        for (int s = 0; s < n; s++) {
+                            int arrivalTime = workspace.arrivalTime(s);
+                            row[s] = arrivalTime == SecondsPastMidnight.INFINITE ? arrivalTime
+                                    : arrivalTime - departureTime;
+                        }
+                        travelTimes[i] = row;
+                    }
+                });
+
+        List<Stop> stops = new ArrayList<>(stopIndex.size());
+        for (int s = 0; s < stopIndex.size(); s++) {
+            stops.add(stopIndex.stop(s));
+        }
+        return new TravelTimeMatrix(Collections.unmodifiableList(new ArrayList<>(
+                origins)), Collections.unmodifiableList(stops), departureTime,
+                travelTimes);
+    }
+
+    /**
+     * Retourne les arrêts de départ, dans l'ordre des lignes de la matrice.
+     *
+     * @return La liste des arrêts de départ.
+     */
+    public List<Stop> origins() {
+        return origins;
+    }
+
+    /**
+     * Retourne les arrêts d'arrivée, dans l'ordre des colonnes de la matrice.
+     *
+     * @return La liste de tous les arrêts du graphe.
+     */
+    public List<Stop> stops() {
+        return stops;
+    }
+
+    /**
+     * Retourne l'heure de départ des recherches.
+     *
+     * @return L'heure de départ en secondes après minuit.
+     */
+    public int departureTime() {
+        return departureTime;
+    }
+
+    /**
+     * Retourne le temps de parcours le plus court entre le départ et l'arrêt
+     * d'index donnés.
+     *
+     * @param origin
+     *            L'index de l'arrêt de départ dans origins
+     * @param stop
+     *            L'index de l'arrêt d'arrivée dans stops
+     * @return Le temps de parcours en secondes, ou
+     *         SecondsPastMidnight.INFINITE si l'arrêt n'est pas atteignable
+     * @throws IndexOutOfBoundsException
+     *             Si l'un des index est invalide
+     */
+    public int travelTime(int origin, int stop)
+            throws IndexOutOfBoundsException {
+        return travelTimes[origin][stop];
+    }
+
+    /**
+     * Retourne la matrice des temps de parcours.
+     *
+     * @return Une copie de la matrice : une ligne par arrêt de départ, une
+     *         colonne par arrêt d'arrivée.
+     */
+    public int[][] toArray() {
+        int[][] copy = new int[travelTimes.length][];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = Arrays.copyOf(travelTimes[i], travelTimes[i].length);
+        }
+        return copy;
+    }
+
+    /**
+     * Écrit la matrice dans le fichier donné, sous forme binaire : un
+     * en-tête (identifiant du format, version, heure de départ, nombre de
+     * lignes et de colonnes), les arrêts de départ puis d'arrivée, chacun
+     * sous la forme de son nom suivi de sa latitude et de sa longitude (en
+     * radians), puis les temps de parcours ligne par ligne. Deux arrêts de
+     * même nom sont ainsi distingués par leur position.
+     *
+     * @param file
+     *            Le fichier à écrire
+     * @throws IOException
+     *             En cas d'erreur d'entrée-sortie
+     */
+    public void writeTo(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(departureTime);
+            out.writeInt(origins.size());
+            out.writeInt(stops.size());
+            for (Stop s : origins) {
+                writeStop(out, s);
+            }
+            for (Stop s : stops) {
+                writeStop(out, s);
+            }
+            for (int[] row : travelTimes) {
+                for (int t : row) {
+                    out.writeInt(t);
+                }
+            }
+        }
+    }
+
+    private static void writeStop(DataOutputStream out, Stop stop)
+            throws IOException {
+        out.writeUTF(stop.name());
+        out.writeDouble(stop.position().latitude());
+        out.writeDouble(stop.position().longitude());
+    }
+}
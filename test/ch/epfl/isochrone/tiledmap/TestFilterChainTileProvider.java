@@ -0,0 +1,172 @@
+/**
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+package ch.epfl.isochrone.tiledmap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestFilterChainTileProvider {
+
+    /**
+     * Fournisseur de tuiles aux pixels aléatoires, qui compte les tuiles
+     * fournies.
+     */
+    private static final class RandomTileProvider implements TileProvider {
+        private final int type;
+        int tuiles = 0;
+
+        RandomTileProvider() {
+            this(BufferedImage.TYPE_INT_ARGB);
+        }
+
+        RandomTileProvider(int type) {
+            this.type = type;
+        }
+
+        @Override
+        public Tile tileAt(int zoom, int x, int y) {
+            tuiles++;
+            Random rng = new Random(zoom + 31 * x + 961 * y);
+            BufferedImage image = new BufferedImage(256, 256, type);
+            for (int i = 0; i < 256; i++) {
+                for (int j = 0; j < 256; j++) {
+                    image.setRGB(i, j, rng.nextInt());
+                }
+            }
+            return new Tile(zoom, x, y, image);
+        }
+    }
+
+    /**
+     * Transformation qui compte les pixels transformés.
+     */
+    private static final class CountingFilter implements ArgbFilter {
+        int pixels = 0;
+
+        @Override
+        public int transformARGB(int argb) {
+            pixels++;
+            return argb ^ 0x00010203;
+        }
+    }
+
+    @Test
+    public void testChainAppliesFiltersInOrder() {
+        RandomTileProvider source = new RandomTileProvider();
+        BufferedImage original = source.tileAt(12, 3, 4).image();
+        ArgbFilter[] filtres = { ArgbFilters.teinte(Color.RED, 0.25),
+                ArgbFilters.niveauxDeGris(), ArgbFilters.opacite(0.5) };
+        BufferedImage image = new FilterChainTileProvider(source, filtres)
+                .tileAt(12, 3, 4).image();
+        for (int i = 0; i < 256; i++) {
+            for (int j = 0; j < 256; j++) {
+                int expected = original.getRGB(i, j);
+                for (ArgbFilter f : filtres) {
+                    expected = f.transformARGB(expected);
+                }
+                assertEquals(expected, image.getRGB(i, j));
+            }
+        }
+    }
+
+    @Test
+    public void testStackedProvidersUseOnePass() {
+        RandomTileProvider source = new RandomTileProvider();
+        BufferedImage original = source.tileAt(12, 3, 4).image();
+        CountingFilter f1 = new CountingFilter();
+        CountingFilter f2 = new CountingFilter();
+        TileProvider pile = new TransparentTileProvider(0.3,
+                new FilterChainTileProvider(new FilterChainTileProvider(
+                        source, f1), Arrays.<ArgbFilter> asList(f2,
+                        ArgbFilters.niveauxDeGris())));
+        BufferedImage image = pile.tileAt(12, 3, 4).image();
+
+        // Une seule tuile source, chaque pixel transformé une fois par
+        // chaque transformation
+        assertEquals(2, source.tuiles);
+        assertEquals(256 * 256, f1.pixels);
+        assertEquals(256 * 256, f2.pixels);
+        ArgbFilter gris = ArgbFilters.niveauxDeGris();
+        ArgbFilter opacite = ArgbFilters.opacite(0.3);
+        for (int i = 0; i < 256; i++) {
+            for (int j = 0; j < 256; j++) {
+                int expected = opacite.transformARGB(gris.transformARGB(f2
+                        .transformARGB(f1.transformARGB(original
+                                .getRGB(i, j)))));
+                assertEquals(expected, image.getRGB(i, j));
+            }
+        }
+    }
+
+    @Test
+    public void testCachedSourceTileIsNotModified() {
+        int[] types = { BufferedImage.TYPE_INT_ARGB,
+                BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_4BYTE_ABGR };
+        for (int type : types) {
+            RandomTileProvider source = new RandomTileProvider(type);
+            BufferedImage original = source.tileAt(12, 3, 4).image();
+            TileProvider cache = new CachedTileProvider(source);
+            TileProvider pile = new FilterChainTileProvider(cache,
+                    ArgbFilters.teinte(Color.RED, 0.5));
+
+            // La seconde tuile est filtrée à partir de la même tuile du
+            // cache : elle ne doit pas être teintée deux fois
+            BufferedImage first = pile.tileAt(12, 3, 4).image();
+            BufferedImage second = pile.tileAt(12, 3, 4).image();
+            assertEquals(2, source.tuiles);
+            BufferedImage cached = cache.tileAt(12, 3, 4).image();
+            for (int i = 0; i < 256; i++) {
+                for (int j = 0; j < 256; j++) {
+                    assertEquals(first.getRGB(i, j), second.getRGB(i, j));
+                    assertEquals(original.getRGB(i, j), cached.getRGB(i, j));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTeinteAndNiveauxDeGris() {
+        ArgbFilter rouge = ArgbFilters.teinte(new Color(255, 0, 0), 0.5);
+        assertEquals(0x80C02020, rouge.transformARGB(0x80804040));
+        assertEquals(0x12345678, ArgbFilters.teinte(Color.BLUE, 0)
+                .transformARGB(0x12345678));
+        assertEquals(0x120000FF, ArgbFilters.teinte(Color.BLUE, 1)
+                .transformARGB(0x12345678));
+
+        ArgbFilter gris = ArgbFilters.niveauxDeGris();
+        assertEquals(0xFFFFFFFF, gris.transformARGB(0xFFFFFFFF));
+        assertEquals(0x7F000000, gris.transformARGB(0x7F000000));
+        assertEquals(0xFF4C4C4C, gris.transformARGB(0xFFFF0000));
+    }
+
+    @Test
+    public void testMasqueTranches() {
+        ColorTable ct = new ColorTable(600, Arrays.asList(Color.RED,
+                Color.GREEN, Color.BLUE, Color.RED));
+        ArgbFilter masque = ArgbFilters.masqueTranches(ct, 1, 2);
+        assertEquals(0, masque.transformARGB(0xFFFF0000));
+        assertEquals(0, masque.transformARGB(0x80FF0000));
+        assertEquals(0xFF00FF00, masque.transformARGB(0xFF00FF00));
+        assertEquals(0x800000FF, masque.transformARGB(0x800000FF));
+        assertEquals(0x00FF0000, masque.transformARGB(0x00FF0000));
+        assertEquals(0xFF123456, masque.transformARGB(0xFF123456));
+
+        // Une couleur aussi utilisée par une tranche conservée est conservée
+        ArgbFilter premiere = ArgbFilters.masqueTranches(ct, 0, 0);
+        assertEquals(0xFFFF0000, premiere.transformARGB(0xFFFF0000));
+        assertEquals(0, premiere.transformARGB(0xFF0000FF));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidProportion() {
+        ArgbFilters.teinte(Color.RED, -0.1);
+    }
+}
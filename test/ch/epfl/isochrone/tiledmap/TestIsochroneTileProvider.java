@@ -0,0 +1,142 @@
+/**
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+package ch.epfl.isochrone.tiledmap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.isochrone.geo.PointOSM;
+import ch.epfl.isochrone.geo.PointWGS84;
+import ch.epfl.isochrone.timetable.FastestPathTree;
+import ch.epfl.isochrone.timetable.Stop;
+
+public class TestIsochroneTileProvider {
+
+    @Test
+    public void testColorsAroundStartingStop() {
+        // Arrêt au centre de la tuile (2171, 1449) au niveau de zoom 12
+        int zoom = 12;
+        PointWGS84 position = new PointOSM(zoom, 2171.5 * 256, 1449.5 * 256)
+                .toWGS84();
+        Stop stop = new Stop("Arret", position);
+        Map<Stop, Integer> arrivalTime = new HashMap<Stop, Integer>();
+        arrivalTime.put(stop, 1000);
+        FastestPathTree fpt = new FastestPathTree(stop, arrivalTime,
+                Collections.<Stop, Stop> emptyMap());
+
+        // Tranches de 10 minutes, la dernière n'est jamais dessinée
+        Color c0 = new Color(255, 0, 0);
+        Color c1 = new Color(0, 255, 0);
+        ColorTable ct = new ColorTable(600, Arrays.asList(c0, c1, Color.BLUE));
+        BufferedImage image = new IsochroneTileProvider(fpt, ct, 1.25)
+                .tileAt(zoom, 2171, 1449).image();
+
+        // Taille d'un pixel en mètres (environ 26 m au niveau 12)
+        double pixel = position.distanceTo(new PointOSM(zoom,
+                2171.5 * 256 + 1, 1449.5 * 256).toWGS84());
+        int band = (int) (600 * 1.25 / pixel);
+
+        assertEquals(c0.getRGB(), image.getRGB(128, 128));
+        assertEquals(c0.getRGB(), image.getRGB(128 + band - 2, 128));
+        assertEquals(c1.getRGB(), image.getRGB(128 + band + 2, 128));
+        assertEquals(c1.getRGB(), image.getRGB(128, 128 - band - 2));
+        assertEquals(0, image.getRGB(128 + 2 * band + 2, 128));
+        assertEquals(0, image.getRGB(0, 0));
+    }
+
+    @Test
+    public void testSameColorsAsBruteForce() {
+        // Arrêts répartis sur environ 1.5 km, dont certains atteints après
+        // la dernière tranche dessinée
+        Random rng = new Random(236517);
+        Stop start = new Stop("Depart", new PointWGS84(Math.toRadians(6.63),
+                Math.toRadians(46.52)));
+        List<Stop> stops = new ArrayList<Stop>();
+        Map<Stop, Integer> arrivalTime = new HashMap<Stop, Integer>();
+        Map<Stop, Stop> predecessor = new HashMap<Stop, Stop>();
+        stops.add(start);
+        arrivalTime.put(start, 1000);
+        for (int i = 0; i < 40; i++) {
+            Stop s = new Stop("Arret" + i, new PointWGS84(
+                    Math.toRadians(6.62 + rng.nextDouble() * 0.02),
+                    Math.toRadians(46.51 + rng.nextDouble() * 0.015)));
+            stops.add(s);
+            arrivalTime.put(s, 1000 + rng.nextInt(1500));
+            predecessor.put(s, start);
+        }
+        FastestPathTree fpt = new FastestPathTree(start, arrivalTime,
+                predecessor);
+        ColorTable ct = new ColorTable(300, Arrays.asList(Color.RED,
+                Color.ORANGE, Color.YELLOW, Color.GREEN, Color.BLUE));
+        IsochroneTileProvider provider = new IsochroneTileProvider(fpt, ct,
+                1.25);
+
+        for (int zoom = 12; zoom <= 16; zoom += 2) {
+            PointOSM p = start.position().toOSM(zoom);
+            int tileX = p.roundedX() / 256, tileY = p.roundedY() / 256;
+            for (int x = tileX - 1; x <= tileX + 1; x++) {
+                for (int y = tileY - 1; y <= tileY + 1; y++) {
+                    BufferedImage image = provider.tileAt(zoom, x, y).image();
+                    int[] expected = bruteForce(fpt, stops, ct, 1.25, zoom,
+                            x, y);
+                    for (int py = 0; py < 256; py++) {
+                        for (int px = 0; px < 256; px++) {
+                            assertEquals(expected[py * 256 + px],
+                                    image.getRGB(px, py));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Couleurs d'une tuile calculées pixel par pixel, en prenant le minimum
+     * des durées de trajet depuis tous les arrêts.
+     */
+    private static int[] bruteForce(FastestPathTree fpt, List<Stop> stops,
+            ColorTable ct, double walkingSpeed, int zoom, int x, int y) {
+        PointOSM corner = new PointOSM(zoom, x * 256, y * 256);
+        double largeurX = corner.toWGS84().distanceTo(
+                new PointOSM(zoom, x * 256 + 1, y * 256).toWGS84());
+        double largeurY = corner.toWGS84().distanceTo(
+                new PointOSM(zoom, x * 256, y * 256 + 1).toWGS84());
+        int dureeMax = (ct.nombreDeTranches() - 1) * ct.getDuree();
+
+        int[] colors = new int[256 * 256];
+        for (int py = 0; py < 256; py++) {
+            for (int px = 0; px < 256; px++) {
+                double best = dureeMax;
+                for (Stop s : stops) {
+                    int dureeArret = fpt.arrivalTime(s) - fpt.startingTime();
+                    if (dureeArret >= dureeMax) {
+                        continue;
+                    }
+                    PointOSM sp = s.position().toOSM(zoom);
+                    double dx = (px + 0.5 - (sp.x() - corner.x())) * largeurX;
+                    double dy = (py + 0.5 - (sp.y() - corner.y())) * largeurY;
+                    best = Math.min(best, dureeArret
+                            + Math.sqrt(dx * dx + dy * dy) / walkingSpeed);
+                }
+                if (best < dureeMax) {
+                    colors[py * 256 + px] = ct.couleurPourTranche(
+                            (int) (best / ct.getDuree())).getRGB();
+                }
+            }
+        }
+        return colors;
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+package ch.epfl.isochrone.tiledmap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.isochrone.geo.PointOSM;
+import ch.epfl.isochrone.geo.PointWGS84;
+import ch.epfl.isochrone.timetable.Stop;
+
+public class TestStopProjection {
+
+    @Test
+    public void testSameCoordinatesAsToOSM() {
+        Random rng = new Random(239612);
+        List<Stop> stops = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            stops.add(new Stop("Arret" + i, new PointWGS84(
+                    (rng.nextDouble() * 2 - 1) * Math.PI,
+                    (rng.nextDouble() * 2 - 1) * 1.4)));
+        }
+        StopProjection projection = new StopProjection(stops);
+        for (Stop s : stops) {
+            int id = projection.id(s);
+            for (int zoom = 0; zoom <= 19; zoom++) {
+                PointOSM expected = s.position().toOSM(zoom);
+                assertEquals(expected.x(), projection.x(id, zoom), 0);
+                assertEquals(expected.y(), projection.y(id, zoom), 0);
+                PointOSM actual = projection.toOSM(s, zoom);
+                assertEquals(zoom, actual.zoom());
+                assertEquals(expected.x(), actual.x(), 0);
+                assertEquals(expected.y(), actual.y(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownStop() {
+        Stop a = new Stop("A", new PointWGS84(0.1166, 0.8118));
+        Stop b = new Stop("B", new PointWGS84(0.1200, 0.8118));
+        assertEquals(-1, new StopProjection(Collections.singleton(a)).id(b));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testToOSMUnknownStop() {
+        Stop a = new Stop("A", new PointWGS84(0.1166, 0.8118));
+        Stop b = new Stop("B", new PointWGS84(0.1200, 0.8118));
+        new StopProjection(Collections.singleton(a)).toOSM(b, 12);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeZoom() {
+        Stop a = new Stop("A", new PointWGS84(0.1166, 0.8118));
+        new StopProjection(Collections.singleton(a)).x(0, -1);
+    }
+}
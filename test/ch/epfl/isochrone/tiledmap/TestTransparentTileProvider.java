@@ -0,0 +1,65 @@
+/**
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+package ch.epfl.isochrone.tiledmap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+public class TestTransparentTileProvider {
+
+    private static TileProvider constantProvider(final int type,
+            final int argb) {
+        return new TileProvider() {
+            @Override
+            public Tile tileAt(int zoom, int x, int y) {
+                BufferedImage image = new BufferedImage(256, 256, type);
+                for (int i = 0; i < 256; i++) {
+                    for (int j = 0; j < 256; j++) {
+                        image.setRGB(i, j, argb);
+                    }
+                }
+                return new Tile(zoom, x, y, image);
+            }
+        };
+    }
+
+    @Test
+    public void testTransformARGB() {
+        TransparentTileProvider ttp = new TransparentTileProvider(0.5, null);
+        assertEquals(0x80123456, ttp.transformARGB(0xFF123456));
+        assertEquals(0x80000000, ttp.transformARGB(0x00000000));
+        assertEquals(0x80FFFFFF, ttp.transformARGB(0x01FFFFFF));
+        assertEquals(0x00ABCDEF, new TransparentTileProvider(0, null)
+                .transformARGB(0x7FABCDEF));
+        assertEquals(0xFFABCDEF, new TransparentTileProvider(1, null)
+                .transformARGB(0x00ABCDEF));
+    }
+
+    @Test
+    public void testSameResultForAllImageTypes() {
+        int[] types = { BufferedImage.TYPE_INT_ARGB,
+                BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_4BYTE_ABGR };
+        // La tuile transformée est une nouvelle image ARGB : même une source
+        // sans canal alpha devient transparente
+        for (int type : types) {
+            BufferedImage image = new TransparentTileProvider(0.3,
+                    constantProvider(type, 0xFF204060)).tileAt(12, 5, 7)
+                    .image();
+            for (int i = 0; i < 256; i += 15) {
+                for (int j = 0; j < 256; j += 15) {
+                    assertEquals(0x4D204060, image.getRGB(i, j));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidOpacity() {
+        new TransparentTileProvider(1.5, null);
+    }
+}
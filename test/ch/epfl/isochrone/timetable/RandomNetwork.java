@@ -0,0 +1,196 @@
+/**
+ * Réseau de transport aléatoire commun aux tests des recherches.
+ *
+ * Les arrêts sont tirés au hasard dans un rectangle dont le coin sud-ouest
+ * est en (6.6°, 46.5°), puis reliés par des courses aléatoires, et enfin par
+ * les trajets à pied d'au plus 300 secondes à 1.25 m/s. Si le réseau a des
+ * services, chaque course appartient à l'un des deux, tiré au hasard.
+ *
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+import ch.epfl.isochrone.timetable.Date.DayOfWeek;
+import ch.epfl.isochrone.timetable.Date.Month;
+
+final class RandomNetwork {
+    private final Random rng;
+    private final double width;
+    private final double height;
+    private final List<Stop> stops = new ArrayList<>();
+    private final List<Service> services = new ArrayList<>();
+    private final Graph.Builder builder;
+
+    /**
+     * Tire les arrêts du réseau.
+     *
+     * @param rng
+     *            Le générateur utilisé pour tout le réseau
+     * @param stopCount
+     *            Le nombre d'arrêts
+     * @param width
+     *            La largeur du rectangle des arrêts, en degrés de longitude
+     * @param height
+     *            La hauteur du rectangle des arrêts, en degrés de latitude
+     */
+    RandomNetwork(Random rng, int stopCount, double width, double height) {
+        this.rng = rng;
+        this.width = width;
+        this.height = height;
+        for (int i = 0; i < stopCount; i++) {
+            stops.add(new Stop("Arret" + i, randomPoint()));
+        }
+        builder = new Graph.Builder(new HashSet<>(stops));
+    }
+
+    /**
+     * Les arrêts, dans leur ordre de création.
+     */
+    List<Stop> stops() {
+        return Collections.unmodifiableList(stops);
+    }
+
+    /**
+     * Les deux services du réseau (vide si withServices n'a pas été appelé).
+     */
+    List<Service> services() {
+        return Collections.unmodifiableList(services);
+    }
+
+    /**
+     * Un arrêt tiré au hasard.
+     */
+    Stop randomStop() {
+        return stops.get(rng.nextInt(stops.size()));
+    }
+
+    /**
+     * Un point tiré au hasard dans le rectangle des arrêts.
+     */
+    PointWGS84 randomPoint() {
+        return new PointWGS84(Math.toRadians(6.6 + rng.nextDouble() * width),
+                Math.toRadians(46.5 + rng.nextDouble() * height));
+    }
+
+    /**
+     * Répartit les courses ajoutées ensuite entre un service de semaine et
+     * un service du dimanche.
+     */
+    RandomNetwork withServices() {
+        Date d = new Date(1, Month.OCTOBER, 2013);
+        Set<Date> noDates = Collections.emptySet();
+        services.add(new Service("semaine", d, d, Collections
+                .singleton(DayOfWeek.TUESDAY), noDates, noDates));
+        services.add(new Service("dimanche", d, d, Collections
+                .singleton(DayOfWeek.SUNDAY), noDates, noDates));
+        return this;
+    }
+
+    /**
+     * Ajoute des courses entre des paires d'arrêts tirées au hasard, partant
+     * avant lastDeparture et durant de minDuration à minDuration + 599
+     * secondes.
+     */
+    RandomNetwork addRandomTrips(int count, int lastDeparture,
+            int minDuration) {
+        for (int i = 0; i < count; i++) {
+            Stop from = randomStop();
+            Stop to = randomStop();
+            if (from != to) {
+                int departure = rng.nextInt(lastDeparture);
+                addTrip(from, to, departure, departure + minDuration
+                        + rng.nextInt(600));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Ajoute, depuis chaque arrêt, linesPerStop navettes vers des arrêts
+     * proches dans la liste, tous différents, de departures courses chacune.
+     * Si fifo est vrai, toutes les courses d'une navette ont la même durée,
+     * sinon une course partie plus tard peut arriver plus tôt.
+     */
+    RandomNetwork addShuttles(int linesPerStop, int departures, boolean fifo) {
+        for (int i = 0; i < stops.size(); i++) {
+            for (int j = 0; j < linesPerStop; j++) {
+                Stop from = stops.get(i);
+                Stop to = stops.get((i + 1 + 3 * j + rng.nextInt(3))
+                        % stops.size());
+                int duration = 60 + rng.nextInt(300);
+                int departure = rng.nextInt(1800);
+                for (int k = 0; k < departures; k++) {
+                    departure += 60 + rng.nextInt(400);
+                    addTrip(from, to, departure, departure
+                            + (fifo ? duration : rng.nextInt(900)));
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Ajoute des lignes desservant chacune une suite de 2 à 9 arrêts tirés au
+     * hasard, de departures courses chacune. Un dixième des tronçons ont une
+     * durée nulle.
+     */
+    RandomNetwork addLines(int count, int departures) {
+        for (int l = 0; l < count; l++) {
+            int[] line = new int[2 + rng.nextInt(8)];
+            for (int p = 0; p < line.length; p++) {
+                line[p] = rng.nextInt(stops.size());
+            }
+            int departure = rng.nextInt(1800);
+            for (int k = 0; k < departures; k++) {
+                departure += rng.nextInt(600);
+                Service service = randomService();
+                int time = departure;
+                for (int p = 0; p + 1 < line.length; p++) {
+                    int duration = rng.nextInt(10) == 0 ? 0 : 30 + rng
+                            .nextInt(300);
+                    if (line[p] != line[p + 1]) {
+                        addTrip(stops.get(line[p]), stops.get(line[p + 1]),
+                                time, time + duration, service);
+                    }
+                    time += duration;
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Ajoute les trajets à pied et construit le graphe.
+     */
+    Graph build() {
+        return builder.addAllWalkEdges(300, 1.25).build();
+    }
+
+    private Service randomService() {
+        return services.isEmpty() ? null : services.get(rng.nextInt(services
+                .size()));
+    }
+
+    private void addTrip(Stop from, Stop to, int departure, int arrival) {
+        addTrip(from, to, departure, arrival, randomService());
+    }
+
+    private void addTrip(Stop from, Stop to, int departure, int arrival,
+            Service service) {
+        if (service == null) {
+            builder.addTripEdge(from, to, departure, arrival);
+        } else {
+            builder.addTripEdge(from, to, departure, arrival, service);
+        }
+    }
+}
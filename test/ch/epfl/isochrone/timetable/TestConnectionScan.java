@@ -0,0 +1,124 @@
+/**
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+import ch.epfl.isochrone.timetable.Date.DayOfWeek;
+import ch.epfl.isochrone.timetable.Date.Month;
+
+public class TestConnectionScan {
+
+    @Test
+    public void testSameArrivalTimesAsDijkstra() {
+        RandomNetwork net = new RandomNetwork(new Random(2014), 40, 0.03,
+                0.015);
+        Graph g = net.addShuttles(2, 10, true).build();
+        List<Stop> stops = net.stops();
+        ConnectionScan cs = new ConnectionScan(g, null);
+        for (Stop start : stops) {
+            for (int t = 0; t < 4000; t += 450) {
+                FastestPathTree expected = g.fastestPaths(start, t);
+                FastestPathTree actual = cs.fastestPaths(start, t);
+                assertEquals(expected.stops(), actual.stops());
+                for (Stop s : stops) {
+                    assertEquals(expected.arrivalTime(s),
+                            actual.arrivalTime(s));
+                }
+                // Les chemins de l'arbre sont cohérents avec ses heures
+                for (Stop s : actual.stops()) {
+                    List<Stop> path = actual.pathTo(s);
+                    assertEquals(start, path.get(0));
+                    assertEquals(s, path.get(path.size() - 1));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNeverLaterThanDijkstraNotFifo() {
+        RandomNetwork net = new RandomNetwork(new Random(236517), 40, 0.03,
+                0.015);
+        Graph g = net.addShuttles(2, 10, false).build();
+        List<Stop> stops = net.stops();
+        ConnectionScan cs = new ConnectionScan(g, null);
+        for (Stop start : stops) {
+            FastestPathTree dijkstra = g.fastestPaths(start, 1000);
+            FastestPathTree scan = cs.fastestPaths(start, 1000);
+            for (Stop s : stops) {
+                assertTrue(scan.arrivalTime(s) <= dijkstra.arrivalTime(s));
+            }
+        }
+    }
+
+    @Test
+    public void testActiveServices() {
+        Stop s1 = new Stop("Arret1", new PointWGS84(0.1166, 0.8118));
+        Stop s2 = new Stop("Arret2", new PointWGS84(0.1200, 0.8118));
+        Set<Stop> stops = new HashSet<>();
+        stops.add(s1);
+        stops.add(s2);
+        Date d = new Date(1, Month.OCTOBER, 2013);
+        Set<Date> noDates = Collections.emptySet();
+        Service weekday = new Service("semaine", d, d,
+                Collections.singleton(DayOfWeek.TUESDAY), noDates, noDates);
+        Service sunday = new Service("dimanche", d, d,
+                Collections.singleton(DayOfWeek.SUNDAY), noDates, noDates);
+        Graph g = new Graph.Builder(stops)
+                .addTripEdge(s1, s2, 100, 200, sunday)
+                .addTripEdge(s1, s2, 150, 300, weekday).build();
+        Set<Service> active = new HashSet<>();
+        active.add(weekday);
+        BitSet services = g.activeServices(active);
+        ConnectionScan cs = new ConnectionScan(g, services);
+        assertEquals(1, cs.connectionCount());
+        assertEquals(300, cs.fastestPaths(s1, 0).arrivalTime(s2));
+        assertEquals(200, new ConnectionScan(g, null).fastestPaths(s1, 0)
+                .arrivalTime(s2));
+    }
+
+    @Test
+    public void testZeroDurationConnections() {
+        // Connexions de durée nulle partant à la même heure, quel que soit
+        // leur ordre dans le tableau
+        Stop s1 = new Stop("A", new PointWGS84(0.1166, 0.8118));
+        Stop s2 = new Stop("B", new PointWGS84(0.1200, 0.8118));
+        Stop s3 = new Stop("C", new PointWGS84(0.1250, 0.8118));
+        Stop s4 = new Stop("D", new PointWGS84(0.1300, 0.8118));
+        Set<Stop> stops = new HashSet<>();
+        stops.add(s1);
+        stops.add(s2);
+        stops.add(s3);
+        stops.add(s4);
+        Graph g = new Graph.Builder(stops).addTripEdge(s3, s4, 100, 100)
+                .addTripEdge(s2, s3, 100, 100).addTripEdge(s1, s2, 100, 100)
+                .build();
+        FastestPathTree fpt = new ConnectionScan(g, null).fastestPaths(s1, 50);
+        assertEquals(100, fpt.arrivalTime(s4));
+        assertEquals(4, fpt.pathTo(s4).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownStartingStop() {
+        Stop s1 = new Stop("Arret1", new PointWGS84(0.1166, 0.8118));
+        Set<Stop> stops = new HashSet<>();
+        stops.add(s1);
+        Graph g = new Graph.Builder(stops).build();
+        new ConnectionScan(g, null).fastestPaths(new Stop("Autre",
+                new PointWGS84(0.1, 0.8)), 0);
+    }
+}
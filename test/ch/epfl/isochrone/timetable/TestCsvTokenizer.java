@@ -0,0 +1,172 @@
+/**
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestCsvTokenizer {
+
+    private static CsvTokenizer tokenizer(String s) {
+        return new CsvTokenizer(new ByteArrayInputStream(
+                s.getBytes(StandardCharsets.UTF_8)), new StringPool());
+    }
+
+    @Test
+    public void testReadLines() throws IOException {
+        CsvTokenizer t = tokenizer("Lausanne-Flon;46.5210;6.6302\n"
+                + "\r\n" + "Épalinges;-0.5;12\r\n" + "a;1;2");
+        assertTrue(t.nextLine());
+        assertEquals("Lausanne-Flon", t.nextString());
+        assertEquals(46.5210, t.nextDouble(), 0);
+        assertEquals(6.6302, t.nextDouble(), 0);
+        assertFalse(t.hasMoreFields());
+
+        assertTrue(t.nextLine());
+        assertEquals("Épalinges", t.nextString());
+        assertEquals(-0.5, t.nextDouble(), 0);
+        assertEquals(12, t.nextInt());
+
+        assertTrue(t.nextLine());
+        t.skipField();
+        assertEquals(1, t.nextInt());
+        assertTrue(t.hasMoreFields());
+        assertEquals(2, t.nextInt());
+        assertFalse(t.nextLine());
+        assertFalse(t.nextLine());
+    }
+
+    @Test
+    public void testStringsAreShared() throws IOException {
+        CsvTokenizer t = tokenizer("service;x\nservice;y\n");
+        t.nextLine();
+        String s1 = t.nextString();
+        t.nextLine();
+        String s2 = t.nextString();
+        assertEquals("service", s1);
+        assertSame(s1, s2);
+    }
+
+    @Test
+    public void testEmptyField() throws IOException {
+        CsvTokenizer t = tokenizer("a;;b\n");
+        t.nextLine();
+        assertEquals("a", t.nextString());
+        assertEquals("", t.nextString());
+        assertEquals("b", t.nextString());
+    }
+
+    @Test
+    public void testIntBounds() throws IOException {
+        CsvTokenizer t = tokenizer("2147483647;-2147483648;+7;20131001");
+        t.nextLine();
+        assertEquals(Integer.MAX_VALUE, t.nextInt());
+        assertEquals(Integer.MIN_VALUE, t.nextInt());
+        assertEquals(7, t.nextInt());
+        assertEquals(20131001, t.nextInt());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testIntOverflow() throws IOException {
+        CsvTokenizer t = tokenizer("2147483648");
+        t.nextLine();
+        t.nextInt();
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testIntInvalid() throws IOException {
+        CsvTokenizer t = tokenizer("12a");
+        t.nextLine();
+        t.nextInt();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingField() throws IOException {
+        CsvTokenizer t = tokenizer("1;2");
+        t.nextLine();
+        t.nextInt();
+        t.nextInt();
+        t.nextInt();
+    }
+
+    @Test
+    public void testDoublesLikeParseDouble() throws IOException {
+        Random rng = new Random(2014);
+        StringBuilder sb = new StringBuilder();
+        String[] fixed = { "0", "-0", "1.", ".5", "0.1", "1e3", "-2.5E-3",
+                "12345678901234567890", "0.00000000000000000000000001",
+                "46.52104", "6.6302", "9007199254740993" };
+        for (String f : fixed) {
+            sb.append(f).append(';');
+        }
+        for (int i = 0; i < 2000; i++) {
+            double d = (rng.nextDouble() - 0.5) * Math.pow(10, rng.nextInt(8));
+            sb.append(String.format("%." + rng.nextInt(12) + "f", d)
+                    .replace(',', '.')).append(';');
+        }
+        sb.append("1");
+        String line = sb.toString();
+
+        CsvTokenizer t = tokenizer(line);
+        t.nextLine();
+        for (String field : line.split(";")) {
+            assertEquals(Double.doubleToLongBits(Double.parseDouble(field)),
+                    Double.doubleToLongBits(t.nextDouble()));
+        }
+    }
+
+    @Test
+    public void testLinesAcrossBufferBoundaries() throws IOException {
+        // Lignes plus longues que le tampon et lectures partielles du flot
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append("nom").append(i % 7).append(';').append(i).append('\n');
+        }
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            longName.append((char) ('a' + i % 26));
+        }
+        sb.append(longName).append(";-1\n");
+
+        final byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        InputStream in = new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        };
+        CsvTokenizer t = new CsvTokenizer(in, new StringPool());
+        for (int i = 0; i < 20000; i++) {
+            assertTrue(t.nextLine());
+            assertEquals("nom" + (i % 7), t.nextString());
+            assertEquals(i, t.nextInt());
+        }
+        assertTrue(t.nextLine());
+        assertEquals(longName.toString(), t.nextString());
+        assertEquals(-1, t.nextInt());
+        assertFalse(t.nextLine());
+    }
+
+    @Test
+    public void testByteRange() throws IOException {
+        byte[] bytes = "x;1\ny;2\nz;3\n".getBytes(StandardCharsets.UTF_8);
+        CsvTokenizer t = new CsvTokenizer(bytes, 4, 8, new StringPool());
+        assertTrue(t.nextLine());
+        assertEquals("y", t.nextString());
+        assertEquals(2, t.nextInt());
+        assertFalse(t.nextLine());
+    }
+}
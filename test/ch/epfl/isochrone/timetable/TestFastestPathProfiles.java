@@ -0,0 +1,88 @@
+/**
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+
+public class TestFastestPathProfiles {
+
+    private static void checkProfiles(Graph g, List<Stop> stops, int from,
+            int to) {
+        for (Stop start : stops.subList(0, 5)) {
+            FastestPathProfiles p = g.fastestPathProfiles(start, from, to);
+            for (int t = from; t <= to; t += 7) {
+                FastestPathTree expected = g.fastestPaths(start, t);
+                FastestPathTree actual = p.treeAt(t);
+                assertEquals(expected.stops(), actual.stops());
+                for (Stop s : stops) {
+                    assertEquals(expected.arrivalTime(s),
+                            actual.arrivalTime(s));
+                    assertEquals(expected.arrivalTime(s), p.arrivalTime(s, t));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testProfilesMatchFastestPaths() {
+        RandomNetwork net = new RandomNetwork(new Random(2014), 25, 0.02,
+                0.01);
+        Graph g = net.addShuttles(1, 10, true).build();
+        List<Stop> stops = net.stops();
+        checkProfiles(g, stops, 1000, 3000);
+    }
+
+    @Test
+    public void testProfilesMatchFastestPathsNotFifo() {
+        RandomNetwork net = new RandomNetwork(new Random(236517), 25, 0.02,
+                0.01);
+        Graph g = net.addShuttles(1, 10, false).build();
+        List<Stop> stops = net.stops();
+        checkProfiles(g, stops, 1000, 2000);
+    }
+
+    @Test
+    public void testWalkingOnly() {
+        Stop s1 = new Stop("Arret1", new PointWGS84(0.1166, 0.8118));
+        Stop s2 = new Stop("Arret2", new PointWGS84(0.11661, 0.8118));
+        Set<Stop> stops = new HashSet<>();
+        stops.add(s1);
+        stops.add(s2);
+        Graph g = new Graph.Builder(stops).addAllWalkEdges(300, 1.25)
+                .build();
+        int walk = g.fastestPaths(s1, 0).arrivalTime(s2);
+        FastestPathProfiles p = g.fastestPathProfiles(s1, 100, 200);
+        assertEquals(150 + walk, p.arrivalTime(s2, 150));
+        assertEquals(150, p.treeAt(150).startingTime());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDepartureOutsideInterval() {
+        Stop s1 = new Stop("Arret1", new PointWGS84(0.1166, 0.8118));
+        Set<Stop> stops = new HashSet<>();
+        stops.add(s1);
+        Graph g = new Graph.Builder(stops).build();
+        g.fastestPathProfiles(s1, 100, 200).treeAt(201);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidInterval() {
+        Stop s1 = new Stop("Arret1", new PointWGS84(0.1166, 0.8118));
+        Set<Stop> stops = new HashSet<>();
+        stops.add(s1);
+        Graph g = new Graph.Builder(stops).build();
+        g.fastestPathProfiles(s1, 200, 100);
+    }
+}
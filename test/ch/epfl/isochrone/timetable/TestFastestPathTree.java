@@ -5,11 +5,15 @@
 
 package ch.epfl.isochrone.timetable;
  
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
  
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -246,5 +250,51 @@ public class TestFastestPathTree {
         assertTrue(b.arrivalTime(s2) == SecondsPastMidnight.INFINITE);
     }
  
-    // A compléter avec de véritables méthodes de test...
+    @Test
+    public void graphTreeOK() {
+        Stop s1 = new Stop("Arret1", new PointWGS84(0.1166, 0.8118));
+        Stop s2 = new Stop("Arret2", new PointWGS84(0.1200, 0.8118));
+        Stop s3 = new Stop("Arret3", new PointWGS84(0.1250, 0.8118));
+        Stop s4 = new Stop("Arret4", new PointWGS84(0.1300, 0.8118));
+        Set<Stop> stops = new HashSet<>();
+        stops.add(s1);
+        stops.add(s2);
+        stops.add(s3);
+        stops.add(s4);
+        Graph g = new Graph.Builder(stops).addTripEdge(s1, s2, 100, 200)
+                .addTripEdge(s2, s3, 300, 400).build();
+        FastestPathTree t = g.fastestPaths(s1, 50);
+
+        Set<Stop> expected = new HashSet<>();
+        expected.add(s1);
+        expected.add(s2);
+        expected.add(s3);
+        assertEquals(expected, t.stops());
+        assertEquals(t.stops(), expected);
+        assertFalse(t.stops().contains(s4));
+        assertEquals(SecondsPastMidnight.INFINITE, t.arrivalTime(s4));
+        assertEquals(50, t.startingTime());
+        assertEquals(400, t.arrivalTime(s3));
+        assertEquals(Arrays.asList(s1, s2, s3), t.pathTo(s3));
+        assertEquals(Arrays.asList(s1), t.pathTo(s1));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void stopsUnmodifiableOK() {
+        Stop startingStop = new Stop("test", new PointWGS84(1.17, 1.11));
+        new Builder(startingStop, 1000).build().stops().add(startingStop);
+    }
+
+    @Test
+    public void legsToUnknownOK() {
+        Stop startingStop = new Stop("test", new PointWGS84(1.17, 1.11));
+        Stop a1 = new Stop("test", new PointWGS84(1.17, 1.11));
+        Stop a2 = new Stop("test", new PointWGS84(1.37, 1.11));
+        FastestPathTree fpt = new Builder(startingStop, 112)
+                .setArrivalTime(a1, 115, startingStop)
+                .setArrivalTime(a2, 117, a1).build();
+        assertArrayEquals(new int[] { FastestPathTree.UNKNOWN_LEG,
+                FastestPathTree.UNKNOWN_LEG }, fpt.legsTo(a2));
+        assertArrayEquals(new int[0], fpt.legsTo(startingStop));
+    }
 }
@@ -5,20 +5,28 @@
 
 package ch.epfl.isochrone.timetable;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Ignore;
 import org.junit.Test;
 
 import ch.epfl.isochrone.geo.PointWGS84;
+import ch.epfl.isochrone.timetable.Date.DayOfWeek;
+import ch.epfl.isochrone.timetable.Date.Month;
 
 public class TestGraph {
     // Le "test" suivant n'en est pas un à proprement parler, raison pour
@@ -138,64 +146,59 @@ public class TestGraph {
         gb1.addAllWalkEdges(10, -10);
     }
 
-    // POUR ACTIVER CE TEST, il est nécessaire de décommenter la méthode
-    // getOutgoingEdges() de la classe Graph.
-//    @Ignore
-//    @Test
-//    public void testAddAllWalkEdges() {
-//        PointWGS84 p1 = new PointWGS84(0.6555, 0.9);
-//        PointWGS84 p2 = new PointWGS84(0.6556, 0.9);
-//        PointWGS84 p3 = new PointWGS84(0.6556, 0.9001);
-//        Stop s1 = new Stop("Arret1", p1);
-//        Stop s2 = new Stop("Arret2", p2);
-//        Stop s3 = new Stop("Arret3", p3);
-//
-//        Set<Stop> stops = new HashSet<Stop>();
-//        stops.add(s1);
-//        stops.add(s2);
-//        stops.add(s3);
-//
-//        Graph.Builder gb1 = new Graph.Builder(stops);
-//
-//        int walkingSpeed = 5;
-//
-//        int maxWalkingTime = 140;
-//
-//        gb1.addAllWalkEdges(maxWalkingTime, walkingSpeed);
-//
-//        Graph g = gb1.build();
-//
-//        Map<Stop, List<GraphEdge>> outgoingEdges = g.getOutgoingEdges();
-//
-//        List<Stop> availableDestinationFromS1 = new LinkedList<>();
-//        List<Stop> availableDestinationFromS2 = new LinkedList<>();
-//        List<Stop> availableDestinationFromS3 = new LinkedList<>();
-//
-//        for (GraphEdge ge : outgoingEdges.get(s1)) {
-//            availableDestinationFromS1.add(ge.destination());
-//        }
-//
-//        for (GraphEdge ge : outgoingEdges.get(s2)) {
-//            availableDestinationFromS2.add(ge.destination());
-//        }
-//
-//        for (GraphEdge ge : outgoingEdges.get(s3)) {
-//            availableDestinationFromS3.add(ge.destination());
-//        }
-//
-//        // On fait les calculs séparément puis on trouve que les trajets
-//        // possibles en moins de 140 secondes sont
-//        // S1<->S2, S2<->S3 mais PAS s1<->S3
-//        //
-//        // On vérifie que ça correspond aux résultats donnés par la méthode addAllWalkEdges
-//        assertTrue(availableDestinationFromS1.contains(s2));
-//        assertFalse(availableDestinationFromS1.contains(s3));
-//        assertTrue(availableDestinationFromS2.contains(s3));
-//
-//        assertTrue(availableDestinationFromS2.contains(s1));
-//        assertFalse(availableDestinationFromS3.contains(s1));
-//        assertTrue(availableDestinationFromS3.contains(s2));
-//    }
+    @Test
+    public void testAddAllWalkEdges() {
+        PointWGS84 p1 = new PointWGS84(0.6555, 0.9);
+        PointWGS84 p2 = new PointWGS84(0.6556, 0.9);
+        PointWGS84 p3 = new PointWGS84(0.6556, 0.9001);
+        Stop s1 = new Stop("Arret1", p1);
+        Stop s2 = new Stop("Arret2", p2);
+        Stop s3 = new Stop("Arret3", p3);
+
+        Set<Stop> stops = new HashSet<Stop>();
+        stops.add(s1);
+        stops.add(s2);
+        stops.add(s3);
+
+        Graph.Builder gb1 = new Graph.Builder(stops);
+
+        int walkingSpeed = 5;
+
+        int maxWalkingTime = 140;
+
+        gb1.addAllWalkEdges(maxWalkingTime, walkingSpeed);
+
+        Graph g = gb1.build();
+
+        List<Stop> availableDestinationFromS1 = new LinkedList<>();
+        List<Stop> availableDestinationFromS2 = new LinkedList<>();
+        List<Stop> availableDestinationFromS3 = new LinkedList<>();
+
+        for (GraphEdge ge : g.outgoingEdges(s1)) {
+            availableDestinationFromS1.add(ge.destination());
+        }
+
+        for (GraphEdge ge : g.outgoingEdges(s2)) {
+            availableDestinationFromS2.add(ge.destination());
+        }
+
+        for (GraphEdge ge : g.outgoingEdges(s3)) {
+            availableDestinationFromS3.add(ge.destination());
+        }
+
+        // On fait les calculs séparément puis on trouve que les trajets
+        // possibles en moins de 140 secondes sont
+        // S1<->S2, S2<->S3 mais PAS s1<->S3
+        //
+        // On vérifie que ça correspond aux résultats donnés par la méthode addAllWalkEdges
+        assertTrue(availableDestinationFromS1.contains(s2));
+        assertFalse(availableDestinationFromS1.contains(s3));
+        assertTrue(availableDestinationFromS2.contains(s3));
+
+        assertTrue(availableDestinationFromS2.contains(s1));
+        assertFalse(availableDestinationFromS3.contains(s1));
+        assertTrue(availableDestinationFromS3.contains(s2));
+    }
 
     
     @Test(expected = java.lang.IllegalArgumentException.class)
@@ -216,4 +219,358 @@ public class TestGraph {
         FastestPathTree fpt = g.fastestPaths(startingStop, departureTime);
     }
 
+
+    @Test
+    public void testFastestPathsActiveServices() {
+        Stop s1 = new Stop("Arret1", new PointWGS84(0.5, 0.5));
+        Stop s2 = new Stop("Arret2", new PointWGS84(0.7, 0.7));
+        Set<Stop> stops = new HashSet<Stop>();
+        stops.add(s1);
+        stops.add(s2);
+
+        Date start = new Date(1, Month.JANUARY, 2014);
+        Date end = new Date(31, Month.DECEMBER, 2014);
+        Set<Date> noDates = Collections.emptySet();
+        Service week = new Service("semaine", start, end,
+                Collections.singleton(DayOfWeek.MONDAY), noDates, noDates);
+        Service weekEnd = new Service("week-end", start, end,
+                Collections.singleton(DayOfWeek.SUNDAY), noDates, noDates);
+
+        Graph g = new Graph.Builder(stops)
+                .addTripEdge(s1, s2, 100, 200, week)
+                .addTripEdge(s1, s2, 150, 400, weekEnd)
+                .build();
+
+        // Sans filtre, tous les trajets sont empruntés
+        assertEquals(200, g.fastestPaths(s1, 50).arrivalTime(s2));
+
+        BitSet onlyWeekEnd = g.activeServices(Collections.singleton(weekEnd));
+        assertEquals(400, g.fastestPaths(s1, 50, onlyWeekEnd).arrivalTime(s2));
+
+        BitSet none = g.activeServices(Collections.<Service> emptySet());
+        assertEquals(SecondsPastMidnight.INFINITE,
+                g.fastestPaths(s1, 50, none).arrivalTime(s2));
+    }
+
+    @Test
+    public void testLegsTo() {
+        // B et C sont à quelques dizaines de mètres l'un de l'autre, A est
+        // trop loin pour y aller à pied
+        Stop a = new Stop("A", new PointWGS84(0.1166, 0.8118));
+        Stop b = new Stop("B", new PointWGS84(0.1200, 0.8118));
+        Stop c = new Stop("C", new PointWGS84(0.12001, 0.8118));
+        Set<Stop> stops = new HashSet<Stop>(Arrays.asList(a, b, c));
+        Graph g = new Graph.Builder(stops).addTripEdge(a, b, 100, 200)
+                .addTripEdge(a, b, 300, 350).addAllWalkEdges(300, 1.25)
+                .build();
+
+        List<FastestPathTree> trees = new LinkedList<FastestPathTree>();
+        trees.add(g.fastestPaths(a, 50));
+        trees.add(new ConnectionScan(g, null).fastestPaths(a, 50));
+        trees.add(new Raptor(g).fastestPaths(a, 50, null));
+        trees.add(g.fastestPathProfiles(a, 0, 120).treeAt(50));
+        for (FastestPathTree fpt : trees) {
+            assertEquals(Arrays.asList(a, b, c), fpt.pathTo(c));
+            assertArrayEquals(new int[] { 100, FastestPathTree.WALKING_LEG },
+                    fpt.legsTo(c));
+            assertArrayEquals(new int[] { 100 }, fpt.legsTo(b));
+            assertArrayEquals(new int[0], fpt.legsTo(a));
+        }
+        assertArrayEquals(new int[] { 300, FastestPathTree.WALKING_LEG }, g
+                .fastestPaths(a, 250).legsTo(c));
+    }
+
+    @Test
+    public void testMaxTravelTimeOnALine() {
+        // Une course A-B-C-D, les arrêts sont trop éloignés pour marcher
+        Stop a = new Stop("A", new PointWGS84(0.1166, 0.8118));
+        Stop b = new Stop("B", new PointWGS84(0.1200, 0.8118));
+        Stop c = new Stop("C", new PointWGS84(0.1250, 0.8118));
+        Stop d = new Stop("D", new PointWGS84(0.1300, 0.8118));
+        Set<Stop> stops = new HashSet<Stop>(Arrays.asList(a, b, c, d));
+        Graph g = new Graph.Builder(stops).addTripEdge(a, b, 100, 200)
+                .addTripEdge(b, c, 200, 400).addTripEdge(c, d, 400, 900)
+                .addAllWalkEdges(300, 1.25).build();
+
+        // Partant à 50, C est atteint en exactement 350 secondes, D trop tard
+        List<FastestPathTree> trees = new LinkedList<FastestPathTree>();
+        trees.add(g.fastestPaths(a, 50, 350, null, new SearchWorkspace(g)));
+        trees.add(new ConnectionScan(g, null).fastestPaths(a, 50, 350));
+        trees.add(new Raptor(g).fastestPaths(a, 50,
+                Raptor.UNLIMITED_TRANSFERS, 350, null));
+        for (FastestPathTree fpt : trees) {
+            assertEquals(200, fpt.arrivalTime(b));
+            assertEquals(400, fpt.arrivalTime(c));
+            assertEquals(SecondsPastMidnight.INFINITE, fpt.arrivalTime(d));
+            assertFalse(fpt.stops().contains(d));
+        }
+    }
+
+    @Test
+    public void testMaxTravelTime() {
+        Random rng = new Random(2014);
+        RandomNetwork net = new RandomNetwork(rng, 40, 0.05, 0.03);
+        List<Stop> stops = net.stops();
+        Graph g = net.addRandomTrips(300, 3600, 0).build();
+        ConnectionScan csa = new ConnectionScan(g, null);
+        Raptor raptor = new Raptor(g);
+        SearchWorkspace workspace = new SearchWorkspace(g);
+
+        for (int k = 0; k < 100; k++) {
+            Stop start = stops.get(rng.nextInt(stops.size()));
+            int departureTime = rng.nextInt(3600);
+            int maxTravelTime = rng.nextInt(2400);
+            // Chaque algorithme est comparé à sa propre recherche non bornée
+            FastestPathTree[] full = {
+                    g.fastestPaths(start, departureTime),
+                    csa.fastestPaths(start, departureTime),
+                    raptor.fastestPaths(start, departureTime, null) };
+            FastestPathTree[] bounded = {
+                    g.fastestPaths(start, departureTime, maxTravelTime, null,
+                            workspace),
+                    csa.fastestPaths(start, departureTime, maxTravelTime),
+                    raptor.fastestPaths(start, departureTime,
+                            Raptor.UNLIMITED_TRANSFERS, maxTravelTime, null) };
+            for (int i = 0; i < full.length; i++) {
+                for (Stop s : stops) {
+                    int expected = full[i].arrivalTime(s);
+                    if (expected > departureTime + maxTravelTime) {
+                        expected = SecondsPastMidnight.INFINITE;
+                    }
+                    assertEquals(expected, bounded[i].arrivalTime(s));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeMaxTravelTime() {
+        Stop s1 = new Stop("Arret1", new PointWGS84(0.5, 0.5));
+        Graph g = new Graph.Builder(Collections.singleton(s1)).build();
+        g.fastestPaths(s1, 0, -1, null, new SearchWorkspace(g));
+    }
+
+    @Test
+    public void testFastestPathToStopsAtDestination() {
+        // C est atteint avant B, D seulement après B
+        Stop a = new Stop("A", new PointWGS84(0.1166, 0.8118));
+        Stop b = new Stop("B", new PointWGS84(0.1200, 0.8118));
+        Stop c = new Stop("C", new PointWGS84(0.1250, 0.8118));
+        Stop d = new Stop("D", new PointWGS84(0.1300, 0.8118));
+        Set<Stop> stops = new HashSet<Stop>(Arrays.asList(a, b, c, d));
+        Graph g = new Graph.Builder(stops).addTripEdge(a, b, 100, 200)
+                .addTripEdge(a, c, 100, 150).addTripEdge(c, d, 160, 500)
+                .build();
+
+        FastestPathTree partial = g.fastestPathTo(a, 50, b, null,
+                new SearchWorkspace(g));
+        assertEquals(200, partial.arrivalTime(b));
+        assertEquals(150, partial.arrivalTime(c));
+        assertEquals(Arrays.asList(a, b), partial.pathTo(b));
+        assertFalse(partial.stops().contains(d));
+        assertEquals(500, g.fastestPaths(a, 50).arrivalTime(d));
+    }
+
+    @Test
+    public void testFastestPathTo() {
+        Random rng = new Random(236517);
+        RandomNetwork net = new RandomNetwork(rng, 60, 0.05, 0.03);
+        List<Stop> stops = net.stops();
+        Graph g = net.addRandomTrips(400, 3600, 60).build();
+        SearchWorkspace workspace = new SearchWorkspace(g);
+
+        for (int k = 0; k < 300; k++) {
+            Stop start = stops.get(rng.nextInt(stops.size()));
+            Stop destination = stops.get(rng.nextInt(stops.size()));
+            int departureTime = rng.nextInt(3600);
+            FastestPathTree full = g.fastestPaths(start, departureTime);
+            FastestPathTree partial = g.fastestPathTo(start, departureTime,
+                    destination, null, workspace);
+
+            // Les arrêts de l'arbre partiel ont leur heure d'arrivée exacte
+            for (Stop s : partial.stops()) {
+                assertEquals(full.arrivalTime(s), partial.arrivalTime(s));
+            }
+            assertEquals(full.arrivalTime(destination),
+                    partial.arrivalTime(destination));
+            assertEquals(full.stops().contains(destination), partial.stops()
+                    .contains(destination));
+            if (partial.stops().contains(destination)) {
+                List<Stop> path = partial.pathTo(destination);
+                assertEquals(start, path.get(0));
+                assertEquals(destination, path.get(path.size() - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testTwoStartingStops() {
+        // B est à 200 secondes de marche du point de départ, A tout près,
+        // mais la course depuis B arrive à C avant celle depuis A
+        Stop a = new Stop("A", new PointWGS84(0.1166, 0.8118));
+        Stop b = new Stop("B", new PointWGS84(0.1200, 0.8118));
+        Stop c = new Stop("C", new PointWGS84(0.1250, 0.8118));
+        Set<Stop> stops = new HashSet<Stop>(Arrays.asList(a, b, c));
+        Graph g = new Graph.Builder(stops).addTripEdge(a, c, 100, 400)
+                .addTripEdge(b, c, 300, 350).build();
+
+        Map<Stop, Integer> startingStops = new HashMap<Stop, Integer>();
+        startingStops.put(a, 0);
+        startingStops.put(b, 200);
+        FastestPathTree multi = g.fastestPaths(startingStops, 50, null);
+        assertEquals(a, multi.startingStop());
+        assertEquals(50, multi.arrivalTime(a));
+        assertEquals(250, multi.arrivalTime(b));
+        assertEquals(350, multi.arrivalTime(c));
+        assertEquals(Arrays.asList(b, c), multi.pathTo(c));
+    }
+
+    @Test
+    public void testMultipleStartingStops() {
+        Random rng = new Random(239612);
+        RandomNetwork net = new RandomNetwork(rng, 40, 0.05, 0.03);
+        List<Stop> stops = net.stops();
+        Graph g = net.addRandomTrips(300, 3600, 0).build();
+        SearchWorkspace workspace = new SearchWorkspace(g);
+
+        for (int k = 0; k < 100; k++) {
+            int departureTime = rng.nextInt(3600);
+            int maxTravelTime = k % 2 == 0 ? Graph.UNLIMITED_TRAVEL_TIME : rng
+                    .nextInt(2400);
+            Map<Stop, Integer> startingStops = new HashMap<Stop, Integer>();
+            for (int i = 1 + rng.nextInt(4); i > 0; i--) {
+                startingStops.put(stops.get(rng.nextInt(stops.size())),
+                        rng.nextInt(900));
+            }
+            FastestPathTree multi = g.fastestPaths(startingStops,
+                    departureTime, maxTravelTime, null, workspace);
+            assertEquals(departureTime, multi.startingTime());
+            assertEquals(Collections.min(startingStops.values()),
+                    startingStops.get(multi.startingStop()));
+
+            // Même résultat que la meilleure des recherches depuis chaque
+            // arrêt de départ
+            for (Stop s : stops) {
+                int expected = SecondsPastMidnight.INFINITE;
+                for (Map.Entry<Stop, Integer> e : startingStops.entrySet()) {
+                    expected = Math.min(expected, g.fastestPaths(e.getKey(),
+                            departureTime + e.getValue()).arrivalTime(s));
+                }
+                if (expected - departureTime > maxTravelTime) {
+                    expected = SecondsPastMidnight.INFINITE;
+                }
+                assertEquals(expected, multi.arrivalTime(s));
+                if (multi.stops().contains(s)) {
+                    List<Stop> path = multi.pathTo(s);
+                    assertTrue(startingStops.containsKey(path.get(0)));
+                    assertEquals(s, path.get(path.size() - 1));
+                    assertEquals(path.size() - 1, multi.legsTo(s).length);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAllDelaysExceedMaxTravelTime() {
+        Stop a = new Stop("A", new PointWGS84(0.1166, 0.8118));
+        Stop b = new Stop("B", new PointWGS84(0.1200, 0.8118));
+        Stop c = new Stop("C", new PointWGS84(0.1250, 0.8118));
+        Set<Stop> stops = new HashSet<Stop>(Arrays.asList(a, b, c));
+        Graph g = new Graph.Builder(stops).addTripEdge(a, c, 100, 150)
+                .addTripEdge(b, c, 300, 350).build();
+
+        // Les deux délais dépassent la durée maximale : aucun arrêt, pas
+        // même celui dont le délai est le plus court, n'est atteint
+        Map<Stop, Integer> startingStops = new HashMap<Stop, Integer>();
+        startingStops.put(a, 200);
+        startingStops.put(b, 250);
+        FastestPathTree fpt = g.fastestPaths(startingStops, 50, 150, null,
+                new SearchWorkspace(g));
+        assertEquals(a, fpt.startingStop());
+        assertEquals(50, fpt.startingTime());
+        assertTrue(fpt.stops().isEmpty());
+        for (Stop s : stops) {
+            assertEquals(SecondsPastMidnight.INFINITE, fpt.arrivalTime(s));
+        }
+
+        // Avec une durée juste suffisante, seul A est atteint
+        fpt = g.fastestPaths(startingStops, 50, 200, null,
+                new SearchWorkspace(g));
+        assertEquals(Collections.singleton(a), fpt.stops());
+        assertEquals(250, fpt.arrivalTime(a));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoStartingStop() {
+        Stop s1 = new Stop("Arret1", new PointWGS84(0.5, 0.5));
+        Graph g = new Graph.Builder(Collections.singleton(s1)).build();
+        g.fastestPaths(new HashMap<Stop, Integer>(), 0, null);
+    }
+
+    @Test
+    public void testWalkingTimesFromNearbyStops() {
+        // A et B sont à 100 et 200 mètres au nord du point, C à un kilomètre
+        double metre = 1d / 6378137;
+        PointWGS84 point = new PointWGS84(0.1166, 0.8118);
+        Stop a = new Stop("A", new PointWGS84(0.1166, 0.8118 + 100 * metre));
+        Stop b = new Stop("B", new PointWGS84(0.1166, 0.8118 + 200 * metre));
+        Stop c = new Stop("C", new PointWGS84(0.1166, 0.8118 + 1000 * metre));
+        Set<Stop> stops = new HashSet<Stop>(Arrays.asList(a, b, c));
+        Graph g = new Graph.Builder(stops).addTripEdge(b, c, 1200, 1300)
+                .build();
+
+        Map<Stop, Integer> expected = new HashMap<Stop, Integer>();
+        expected.put(a, 80);
+        expected.put(b, 160);
+        assertEquals(expected, g.walkingTimesFrom(point, 300, 1.25));
+
+        FastestPathTree fpt = g.fastestPaths(point, 1000, 300, 1.25,
+                Graph.UNLIMITED_TRAVEL_TIME, null, new SearchWorkspace(g));
+        assertEquals(1080, fpt.arrivalTime(a));
+        assertEquals(1160, fpt.arrivalTime(b));
+        assertEquals(1300, fpt.arrivalTime(c));
+    }
+
+    @Test
+    public void testWalkingTimesFrom() {
+        Random rng = new Random(2013);
+        RandomNetwork net = new RandomNetwork(rng, 200, 0.05, 0.03);
+        List<Stop> stops = net.stops();
+        Graph g = net.build();
+        SearchWorkspace workspace = new SearchWorkspace(g);
+
+        for (int k = 0; k < 50; k++) {
+            PointWGS84 point = net.randomPoint();
+            Map<Stop, Integer> expected = new HashMap<Stop, Integer>();
+            for (Stop s : stops) {
+                double distance = s.position().distanceTo(point);
+                if (distance <= 300 * 1.25) {
+                    expected.put(s, (int) Math.round(distance / 1.25));
+                }
+            }
+            Map<Stop, Integer> walkingTimes = g.walkingTimesFrom(point, 300,
+                    1.25);
+            assertEquals(expected, walkingTimes);
+
+            if (!walkingTimes.isEmpty()) {
+                FastestPathTree fromPoint = g.fastestPaths(point, 1000, 300,
+                        1.25, Graph.UNLIMITED_TRAVEL_TIME, null, workspace);
+                FastestPathTree fromStops = g.fastestPaths(walkingTimes, 1000,
+                        null);
+                assertEquals(fromStops.stops(), fromPoint.stops());
+                for (Stop s : stops) {
+                    assertEquals(fromStops.arrivalTime(s),
+                            fromPoint.arrivalTime(s));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFastestPathsFromPointWithoutStops() {
+        Stop s1 = new Stop("Arret1", new PointWGS84(0.5, 0.5));
+        Graph g = new Graph.Builder(Collections.singleton(s1)).build();
+        g.fastestPaths(new PointWGS84(0.6, 0.5), 0, 300, 1.25,
+                Graph.UNLIMITED_TRAVEL_TIME, null, new SearchWorkspace(g));
+    }
 }
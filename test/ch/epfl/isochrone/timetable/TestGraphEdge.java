@@ -151,6 +151,34 @@ public class TestGraphEdge {
 
     }
 
+    @Test
+    public void testBuilderManyTripsAndDuplicates() {
+        PointWGS84 point = new PointWGS84(2.81, 0.12);
+        Stop stop = new Stop("stop", point);
+        GraphEdge.Builder b = new GraphEdge.Builder(stop);
+
+        // Ajout dans le désordre, avec des doublons, de plus de trajets que la
+        // capacité initiale du bâtisseur
+        for (int i = 20; i >= 0; i--) {
+            b.addTrip(fromHMS(8, i, 0), fromHMS(8, i, 30));
+            b.addTrip(fromHMS(8, i, 0), fromHMS(8, i, 30));
+        }
+        GraphEdge g = b.build();
+
+        assertEquals(fromHMS(8, 0, 30), g.earliestArrivalTime(0));
+        assertEquals(fromHMS(8, 5, 30), g.earliestArrivalTime(fromHMS(8, 4, 1)));
+        assertEquals(fromHMS(8, 20, 30), g.earliestArrivalTime(fromHMS(8, 20, 0)));
+        assertEquals(SecondsPastMidnight.INFINITE,
+                g.earliestArrivalTime(fromHMS(8, 20, 1)));
+
+        // Le bâtisseur reste utilisable après construction
+        b.addTrip(fromHMS(9, 0, 0), fromHMS(9, 1, 0));
+        assertEquals(SecondsPastMidnight.INFINITE,
+                g.earliestArrivalTime(fromHMS(8, 20, 1)));
+        assertEquals(fromHMS(9, 1, 0),
+                b.build().earliestArrivalTime(fromHMS(8, 20, 1)));
+    }
+
     @Test(expected = java.lang.IllegalArgumentException.class)
     public void testBuilderSetWalkingTime() {
         PointWGS84 point = new PointWGS84(2.81, 0.12);
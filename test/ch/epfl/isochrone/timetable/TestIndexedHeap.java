@@ -0,0 +1,93 @@
+/** 
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestIndexedHeap {
+
+    @Test
+    public void testRemoveMinOrder() {
+        IndexedHeap heap = new IndexedHeap(5);
+        heap.push(0, 50);
+        heap.push(1, 10);
+        heap.push(2, 30);
+        heap.push(3, 20);
+
+        assertEquals(4, heap.size());
+        assertEquals(10, heap.minKey());
+        assertEquals(1, heap.removeMin());
+        assertEquals(3, heap.removeMin());
+        assertEquals(2, heap.removeMin());
+        assertEquals(0, heap.removeMin());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testDecreaseKey() {
+        IndexedHeap heap = new IndexedHeap(3);
+        heap.push(0, 10);
+        heap.push(1, 20);
+        heap.push(2, 30);
+
+        // Une priorité plus grande est ignorée, une plus petite est appliquée
+        heap.push(0, 40);
+        heap.push(2, 5);
+
+        assertEquals(3, heap.size());
+        assertEquals(2, heap.removeMin());
+        assertFalse(heap.contains(2));
+        assertEquals(0, heap.removeMin());
+        assertEquals(1, heap.removeMin());
+    }
+
+    @Test
+    public void testClear() {
+        IndexedHeap heap = new IndexedHeap(3);
+        heap.push(0, 1);
+        heap.push(1, 2);
+        heap.clear();
+        assertTrue(heap.isEmpty());
+        assertFalse(heap.contains(0));
+        heap.push(0, 3);
+        assertEquals(0, heap.removeMin());
+    }
+
+    @Test
+    public void testRandomAgainstSort() {
+        Random random = new Random(2014);
+        int n = 1000;
+        IndexedHeap heap = new IndexedHeap(n);
+        int[] best = new int[n];
+        java.util.Arrays.fill(best, Integer.MAX_VALUE);
+        for (int i = 0; i < 5000; i++) {
+            int id = random.nextInt(n);
+            int key = random.nextInt(100000);
+            heap.push(id, key);
+            best[id] = Math.min(best[id], key);
+        }
+        int previous = Integer.MIN_VALUE;
+        while (!heap.isEmpty()) {
+            int key = heap.minKey();
+            int id = heap.removeMin();
+            assertEquals(best[id], key);
+            assertTrue(key >= previous);
+            previous = key;
+        }
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testRemoveMinEmpty() {
+        new IndexedHeap(1).removeMin();
+    }
+}
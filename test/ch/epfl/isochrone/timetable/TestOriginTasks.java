@@ -0,0 +1,84 @@
+/**
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+public class TestOriginTasks {
+
+    @Test
+    public void testEachOriginOnceOnSmallExecutor() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int n : new int[] { 0, 1, 16, 17, 100 }) {
+                final AtomicIntegerArray visits = new AtomicIntegerArray(n);
+                final AtomicInteger states = new AtomicInteger();
+                final AtomicInteger running = new AtomicInteger();
+                final AtomicInteger maxRunning = new AtomicInteger();
+                OriginTasks.forEachOrigin(n, executor,
+                        new OriginTasks.Body<int[]>() {
+                            @Override
+                            public int[] newState() {
+                                states.incrementAndGet();
+                                return new int[1];
+                            }
+
+                            @Override
+                            public void run(int origin, int[] state) {
+                                int r = running.incrementAndGet();
+                                synchronized (maxRunning) {
+                                    maxRunning.set(Math.max(r,
+                                            maxRunning.get()));
+                                }
+                                visits.incrementAndGet(origin);
+                                running.decrementAndGet();
+                            }
+                        });
+                for (int o = 0; o < n; o++) {
+                    assertEquals(1, visits.get(o));
+                }
+                // Un état par bloc d'arrêts, quel que soit le nombre de
+                // processeurs, et jamais plus de tâches simultanées que de
+                // fils de l'exécuteur
+                assertEquals((n + OriginTasks.ORIGINS_PER_TASK - 1)
+                        / OriginTasks.ORIGINS_PER_TASK, states.get());
+                assertTrue(maxRunning.get() <= 2);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testExceptionIsRethrown() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            OriginTasks.forEachOrigin(40, executor,
+                    new OriginTasks.Body<Void>() {
+                        @Override
+                        public Void newState() {
+                            return null;
+                        }
+
+                        @Override
+                        public void run(int origin, Void state) {
+                            if (origin == 33)
+                                throw new IllegalArgumentException();
+                        }
+                    });
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+
+public class TestRaptor {
+
+    @Test
+    public void testSameArrivalTimesAsConnectionScan() {
+        RandomNetwork net = new RandomNetwork(new Random(2014), 60, 0.04,
+                0.02).withServices();
+        Graph g = net.addLines(15, 8).build();
+        List<Stop> stops = net.stops();
+        Raptor raptor = new Raptor(g);
+        BitSet week = g.activeServices(Collections.singleton(net.services()
+                .get(0)));
+        ConnectionScan all = new ConnectionScan(g, null);
+        ConnectionScan weekOnly = new ConnectionScan(g, week);
+        for (Stop start : stops) {
+            for (int t = 0; t < 4000; t += 700) {
+                FastestPathTree expected = all.fastestPaths(start, t);
+                FastestPathTree actual = raptor.fastestPaths(start, t, null);
+                FastestPathTree expectedWeek = weekOnly.fastestPaths(start, t);
+                FastestPathTree actualWeek = raptor.fastestPaths(start, t,
+                        week);
+                for (Stop s : stops) {
+                    assertEquals(expected.arrivalTime(s),
+                            actual.arrivalTime(s));
+                    assertEquals(expectedWeek.arrivalTime(s),
+                            actualWeek.arrivalTime(s));
+                }
+                for (Stop s : actual.stops()) {
+                    List<Stop> path = actual.pathTo(s);
+                    assertEquals(start, path.get(0));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMoreTransfersNeverLater() {
+        RandomNetwork net = new RandomNetwork(new Random(236517), 60, 0.04,
+                0.02).withServices();
+        Graph g = net.addLines(15, 8).build();
+        List<Stop> stops = net.stops();
+        Raptor raptor = new Raptor(g);
+        for (Stop start : stops.subList(0, 20)) {
+            FastestPathTree previous = raptor.fastestPaths(start, 500, 0,
+                    null);
+            for (int k = 1; k < 5; k++) {
+                FastestPathTree current = raptor.fastestPaths(start, 500, k,
+                        null);
+                for (Stop s : stops) {
+                    assertTrue(current.arrivalTime(s) <= previous
+                            .arrivalTime(s));
+                }
+                previous = current;
+            }
+        }
+    }
+
+    @Test
+    public void testTransferLimit() {
+        Stop a = new Stop("A", new PointWGS84(0.1166, 0.8118));
+        Stop b = new Stop("B", new PointWGS84(0.1200, 0.8118));
+        Stop c = new Stop("C", new PointWGS84(0.1250, 0.8118));
+        Stop d = new Stop("D", new PointWGS84(0.1300, 0.8118));
+        Set<Stop> stops = new HashSet<>(Arrays.asList(a, b, c, d));
+        // Une course A-B-C, puis une correspondance C-D
+        Graph g = new Graph.Builder(stops).addTripEdge(a, b, 100, 200)
+                .addTripEdge(b, c, 200, 300).addTripEdge(c, d, 400, 500)
+                .build();
+        Raptor raptor = new Raptor(g);
+        assertEquals(2, raptor.tripCount());
+
+        FastestPathTree direct = raptor.fastestPaths(a, 0, 0, null);
+        assertEquals(300, direct.arrivalTime(c));
+        assertFalse(direct.stops().contains(d));
+        assertEquals(Arrays.asList(a, c), direct.pathTo(c));
+
+        FastestPathTree oneTransfer = raptor.fastestPaths(a, 0, 1, null);
+        assertEquals(500, oneTransfer.arrivalTime(d));
+        assertEquals(Arrays.asList(a, c, d), oneTransfer.pathTo(d));
+    }
+
+    @Test
+    public void testOvertakingTripsSplitIntoRoutes() {
+        Stop a = new Stop("A", new PointWGS84(0.1166, 0.8118));
+        Stop b = new Stop("B", new PointWGS84(0.1200, 0.8118));
+        Set<Stop> stops = new HashSet<>(Arrays.asList(a, b));
+        // La course express part après la course lente et arrive avant
+        Graph g = new Graph.Builder(stops).addTripEdge(a, b, 100, 500)
+                .addTripEdge(a, b, 200, 300).build();
+        Raptor raptor = new Raptor(g);
+        assertEquals(2, raptor.routeCount());
+        assertEquals(300, raptor.fastestPaths(a, 0, 0, null).arrivalTime(b));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeTransfers() {
+        Stop a = new Stop("A", new PointWGS84(0.1166, 0.8118));
+        Set<Stop> stops = new HashSet<>(Arrays.asList(a));
+        new Raptor(new Graph.Builder(stops).build()).fastestPaths(a, 0, -1,
+                null);
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+
+public class TestSearchWorkspace {
+
+    @Test
+    public void testReusedWorkspaceGivesSameResults() {
+        Random rng = new Random(2014);
+        RandomNetwork net = new RandomNetwork(rng, 30, 0.05, 0.03);
+        List<Stop> stops = net.stops();
+        Graph g = net.addRandomTrips(40, 3000, 0).build();
+
+        // Des recherches successives atteignent des ensembles d'arrêts
+        // différents : aucune ne doit voir les résultats de la précédente
+        SearchWorkspace workspace = new SearchWorkspace(g);
+        for (int k = 0; k < 200; k++) {
+            Stop start = stops.get(rng.nextInt(stops.size()));
+            int departureTime = rng.nextInt(3600);
+            FastestPathTree expected = g.fastestPaths(start, departureTime);
+            g.search(start, departureTime, null, workspace);
+            assertEquals(start, workspace.startingStop());
+            assertEquals(departureTime, workspace.startingTime());
+            for (Stop s : stops) {
+                assertEquals(expected.arrivalTime(s), workspace.arrivalTime(s));
+            }
+            FastestPathTree actual = workspace.toFastestPathTree();
+            assertEquals(expected.stops(), actual.stops());
+            for (Stop s : actual.stops()) {
+                assertEquals(expected.pathTo(s), actual.pathTo(s));
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyWorkspace() {
+        Stop s1 = new Stop("Arret1", new PointWGS84(0.1166, 0.8118));
+        Set<Stop> stops = new HashSet<>();
+        stops.add(s1);
+        SearchWorkspace workspace = new SearchWorkspace(new Graph.Builder(
+                stops).build());
+        assertNull(workspace.startingStop());
+        assertEquals(SecondsPastMidnight.INFINITE, workspace.arrivalTime(s1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWorkspaceOfAnotherGraph() {
+        Stop s1 = new Stop("Arret1", new PointWGS84(0.1166, 0.8118));
+        Set<Stop> stops = new HashSet<>();
+        stops.add(s1);
+        Graph g1 = new Graph.Builder(stops).build();
+        Graph g2 = new Graph.Builder(stops).build();
+        g1.search(s1, 0, null, new SearchWorkspace(g2));
+    }
+}
@@ -0,0 +1,79 @@
+/** 
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+
+public class TestStopGrid {
+
+    private static List<Stop> randomStops(Random random, int n) {
+        List<Stop> stops = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            stops.add(new Stop("Arret" + i, new PointWGS84(
+                    Math.toRadians(6.5 + random.nextDouble() * 0.2),
+                    Math.toRadians(46.4 + random.nextDouble() * 0.2))));
+        }
+        return stops;
+    }
+
+    @Test
+    public void testStopsWithinMatchesBruteForce() {
+        Random random = new Random(2014);
+        List<Stop> stops = randomStops(random, 500);
+
+        for (double cellSize : new double[] { 10, 375, 5000 }) {
+            StopGrid grid = new StopGrid(stops, cellSize);
+            for (int q = 0; q < 50; q++) {
+                PointWGS84 point = stops.get(random.nextInt(stops.size()))
+                        .position();
+                double radius = random.nextDouble() * 2000;
+
+                Set<Stop> expected = new HashSet<>();
+                for (Stop s : stops) {
+                    if (s.position().distanceTo(point) <= radius) {
+                        expected.add(s);
+                    }
+                }
+                List<Stop> found = grid.stopsWithin(point, radius);
+                assertEquals(expected.size(), found.size());
+                assertEquals(expected, new HashSet<>(found));
+            }
+        }
+    }
+
+    @Test
+    public void testPointOutsideGrid() {
+        Stop s = new Stop("Arret", new PointWGS84(0.11, 0.81));
+        StopGrid grid = new StopGrid(Collections.singleton(s), 100);
+
+        assertTrue(grid.stopsWithin(new PointWGS84(0.2, 0.9), 100).isEmpty());
+        assertEquals(1, grid.stopsWithin(new PointWGS84(0.1101, 0.81), 1000)
+                .size());
+    }
+
+    @Test
+    public void testEmptyGrid() {
+        StopGrid grid = new StopGrid(Collections.<Stop> emptySet(), 100);
+        assertTrue(grid.stopsWithin(new PointWGS84(0.1, 0.8), 100).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalCellSize() {
+        new StopGrid(Collections.<Stop> emptySet(), 0);
+    }
+}
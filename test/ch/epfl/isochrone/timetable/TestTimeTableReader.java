@@ -5,10 +5,17 @@
 
 package ch.epfl.isochrone.timetable;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Ignore;
 import org.junit.Test;
@@ -61,4 +68,185 @@ public class TestTimeTableReader {
 
 
     }
-}
\ No newline at end of file
+
+    private static final String[] NOMS_ARRETS = { "Beaulieu", "Rosiaz",
+            "Flon", "Ouchy", "Renens" };
+
+    private static Set<Stop> stops() {
+        Set<Stop> stops = new HashSet<>();
+        for (int i = 0; i < NOMS_ARRETS.length; i++) {
+            stops.add(new Stop(NOMS_ARRETS[i], new PointWGS84(
+                    Math.toRadians(6.63 + 0.001 * i), Math.toRadians(46.52))));
+        }
+        return stops;
+    }
+
+    private static Set<Service> services() {
+        Date d = new Date(1, Date.Month.OCTOBER, 2013);
+        Set<Date> noDates = Collections.emptySet();
+        Set<Service> services = new HashSet<>();
+        for (String name : new String[] { "semaine", "dimanche" }) {
+            services.add(new Service(name, d, d, Collections
+                    .<Date.DayOfWeek> emptySet(), noDates, noDates));
+        }
+        return services;
+    }
+
+    /**
+     * Retourne le contenu d'un fichier stop_times.csv aléatoire, avec les
+     * fins de ligne données. Les lignes du service "nuit", absent de
+     * services(), doivent être ignorées.
+     */
+    private static String stopTimes(Random rng, int lines, String newline,
+            boolean trailingNewline) {
+        String[] services = { "semaine", "dimanche", "nuit" };
+        StringBuilder b = new StringBuilder();
+        for (int l = 0; l < lines; l++) {
+            int from = rng.nextInt(NOMS_ARRETS.length);
+            int to = (from + 1 + rng.nextInt(NOMS_ARRETS.length - 1))
+                    % NOMS_ARRETS.length;
+            int departure = rng.nextInt(80000);
+            b.append(services[rng.nextInt(3)]).append(';')
+                    .append(NOMS_ARRETS[from]).append(';').append(departure)
+                    .append(';').append(NOMS_ARRETS[to]).append(';')
+                    .append(departure + 60 + rng.nextInt(600));
+            if (l < lines - 1 || trailingNewline) {
+                b.append(newline);
+            }
+        }
+        return b.toString();
+    }
+
+    /**
+     * Vérifie que le contenu donné est lu, sur un pool d'un fil puis de
+     * plusieurs, en morceaux de tailles diverses, comme en un seul morceau
+     * analysé sur un seul fil.
+     */
+    private static void checkChunks(String content) {
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        Set<Stop> stops = stops();
+        Set<Service> services = services();
+        ForkJoinPool serial = new ForkJoinPool(1);
+        ForkJoinPool parallel = new ForkJoinPool(8);
+        try {
+            Graph expected = TimeTableReader.readStopTimes(data, stops,
+                    services, 300, 1.25, serial, data.length + 1);
+            assertTrue(expected.edges().length > 0);
+            for (ForkJoinPool pool : new ForkJoinPool[] { serial, parallel }) {
+                for (int chunkSize : new int[] { 1, 7, 37, 1 << 18 }) {
+                    assertSameGraph(expected, TimeTableReader.readStopTimes(
+                            data, stops, services, 300, 1.25, pool,
+                            chunkSize));
+                }
+            }
+        } finally {
+            serial.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    private static void assertSameGraph(Graph expected, Graph actual) {
+        assertArrayEquals(expected.firstEdge(), actual.firstEdge());
+        assertArrayEquals(expected.edgeDestination(), actual.edgeDestination());
+        assertArrayEquals(expected.serviceNames(), actual.serviceNames());
+        GraphEdge[] expectedEdges = expected.edges();
+        GraphEdge[] actualEdges = actual.edges();
+        assertEquals(expectedEdges.length, actualEdges.length);
+        for (int e = 0; e < expectedEdges.length; e++) {
+            assertEquals(expectedEdges[e].destination(),
+                    actualEdges[e].destination());
+            assertEquals(expectedEdges[e].walkingTime(),
+                    actualEdges[e].walkingTime());
+            assertArrayEquals(expectedEdges[e].packedTrips(),
+                    actualEdges[e].packedTrips());
+            assertArrayEquals(expectedEdges[e].tripServices(),
+                    actualEdges[e].tripServices());
+        }
+    }
+
+    @Test
+    public void testSerialParse() {
+        // Trois lignes, dont une d'un service ignoré
+        String content = "semaine;Beaulieu;100;Rosiaz;200\n"
+                + "nuit;Rosiaz;300;Flon;400\n"
+                + "dimanche;Rosiaz;500;Flon;700\n";
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        Set<Stop> stops = stops();
+        Set<Service> services = services();
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            Graph g = TimeTableReader.readStopTimes(data, stops, services, 0,
+                    1.25, pool, data.length + 1);
+            Stop beaulieu = null, rosiaz = null, flon = null;
+            for (Stop s : stops) {
+                if (s.name().equals("Beaulieu")) {
+                    beaulieu = s;
+                } else if (s.name().equals("Rosiaz")) {
+                    rosiaz = s;
+                } else if (s.name().equals("Flon")) {
+                    flon = s;
+                }
+            }
+            FastestPathTree f = g.fastestPaths(beaulieu, 0);
+            assertEquals(200, f.arrivalTime(rosiaz));
+            assertEquals(700, f.arrivalTime(flon));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testLinesAcrossChunkBoundaries() {
+        checkChunks(stopTimes(new Random(1), 500, "\n", true));
+    }
+
+    @Test
+    public void testNoTrailingNewline() {
+        checkChunks(stopTimes(new Random(2), 500, "\n", false));
+    }
+
+    @Test
+    public void testCrlfLineEndings() {
+        String crlf = stopTimes(new Random(3), 500, "\r\n", true);
+        checkChunks(crlf);
+        checkChunks(stopTimes(new Random(3), 500, "\r\n", false));
+
+        // Mêmes trajets qu'avec des fins de ligne LF
+        byte[] lf = stopTimes(new Random(3), 500, "\n", true).getBytes(
+                StandardCharsets.UTF_8);
+        byte[] data = crlf.getBytes(StandardCharsets.UTF_8);
+        Set<Stop> stops = stops();
+        Set<Service> services = services();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertSameGraph(TimeTableReader.readStopTimes(lf, stops,
+                    services, 300, 1.25, pool, 1 << 18),
+                    TimeTableReader.readStopTimes(data, stops, services, 300,
+                            1.25, pool, 13));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testFileSmallerThanOneChunk() {
+        checkChunks(stopTimes(new Random(4), 2, "\n", true));
+        checkChunks(stopTimes(new Random(5), 1, "\n", false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownStopInChunk() {
+        // Arrêt inconnu au milieu du fichier, dans l'un des morceaux
+        String content = stopTimes(new Random(6), 200, "\n", true)
+                + "semaine;Inconnu;100;Rosiaz;200\n"
+                + stopTimes(new Random(7), 200, "\n", true);
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        ForkJoinPool pool = new ForkJoinPool(8);
+        try {
+            TimeTableReader.readStopTimes(data, stops(), services(), 300,
+                    1.25, pool, 1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
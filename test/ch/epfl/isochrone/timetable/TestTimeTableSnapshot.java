@@ -0,0 +1,136 @@
+/**
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+import ch.epfl.isochrone.timetable.Date.DayOfWeek;
+import ch.epfl.isochrone.timetable.Date.Month;
+
+public class TestTimeTableSnapshot {
+
+    private static Stop stop(String name, double lon, double lat) {
+        return new Stop(name, new PointWGS84(Math.toRadians(lon),
+                Math.toRadians(lat)));
+    }
+
+    private static Set<String> names(Set<Service> services) {
+        Set<String> names = new HashSet<>();
+        for (Service s : services) {
+            names.add(s.name());
+        }
+        return names;
+    }
+
+    @Test
+    public void testWriteAndLoad() throws IOException {
+        Stop s1 = stop("Flon", 6.6302, 46.5210);
+        Stop s2 = stop("Gare", 6.6291, 46.5168);
+        Stop s3 = stop("Ouchy", 6.6266, 46.5077);
+        Stop s4 = stop("Isolé", 7.0, 47.0);
+
+        Service week = new Service.Builder("semaine", new Date(1,
+                Month.JANUARY, 2014), new Date(31, Month.DECEMBER, 2014))
+                .addOperatingDay(DayOfWeek.MONDAY)
+                .addOperatingDay(DayOfWeek.TUESDAY)
+                .addExcludedDate(new Date(6, Month.JANUARY, 2014))
+                .addIncludedDate(new Date(4, Month.JANUARY, 2014)).build();
+        Service sunday = new Service.Builder("dimanche", new Date(1,
+                Month.JANUARY, 2014), new Date(31, Month.DECEMBER, 2014))
+                .addOperatingDay(DayOfWeek.SUNDAY).build();
+
+        TimeTable tt = new TimeTable.Builder().addStop(s1).addStop(s2)
+                .addStop(s3).addStop(s4).addService(week).addService(sunday)
+                .build();
+
+        Graph g = new Graph.Builder(tt.stops())
+                .addTripEdge(s1, s2, 100, 200, week)
+                .addTripEdge(s2, s3, 250, 400, week)
+                .addTripEdge(s1, s3, 150, 300, sunday)
+                .addTripEdge(s3, s1, 500, 800).addAllWalkEdges(600, 1.25)
+                .build();
+
+        File file = File.createTempFile("snapshot", ".bin");
+        file.deleteOnExit();
+        TimeTableSnapshot.write(tt, g, file);
+        TimeTableSnapshot snapshot = TimeTableSnapshot.load(file);
+
+        TimeTable tt2 = snapshot.timeTable();
+        Graph g2 = snapshot.graph();
+        assertEquals(4, tt2.stops().size());
+        assertEquals(2, tt2.services().size());
+
+        Map<String, Stop> stops2 = new HashMap<>();
+        for (Stop s : tt2.stops()) {
+            stops2.put(s.name(), s);
+        }
+        assertEquals(s4.position().latitude(), stops2.get("Isolé").position()
+                .latitude(), 0);
+
+        Date[] dates = { new Date(4, Month.JANUARY, 2014),
+                new Date(5, Month.JANUARY, 2014),
+                new Date(6, Month.JANUARY, 2014),
+                new Date(7, Month.JANUARY, 2014) };
+        for (Date d : dates) {
+            assertEquals(names(tt.servicesForDate(d)),
+                    names(tt2.servicesForDate(d)));
+            for (Stop from : tt.stops()) {
+                Stop from2 = stops2.get(from.name());
+                FastestPathTree f = g.fastestPaths(from, 0,
+                        g.activeServices(tt.servicesForDate(d)));
+                FastestPathTree f2 = g2.fastestPaths(from2, 0,
+                        g2.activeServices(tt2.servicesForDate(d)));
+                for (Stop to : tt.stops()) {
+                    assertEquals(f.arrivalTime(to), f2.arrivalTime(stops2
+                            .get(to.name())));
+                }
+            }
+        }
+
+        Service week2 = null;
+        for (Service s : tt2.services()) {
+            if (s.name().equals("semaine")) {
+                week2 = s;
+            }
+        }
+        assertTrue(week2.isOperatingOn(new Date(4, Month.JANUARY, 2014)));
+        assertFalse(week2.isOperatingOn(new Date(6, Month.JANUARY, 2014)));
+        assertTrue(week2.isOperatingOn(new Date(7, Month.JANUARY, 2014)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLoadInvalidFile() throws IOException {
+        File file = File.createTempFile("snapshot", ".bin");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        }
+        TimeTableSnapshot.load(file);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLoadTruncatedFile() throws IOException {
+        File file = File.createTempFile("snapshot", ".bin");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[] { 0x49, 0x53, 0x4F, 0x54, 0, 0, 0, 1, 0 });
+        }
+        TimeTableSnapshot.load(file);
+    }
+}
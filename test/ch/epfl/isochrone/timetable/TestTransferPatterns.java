@@ -0,0 +1,141 @@
+/**
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+
+public class TestTransferPatterns {
+
+    private static void checkPatterns(TransferPatterns patterns, Graph g,
+            BitSet activeServices, List<Stop> stops, Random rng) {
+        SearchWorkspace workspace = new SearchWorkspace(g);
+        for (int q = 0; q < 40; q++) {
+            Stop start = stops.get(rng.nextInt(stops.size()));
+            int departureTime = rng.nextInt(5000);
+            FastestPathTree expected = g.fastestPaths(start, departureTime,
+                    activeServices);
+            for (Stop destination : stops) {
+                patterns.search(start, departureTime, destination, workspace);
+                assertEquals(expected.arrivalTime(destination),
+                        workspace.arrivalTime(destination));
+                FastestPathTree actual = workspace.toFastestPathTree();
+                // Les ancêtres atteints ont aussi leur heure exacte
+                for (Stop s : actual.stops()) {
+                    assertEquals(expected.arrivalTime(s), actual.arrivalTime(s));
+                }
+                if (actual.stops().contains(destination)) {
+                    List<Stop> path = actual.pathTo(destination);
+                    assertEquals(start, path.get(0));
+                    assertEquals(destination, path.get(path.size() - 1));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSameArrivalTimesAsFastestPaths() throws Exception {
+        Random rng = new Random(2014);
+        RandomNetwork net = new RandomNetwork(rng, 30, 0.02, 0.01)
+                .withServices();
+        Graph g = net.addShuttles(2, 12, true).build();
+        List<Stop> stops = net.stops();
+        BitSet week = g.activeServices(Collections.singleton(net.services()
+                .get(0)));
+
+        checkPatterns(TransferPatterns.compute(g, null), g, null, stops, rng);
+        checkPatterns(TransferPatterns.compute(g, week), g, week, stops, rng);
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        Random rng = new Random(236517);
+        RandomNetwork net = new RandomNetwork(rng, 30, 0.02, 0.01)
+                .withServices();
+        Graph g = net.addShuttles(2, 12, true).build();
+        List<Stop> stops = net.stops();
+        BitSet week = g.activeServices(Collections.singleton(net.services()
+                .get(0)));
+        TransferPatterns patterns = TransferPatterns.compute(g, week);
+
+        File file = File.createTempFile("patterns", ".bin");
+        try {
+            patterns.writeTo(file);
+            TransferPatterns read = TransferPatterns.readFrom(file, g);
+            assertEquals(patterns.arcCount(), read.arcCount());
+            assertTrue(read.arcCount() > 0);
+            checkPatterns(read, g, week, stops, rng);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testTransferBeatsDirectTrip() throws Exception {
+        // La correspondance en B arrive à C avant la course directe
+        Stop a = new Stop("A", new PointWGS84(0.1166, 0.8118));
+        Stop b = new Stop("B", new PointWGS84(0.1200, 0.8118));
+        Stop c = new Stop("C", new PointWGS84(0.1250, 0.8118));
+        Set<Stop> stops = new HashSet<>(Arrays.asList(a, b, c));
+        Graph g = new Graph.Builder(stops).addTripEdge(a, b, 100, 200)
+                .addTripEdge(b, c, 300, 400).addTripEdge(a, c, 100, 600)
+                .addTripEdge(a, c, 700, 800).build();
+        TransferPatterns patterns = TransferPatterns.compute(g, null);
+        SearchWorkspace workspace = new SearchWorkspace(g);
+
+        patterns.search(a, 50, c, workspace);
+        assertEquals(400, workspace.arrivalTime(c));
+        assertEquals(Arrays.asList(a, b, c), workspace.toFastestPathTree()
+                .pathTo(c));
+
+        // Après le départ vers B, seule la dernière course directe reste
+        patterns.search(a, 150, c, workspace);
+        assertEquals(800, workspace.arrivalTime(c));
+        assertEquals(Arrays.asList(a, c), workspace.toFastestPathTree()
+                .pathTo(c));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReadOtherGraph() throws Exception {
+        RandomNetwork net = new RandomNetwork(new Random(1), 30, 0.02, 0.01);
+        Graph g = net.addShuttles(2, 12, true).build();
+        List<Stop> stops = net.stops();
+        File file = File.createTempFile("patterns", ".bin");
+        try {
+            TransferPatterns.compute(g, null).writeTo(file);
+            Set<Stop> one = Collections.singleton(stops.get(0));
+            TransferPatterns.readFrom(file, new Graph.Builder(one).build());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotFifo() throws IOException, InterruptedException {
+        Stop a = new Stop("A", new PointWGS84(0.1166, 0.8118));
+        Stop b = new Stop("B", new PointWGS84(0.1200, 0.8118));
+        Set<Stop> stops = new HashSet<>();
+        stops.add(a);
+        stops.add(b);
+        Graph g = new Graph.Builder(stops).addTripEdge(a, b, 100, 500)
+                .addTripEdge(a, b, 200, 300).build();
+        TransferPatterns.compute(g, null);
+    }
+}
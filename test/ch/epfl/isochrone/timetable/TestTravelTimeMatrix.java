@@ -0,0 +1,201 @@
+/**
+ * @author Julien Lamour (236517)
+ * @author Josselin Held (239612)
+ */
+
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+
+public class TestTravelTimeMatrix {
+
+    @Test
+    public void testSameTimesAsFastestPaths() throws InterruptedException {
+        RandomNetwork net = new RandomNetwork(new Random(2014), 30, 0.02,
+                0.01);
+        Graph g = net.addShuttles(1, 10, false).build();
+        List<Stop> stops = net.stops();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            TravelTimeMatrix m = TravelTimeMatrix.compute(g, stops, 1000,
+                    null, executor);
+            assertEquals(stops, m.origins());
+            assertEquals(stops.size(), m.stops().size());
+            int[][] array = m.toArray();
+            for (int i = 0; i < stops.size(); i++) {
+                FastestPathTree fpt = g.fastestPaths(stops.get(i), 1000);
+                for (int j = 0; j < m.stops().size(); j++) {
+                    int arrival = fpt.arrivalTime(m.stops().get(j));
+                    int expected = arrival == SecondsPastMidnight.INFINITE ? arrival
+                            : arrival - 1000;
+                    assertEquals(expected, m.travelTime(i, j));
+                    assertEquals(expected, array[i][j]);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testWriteTo() throws IOException, InterruptedException {
+        RandomNetwork net = new RandomNetwork(new Random(236517), 30, 0.02,
+                0.01);
+        Graph g = net.addShuttles(1, 10, false).build();
+        List<Stop> stops = net.stops();
+        TravelTimeMatrix m = TravelTimeMatrix.compute(g, stops.subList(0, 4),
+                500, null);
+
+        File file = File.createTempFile("matrix", ".bin");
+        file.deleteOnExit();
+        m.writeTo(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)))) {
+            assertEquals(0x49534F4D, in.readInt());
+            assertEquals(2, in.readInt());
+            assertEquals(500, in.readInt());
+            assertEquals(4, in.readInt());
+            assertEquals(stops.size(), in.readInt());
+            for (int i = 0; i < 4; i++) {
+                checkStop(stops.get(i), in);
+            }
+            for (Stop s : m.stops()) {
+                checkStop(s, in);
+            }
+            for (int i = 0; i < 4; i++) {
+                for (int j = 0; j < stops.size(); j++) {
+                    assertEquals(m.travelTime(i, j), in.readInt());
+                }
+            }
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testReadBackStopsWithSameName() throws IOException,
+            InterruptedException {
+        // Deux arrêts « Gare » à des positions différentes, reliés chacun à
+        // un autre arrêt par une course de durée différente
+        Stop gare1 = new Stop("Gare", new PointWGS84(0.1166, 0.8118));
+        Stop gare2 = new Stop("Gare", new PointWGS84(0.1250, 0.8118));
+        Stop a = new Stop("A", new PointWGS84(0.1200, 0.8130));
+        List<Stop> all = Arrays.asList(gare1, gare2, a);
+        Graph g = new Graph.Builder(new HashSet<>(all))
+                .addTripEdge(a, gare1, 1100, 1200)
+                .addTripEdge(a, gare2, 1100, 1400).build();
+        TravelTimeMatrix m = TravelTimeMatrix.compute(g, all, 1000, null);
+
+        File file = File.createTempFile("matrix", ".bin");
+        file.deleteOnExit();
+        m.writeTo(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)))) {
+            assertEquals(0x49534F4D, in.readInt());
+            assertEquals(2, in.readInt());
+            assertEquals(1000, in.readInt());
+            int rows = in.readInt();
+            int columns = in.readInt();
+            List<Stop> readOrigins = new ArrayList<>();
+            for (int i = 0; i < rows; i++) {
+                readOrigins.add(readStop(in, all));
+            }
+            List<Stop> readStops = new ArrayList<>();
+            for (int j = 0; j < columns; j++) {
+                readStops.add(readStop(in, all));
+            }
+            assertEquals(m.origins(), readOrigins);
+            assertEquals(m.stops(), readStops);
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < columns; j++) {
+                    assertEquals(m.travelTime(i, j), in.readInt());
+                }
+            }
+            assertEquals(-1, in.read());
+        }
+        int ia = m.origins().indexOf(a);
+        assertEquals(200, m.travelTime(ia, m.stops().indexOf(gare1)));
+        assertEquals(400, m.travelTime(ia, m.stops().indexOf(gare2)));
+    }
+
+    @Test
+    public void testLineOfThreeStops() throws InterruptedException {
+        // Une course A-B-C, les arrêts sont trop éloignés pour marcher
+        Stop a = new Stop("A", new PointWGS84(0.1166, 0.8118));
+        Stop b = new Stop("B", new PointWGS84(0.1200, 0.8118));
+        Stop c = new Stop("C", new PointWGS84(0.1250, 0.8118));
+        Set<Stop> stops = new HashSet<>(Arrays.asList(a, b, c));
+        Graph g = new Graph.Builder(stops).addTripEdge(a, b, 1100, 1200)
+                .addTripEdge(b, c, 1300, 1500).build();
+        TravelTimeMatrix m = TravelTimeMatrix.compute(g, Arrays.asList(a, b),
+                1000, null);
+        int ia = m.stops().indexOf(a);
+        int ib = m.stops().indexOf(b);
+        int ic = m.stops().indexOf(c);
+        assertEquals(0, m.travelTime(0, ia));
+        assertEquals(200, m.travelTime(0, ib));
+        assertEquals(500, m.travelTime(0, ic));
+        assertEquals(SecondsPastMidnight.INFINITE, m.travelTime(1, ia));
+        assertEquals(0, m.travelTime(1, ib));
+        assertEquals(500, m.travelTime(1, ic));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownOrigin() throws InterruptedException {
+        Stop s1 = new Stop("Arret1", new PointWGS84(0.1166, 0.8118));
+        Set<Stop> stops = new HashSet<>();
+        stops.add(s1);
+        Graph g = new Graph.Builder(stops).build();
+        List<Stop> origins = new ArrayList<>();
+        origins.add(new Stop("Autre", new PointWGS84(0.1, 0.8)));
+        TravelTimeMatrix.compute(g, origins, 0, null);
+    }
+
+    private static void checkStop(Stop expected, DataInputStream in)
+            throws IOException {
+        assertEquals(expected.name(), in.readUTF());
+        assertEquals(expected.position().latitude(), in.readDouble(), 0);
+        assertEquals(expected.position().longitude(), in.readDouble(), 0);
+    }
+
+    /**
+     * Lit un arrêt écrit par TravelTimeMatrix.writeTo et retourne l'unique
+     * arrêt de la liste donnée qui a le même nom et la même position.
+     */
+    private static Stop readStop(DataInputStream in, List<Stop> candidates)
+            throws IOException {
+        String name = in.readUTF();
+        double latitude = in.readDouble();
+        double longitude = in.readDouble();
+        Stop found = null;
+        for (Stop s : candidates) {
+            if (s.name().equals(name)
+                    && s.position().latitude() == latitude
+                    && s.position().longitude() == longitude) {
+                assertNull(found);
+                found = s;
+            }
+        }
+        assertNotNull(found);
+        return found;
+    }
+}